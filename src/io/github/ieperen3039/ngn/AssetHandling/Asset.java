@@ -7,176 +7,452 @@ import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
  * contains an object that is not included when serialized. Instead, it is regenerated when necessary, and automatically
- * dropped when not used for some amount of time.
+ * dropped by the {@link AssetCache} when assets exceed their memory budget.
+ * <p>
+ * Assets form a directed acyclic graph: an asset generated from other assets is a dependent of these sources, and holds
+ * a reference to each of them. Owners of an asset may hold a reference using {@link #acquire()}, and give it up using
+ * {@link #release()}. When the last reference is released, the asset drops its element and releases its own sources.
+ * Assets that are never acquired are only managed by the {@link AssetCache}, and release their sources when they are
+ * garbage collected.
  * @author Geert van Ieperen created on 25-2-2020.
  */
 public abstract class Asset<T> implements Serializable {
-    private static final List<WeakReference<Asset<?>>> allAssets = new ArrayList<>();
+    private static final Set<Reference<? extends Asset<?>>> allAssets = ConcurrentHashMap.newKeySet();
     private static final ReferenceQueue<Asset<?>> assetsToClear = new ReferenceQueue<>();
-
-    /** number of cycles that this asset is kept loaded after being used this cycle {@link #get()}. */
-    private static final int HEAT_INCREMENT = 2; // sec * FPS
-    /** maximum cycles to keep an asset loaded after its last call to {@link #get()} */
-    private static final int MAX_HEAT = 300; // sec * FPS
-    /** number of assets that are allowed where cleaning is not required */
-    private static final int BASELEVEL_NUM_ASSETS = 100;
+    private static final Asset<?>[] NO_SOURCES = new Asset<?>[0];
 
     /** the cached element */
-    protected transient T element = null;
-    /** number of cycles before this may be dropped */
-    private transient int heat = 0;
-    private transient boolean isUsed = false;
+    protected transient volatile T element = null;
+    /** the result of the running load, or null if there is none */
+    private transient CompletableFuture<T> loading = null;
+    /** true if {@link #loading} is the result of {@link #getAsync()} */
+    private transient boolean isLoadingAsync = false;
+    /** the assets generated from this asset, or null if there are none */
+    private transient List<WeakReference<Asset<?>>> dependents = null;
+    /** the memoized derivations of this asset, or null if there are none */
+    private transient Map<Derivation, WeakReference<Asset<?>>> derivations = null;
+    /** the number of references held by owners and dependents, see {@link #acquire()} */
+    private transient int referenceCount = 0;
+    /** true if all references have been released, and this asset no longer holds references to its sources */
+    private transient boolean isReleased = false;
+    /** the statistics of this asset, created on first access */
+    private transient volatile AssetStatistics.Record statistics = null;
+
+    // the position of this asset in the AssetCache
+    transient volatile AssetCache.Segment cacheSegment = null;
+    transient Asset<?> cachePrev = null;
+    transient Asset<?> cacheNext = null;
+    transient boolean isCacheProtected = false;
+    /** true if the element has been used since the cache last examined this asset */
+    transient volatile boolean isCacheReferenced = false;
+    transient long cacheCost = 0;
 
     public Asset() {
         registerAsset();
     }
 
     private void registerAsset() {
-        synchronized (allAssets) {
-            allAssets.add(new WeakReference<>(this));
-        }
+        removeCollectedAssets();
+        allAssets.add(new WeakReference<>(this, assetsToClear));
     }
 
     /**
-     * returns the cached element, possibly generating a new element
+     * returns the cached element, possibly generating a new element. If another thread is already loading the element,
+     * this waits for that load instead of starting a new one. Only when an asynchronous load is running and this is
+     * called on the render thread, the element is loaded again, as that load may be waiting for the render thread.
      * @return the element itself
      * @throws AssetException if the reloading operation fails
      */
     public T get() throws AssetException {
-        if (element == null) {
-            element = reload();
+        T current = element;
+        if (current != null) {
+            AssetCache.touch(this);
+            statistics().hit();
+            return current;
+        }
+
+        statistics().miss();
+
+        CompletableFuture<T> inFlight;
+        CompletableFuture<T> ownLoad = null;
+
+        synchronized (this) {
+            current = element;
+            if (current != null) return current;
+
+            inFlight = loading;
+            if (inFlight == null) {
+                ownLoad = new CompletableFuture<>();
+                loading = ownLoad;
+                isLoadingAsync = false;
+
+            } else if (isLoadingAsync && AssetLoader.isRenderThread()) {
+                ownLoad = new CompletableFuture<>();
+            }
         }
 
-        isUsed = true;
+        if (ownLoad == null) {
+            return await(inFlight);
+        }
 
-        return element;
+        try {
+            long start = System.nanoTime();
+            T value = reload();
+            statistics().loaded(value, System.nanoTime() - start);
+            value = setLoaded(value, ownLoad);
+            ownLoad.complete(value);
+            return value;
+
+        } catch (RuntimeException ex) {
+            synchronized (this) {
+                if (loading == ownLoad) loading = null;
+            }
+            ownLoad.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * stores a newly loaded element, unless another load has finished first. In that case, the new element is
+     * discarded.
+     * @return the element of this asset
+     */
+    private T setLoaded(T value, CompletableFuture<T> load) {
+        T existing;
+        synchronized (this) {
+            if (loading == load) loading = null;
+            existing = element;
+            if (existing == null) element = value;
+        }
+
+        if (existing != null) {
+            if (existing != value) discard(value);
+            return existing;
+        }
+
+        AssetCache.add(this, value);
+        return value;
+    }
+
+    /**
+     * releases an element that was loaded, but is not used because another load of this asset finished first. This
+     * happens when {@link #get()} loads on the render thread while an asynchronous load is running.
+     * Implementations that release resources in {@link #drop()} should release the same resources here.
+     * @param value the element that is not used
+     */
+    protected void discard(T value) {
+    }
+
+    private static <T> T await(CompletableFuture<T> load) throws AssetException {
+        try {
+            return load.join();
+
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException rex) throw rex;
+            throw new AssetException(ex, "Loading failed: " + cause);
+        }
+    }
+
+    /**
+     * returns the cached element, or starts loading the element in the background. Loading is split in steps that run
+     * on the background threads of {@link AssetLoader}, and steps that require OpenGL, which run on the render thread.
+     * Calling this method again while the element is loading returns the same future.
+     * @return a future that completes with the element, or completes exceptionally with an {@link AssetException} if
+     * loading fails.
+     */
+    public CompletableFuture<T> getAsync() {
+        T current = element;
+        if (current != null) {
+            statistics().hit();
+            return CompletableFuture.completedFuture(current);
+        }
+
+        statistics().miss();
+
+        synchronized (this) {
+            if (element != null) return CompletableFuture.completedFuture(element);
+            if (loading != null) return loading;
+
+            CompletableFuture<T> result = new CompletableFuture<>();
+            loading = result;
+            isLoadingAsync = true;
+            long start = System.nanoTime();
+
+            loadAsync().whenComplete((value, ex) -> {
+                if (ex == null) {
+                    statistics().loaded(value, System.nanoTime() - start);
+                    result.complete(setLoaded(value, result));
+
+                } else {
+                    synchronized (this) {
+                        if (loading == result) loading = null;
+                    }
+                    result.completeExceptionally(ex);
+                }
+            });
+
+            return result;
+        }
+    }
+
+    /**
+     * returns the element if it is loaded, and otherwise starts loading it in the background and returns the given
+     * placeholder. This never blocks, and is intended for rendering while assets are loading.
+     * @param placeholder the value returned while the element is not available
+     * @return the element, or the placeholder
+     */
+    public T getOrPlaceholder(T placeholder) {
+        T current = element;
+        if (current != null) {
+            AssetCache.touch(this);
+            statistics().hit();
+            return current;
+        }
+
+        getAsync();
+        return placeholder;
+    }
+
+    /**
+     * @return true if the element is loaded
+     */
+    public boolean isLoaded() {
+        return element != null;
+    }
+
+    /**
+     * Loads a new element asynchronously, for {@link #getAsync()}. By default, this executes {@link #reload()} on the
+     * render thread, as it may use OpenGL. Implementations that do not need the render thread should override this
+     * method.
+     * @return a future that completes with the new element
+     */
+    protected CompletableFuture<T> loadAsync() {
+        return AssetLoader.supply(this::reload, false);
     }
 
     /**
      * drops the cached element, causing a reload on the next get
      */
     public void drop() {
+        AssetCache.remove(this);
+        if (element != null) statistics().dropped();
         element = null;
     }
 
     /**
-     * reloads the resource.
-     * @throws AssetException whenever the resource could not be generated
+     * @return the statistics of this asset
      */
-    protected abstract T reload() throws AssetException;
+    AssetStatistics.Record statistics() {
+        AssetStatistics.Record current = statistics;
+        if (current != null) return current;
 
-    @Override
-    public String toString() {
-        if (element == null) {
-            return "[empty resource]";
-        } else {
-            return "[" + element + "]";
+        synchronized (this) {
+            if (statistics == null) statistics = new AssetStatistics.Record(getClass().getSimpleName(), getName());
+            return statistics;
         }
     }
 
-    public static int getNrOfActiveResources() {
-        synchronized (allAssets) {
-            int count = 0;
-            for (WeakReference<Asset<?>> assetRef : allAssets) {
-                Asset<?> asset = assetRef.get();
-                if (asset != null) {
-                    if (asset.element != null) {
-                        count++;
-                    }
-                }
-            }
-            return count;
+    /**
+     * @return a name that identifies this asset in the {@link AssetStatistics}, such as the file it is loaded from
+     */
+    String getName() {
+        return AssetStatistics.nameOf(this);
+    }
+
+    /**
+     * adds a reference to this asset, preventing {@link #release()} from dropping it. If this asset was released
+     * before, it acquires its sources again.
+     * @return this
+     */
+    public Asset<T> acquire() {
+        boolean doAcquireSources;
+        synchronized (this) {
+            doAcquireSources = isReleased;
+            isReleased = false;
+            referenceCount++;
         }
+
+        if (doAcquireSources) acquireSources();
+        return this;
     }
 
-    public static void cycle() {
-        synchronized (allAssets) {
-            boolean doDropColdAssets = (allAssets.size() >= BASELEVEL_NUM_ASSETS);
+    /**
+     * removes a reference acquired with {@link #acquire()}. When no references remain, the element is dropped, and the
+     * references of this asset to its sources are released, which may drop these as well. Releasing may thus release
+     * GPU resources, and should be called on the render thread.
+     */
+    public void release() {
+        synchronized (this) {
+            assert referenceCount > 0 : "Released more references than were acquired: " + this;
+            if (--referenceCount > 0) return;
+            isReleased = true;
+        }
 
-            Iterator<WeakReference<Asset<?>>> iterator = allAssets.iterator();
-            while (iterator.hasNext()) {
-                Asset<?> asset = iterator.next().get();
+        drop();
+        releaseSources();
+    }
 
-                if (asset != null) {
-                    asset.updateHeat();
+    /** adds a reference to each source of this asset */
+    void acquireSources() {
+        for (Asset<?> source : getSources()) {
+            source.acquire();
+        }
+    }
 
-                    if (doDropColdAssets && asset.heat == 0) {
-                        asset.drop();
-                    }
+    /** removes the references to the sources of this asset, added by {@link #acquireSources()} */
+    void releaseSources() {
+        for (Asset<?> source : getSources()) {
+            source.release();
+        }
+    }
 
-                } else {
-                    // remove this dangling weak reference, the original asset will be cleaned up by dropOrphanedAssets
-                    iterator.remove();
-                }
-            }
+    /**
+     * @return the number of references to this asset held by owners and by dependents
+     */
+    public synchronized int getReferenceCount() {
+        return referenceCount;
+    }
 
-            if (doDropColdAssets) {
-                allAssets.removeIf(ref -> ref.get() == null);
-            }
+    /**
+     * drops this asset and every asset that is derived from it, directly or indirectly, without reloading them.
+     * Dropping may release GPU resources, thus this should be called on the render thread.
+     */
+    public void dropWithDependents() {
+        dropWithDependents(Collections.newSetFromMap(new IdentityHashMap<>()), new ArrayList<>());
+    }
+
+    /**
+     * drops this asset and every asset that is derived from it, directly or indirectly. All of these that were loaded
+     * are then reloaded asynchronously. Dropping may release GPU resources, thus this should be called on the render
+     * thread.
+     */
+    public void invalidate() {
+        Set<Asset<?>> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Asset<?>> wasLoaded = new ArrayList<>();
+        dropWithDependents(visited, wasLoaded);
+
+        for (Asset<?> asset : wasLoaded) {
+            asset.getAsync();
+        }
+    }
+
+    private void dropWithDependents(Set<Asset<?>> visited, List<Asset<?>> wasLoaded) {
+        if (!visited.add(this)) return;
+
+        if (element != null) {
+            wasLoaded.add(this);
+            drop();
         }
 
-        dropOrphanedAssets();
+        for (Asset<?> dependent : getDependents()) {
+            dependent.dropWithDependents(visited, wasLoaded);
+        }
     }
 
-    private void updateHeat() {
-        if (isUsed) {
-            if (heat < MAX_HEAT) {
-                heat += HEAT_INCREMENT;
-            }
+    /**
+     * registers an asset that is generated from this asset, such that it is invalidated together with this asset.
+     */
+    void addDependent(Asset<?> dependent) {
+        synchronized (this) {
+            if (dependents == null) dependents = new ArrayList<>(2);
+            dependents.removeIf(ref -> ref.get() == null);
+            dependents.add(new WeakReference<>(dependent));
+        }
+    }
+
+    /**
+     * @return the assets this asset is generated from
+     */
+    Asset<?>[] getSources() {
+        return NO_SOURCES;
+    }
+
+    /**
+     * @return the assets that are generated from this asset and still exist
+     */
+    synchronized List<Asset<?>> getDependents() {
+        if (dependents == null) return List.of();
+
+        List<Asset<?>> result = new ArrayList<>(dependents.size());
+        for (WeakReference<Asset<?>> ref : dependents) {
+            Asset<?> dependent = ref.get();
+            if (dependent != null) result.add(dependent);
+        }
+        return result;
+    }
+
+    /**
+     * reloads the resource.
+     * @throws AssetException whenever the resource could not be generated
+     */
+    protected abstract T reload() throws AssetException;
+
+    @Override
+    public String toString() {
+        if (element == null) {
+            return "[empty resource]";
         } else {
-            if (heat > 0) {
-                heat--;
+            return "[" + element + "]";
+        }
+    }
+
+    public static int getNrOfActiveResources() {
+        int count = 0;
+        for (Reference<? extends Asset<?>> assetRef : allAssets) {
+            Asset<?> asset = assetRef.get();
+            if (asset != null && asset.element != null) {
+                count++;
             }
         }
+        return count;
+    }
 
-        isUsed = false;
+    /**
+     * drops the least recently used assets of any memory kind that exceeds its budget, and forgets assets that have
+     * been garbage collected. Eviction also happens automatically when assets are loaded.
+     * @see AssetCache
+     */
+    public static void cycle() {
+        AssetCache.evict();
+        removeCollectedAssets();
     }
 
-    /** kill the orphans */
-    private static void dropOrphanedAssets() {
+    /** removes the references to assets that have been garbage collected */
+    private static void removeCollectedAssets() {
         while (true) {
             Reference<? extends Asset<?>> poll = assetsToClear.poll();
             if (poll == null) break;
-            Asset<?> asset = poll.get();
-            if (asset == null) break;
-            asset.drop();
+            allAssets.remove(poll);
         }
     }
 
     /** force all assets to be reloaded, including persistent assets. */
     public static void dropAll() {
-        synchronized (allAssets) {
-            Iterator<WeakReference<Asset<?>>> iterator = allAssets.iterator();
-            while (iterator.hasNext()) {
-                Asset<?> asset = iterator.next().get();
-
-                if (asset != null) {
-                    asset.drop();
-
-                } else {
-                    iterator.remove();
-                }
-            }
-        }
+        forEach(Asset::drop);
+        removeCollectedAssets();
     }
 
     public static void forEach(Consumer<Asset<?>> action) {
-        synchronized (allAssets)
-        {
-            for (WeakReference<Asset<?>> assetRef : allAssets) {
-                Asset<?> asset = assetRef.get();
-                if (asset != null)
-                {
-                    action.accept(asset);
-                }
+        for (Reference<? extends Asset<?>> assetRef : allAssets) {
+            Asset<?> asset = assetRef.get();
+            if (asset != null) {
+                action.accept(asset);
             }
         }
     }
@@ -196,21 +472,85 @@ public abstract class Asset<T> implements Serializable {
     }
 
     /**
-     * create a resource that is generated from another resource.
+     * create a resource that is generated from another resource. When loaded asynchronously, the source is loaded in
+     * the background, and the extractor is executed on the render thread. Derivations of the same source with the same
+     * extractor instance are shared, such that they are only generated once. Non-capturing lambdas and method
+     * references evaluate to the same instance on every call, thus these are shared automatically. Lambdas that capture
+     * variables and bound method references such as {@code object::method} are new instances on every evaluation, and
+     * are thus never shared; use {@link #derive(Asset, Object, AssetConverter, AssetCleaner, boolean)} to share these.
      * @param source    a resource generating an element of type A
      * @param extractor a function that generates the desired element of type B using source
      * @return a resource generating an element of type B
      */
     public static <A, B> Asset<B> derive(Asset<A> source, AssetConverter<A, B> extractor) {
-        return new GeneratorAsset<>(() -> extractor.apply(source.get()), null);
+        return source.derivation(new Derivation(extractor, null, false), extractor, null, false);
     }
 
+    /**
+     * @see #derive(Asset, AssetConverter)
+     */
     public static <A, B> Asset<B> derive(
             Asset<A> source, AssetConverter<A, B> extractor, AssetCleaner<B> cleanup
     ) {
-        return new GeneratorAsset<>(() -> extractor.apply(source.get()), cleanup);
+        return source.derivation(new Derivation(extractor, cleanup, false), extractor, cleanup, false);
+    }
+
+    /**
+     * create a resource that is generated from another resource. Derivations of the same source with an equal key are
+     * shared, regardless of the identity of the extractor and cleanup. The key must thus determine the extractor.
+     * @param source           a resource generating an element of type A
+     * @param key              identifies this derivation of source, compared using {@link Object#equals(Object)}
+     * @param extractor        a function that generates the desired element of type B using source
+     * @param cleanup          is called on the element when it is dropped, or null
+     * @param isBackgroundSafe true if the extractor does not use OpenGL, and may be executed in the background
+     * @return a resource generating an element of type B
+     */
+    public static <A, B> Asset<B> derive(
+            Asset<A> source, Object key, AssetConverter<A, B> extractor, AssetCleaner<B> cleanup,
+            boolean isBackgroundSafe
+    ) {
+        return source.derivation(new Derivation(key, null, isBackgroundSafe), extractor, cleanup, isBackgroundSafe);
+    }
+
+    /**
+     * create a resource that is generated from another resource, using an extractor that does not use OpenGL. When
+     * loaded asynchronously, both the source and the extractor are executed in the background. Derivations are shared
+     * as described in {@link #derive(Asset, AssetConverter)}.
+     * @param source    a resource generating an element of type A
+     * @param extractor a function that generates the desired element of type B using source
+     * @return a resource generating an element of type B
+     */
+    public static <A, B> Asset<B> deriveInBackground(Asset<A> source, AssetConverter<A, B> extractor) {
+        return source.derivation(new Derivation(extractor, null, true), extractor, null, true);
+    }
+
+    /** @return the memoized derivation of this asset, or a new derivation if there is none */
+    @SuppressWarnings("unchecked")
+    private synchronized <B> Asset<B> derivation(
+            Derivation key, AssetConverter<T, B> extractor, AssetCleaner<B> cleanup, boolean isBackgroundSafe
+    ) {
+        if (derivations == null) {
+            derivations = new HashMap<>();
+
+        } else {
+            WeakReference<Asset<?>> existing = derivations.get(key);
+            Asset<?> derived = (existing == null) ? null : existing.get();
+            if (derived != null) return (Asset<B>) derived;
+
+            derivations.values().removeIf(ref -> ref.get() == null);
+        }
+
+        Asset<B> derived = new GeneratorAsset<>(() -> extractor.apply(get()), cleanup, isBackgroundSafe, this);
+        derivations.put(key, new WeakReference<>(derived));
+        return derived;
     }
 
+    /**
+     * identifies a derivation of an asset. The key is either the extractor, in which case it is compared by identity as
+     * lambdas do not override equals, or a key given by the caller.
+     */
+    private record Derivation(Object key, Object cleanup, boolean isBackgroundSafe) {}
+
     /** serializable version of {@link Supplier} */
     public interface AssetGenerator<T> extends Supplier<T>, Serializable {
     }
@@ -0,0 +1,243 @@
+package io.github.ieperen3039.ngn.AssetHandling;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps track of the loaded elements of all {@link Asset assets}, and drops elements when the memory used by assets
+ * exceeds a budget. There is a separate budget for heap memory, off-heap (direct) memory and GPU memory.
+ * <p>
+ * Each memory kind is a segmented cache with CLOCK-style promotion: newly loaded assets enter a probationary segment.
+ * Using a loaded asset only sets a volatile flag on the asset, thus cache hits never lock. When eviction reaches an
+ * asset that has been used since it was last examined, the flag is cleared and the asset moves to the protected
+ * segment instead of being dropped. When the protected segment exceeds its share of the budget, its oldest assets move
+ * back to the probationary segment. Eviction drops unused probationary assets first.
+ * <p>
+ * Whenever an element is added to a memory kind that exceeds its budget, an eviction is scheduled on the render thread,
+ * as dropping an element may release GPU resources. Each addition evicts at most the assets that it pushes over the
+ * budget, thus eviction costs constant time per loaded asset. The cache holds a strong reference to each loaded asset
+ * until it is dropped, which is bounded by the budget.
+ */
+public final class AssetCache {
+    /** the cost in bytes of an element that does not implement {@link MemoryFootprint} */
+    public static final long DEFAULT_COST = 1024;
+    /** fraction of the budget that may be used by the protected segment */
+    private static final float PROTECTED_FRACTION = 0.8f;
+
+    private static final Segment[] segments = new Segment[MemoryKind.values().length];
+    private static final AtomicBoolean isEvictionScheduled = new AtomicBoolean();
+
+    static {
+        segments[MemoryKind.HEAP.ordinal()] = new Segment(Runtime.getRuntime().maxMemory() / 4);
+        segments[MemoryKind.OFF_HEAP.ordinal()] = new Segment(256L << 20);
+        segments[MemoryKind.GPU.ordinal()] = new Segment(512L << 20);
+    }
+
+    public enum MemoryKind {
+        /** memory on the Java heap */
+        HEAP,
+        /** direct buffers and other native memory */
+        OFF_HEAP,
+        /** buffers and textures on the GPU */
+        GPU
+    }
+
+    private AssetCache() {}
+
+    /**
+     * sets the maximum number of bytes that loaded assets of the given kind may use. If the loaded assets exceed the
+     * new budget, the least recently used assets are dropped on the render thread.
+     */
+    public static void setBudget(MemoryKind kind, long bytes) {
+        Segment segment = segments[kind.ordinal()];
+        boolean isOverBudget;
+        synchronized (segment) {
+            segment.budget = bytes;
+            isOverBudget = segment.usedBytes > bytes;
+        }
+
+        if (isOverBudget) scheduleEviction();
+    }
+
+    public static long getBudget(MemoryKind kind) {
+        return segments[kind.ordinal()].budget;
+    }
+
+    /**
+     * @return the number of bytes used by loaded assets of the given kind
+     */
+    public static long getUsedBytes(MemoryKind kind) {
+        return segments[kind.ordinal()].usedBytes;
+    }
+
+    /**
+     * @return the number of loaded assets of the given kind
+     */
+    public static int getNrOfAssets(MemoryKind kind) {
+        return segments[kind.ordinal()].size;
+    }
+
+    /**
+     * drops the least recently used assets of each memory kind until each kind is within its budget. This is called
+     * automatically when assets are loaded, and should be called on the render thread.
+     * @return the number of dropped assets
+     */
+    public static int evict() {
+        int count = 0;
+
+        for (Segment segment : segments) {
+            while (true) {
+                Asset<?> victim;
+                synchronized (segment) {
+                    if (segment.usedBytes <= segment.budget) break;
+                    victim = segment.findVictim();
+                    if (victim == null) break;
+                    segment.unlink(victim);
+                }
+
+                victim.statistics().evicted();
+                victim.drop();
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /** registers the newly loaded element of the given asset */
+    static void add(Asset<?> asset, Object element) {
+        long cost = DEFAULT_COST;
+        MemoryKind kind = MemoryKind.HEAP;
+
+        if (element instanceof MemoryFootprint footprint) {
+            cost = footprint.byteSize();
+            kind = footprint.memoryKind();
+        }
+
+        Segment segment = segments[kind.ordinal()];
+        boolean isOverBudget;
+        synchronized (segment) {
+            if (asset.cacheSegment != null) return;
+            asset.cacheCost = cost;
+            asset.isCacheReferenced = false;
+            segment.pushProbation(asset);
+            isOverBudget = segment.usedBytes > segment.budget;
+        }
+
+        if (isOverBudget) scheduleEviction();
+    }
+
+    /** calls {@link #evict()} on the render thread, unless such a call is already scheduled */
+    private static void scheduleEviction() {
+        if (isEvictionScheduled.compareAndSet(false, true)) {
+            AssetLoader.runOnRenderThread(() -> {
+                // assets added from now on schedule a new eviction
+                isEvictionScheduled.set(false);
+                evict();
+            });
+        }
+    }
+
+    /** marks the given asset as recently used. The asset is promoted when eviction reaches it */
+    static void touch(Asset<?> asset) {
+        // only write if necessary, to not contend on the cache line of frequently used assets
+        if (!asset.isCacheReferenced) asset.isCacheReferenced = true;
+    }
+
+    /** removes the given asset from the cache, if present */
+    static void remove(Asset<?> asset) {
+        Segment segment = asset.cacheSegment;
+        if (segment == null) return;
+
+        synchronized (segment) {
+            if (asset.cacheSegment == segment) segment.unlink(asset);
+        }
+    }
+
+    /**
+     * The assets of one memory kind, in two intrusive doubly linked lists ordered from most to least recently used.
+     */
+    static final class Segment {
+        private volatile long budget;
+        private volatile long usedBytes = 0;
+        private volatile int size = 0;
+        private long protectedBytes = 0;
+
+        private Asset<?> probationHead;
+        private Asset<?> probationTail;
+        private Asset<?> protectedHead;
+        private Asset<?> protectedTail;
+
+        Segment(long budget) {
+            this.budget = budget;
+        }
+
+        /**
+         * finds the asset to evict. Assets that have been used since they were last examined are given a second chance
+         * in the protected segment. Every asset is examined at most twice, as promoting clears its flag.
+         * @return the least recently used asset that was not used since it was last examined, or null if empty
+         */
+        Asset<?> findVictim() {
+            while (true) {
+                Asset<?> candidate = (probationTail != null) ? probationTail : protectedTail;
+                if (candidate == null || !candidate.isCacheReferenced) return candidate;
+
+                candidate.isCacheReferenced = false;
+                unlink(candidate);
+                pushProtected(candidate);
+            }
+        }
+
+        void pushProbation(Asset<?> asset) {
+            link(asset, false);
+            asset.cacheNext = probationHead;
+            if (probationHead != null) probationHead.cachePrev = asset;
+            probationHead = asset;
+            if (probationTail == null) probationTail = asset;
+        }
+
+        void pushProtected(Asset<?> asset) {
+            link(asset, true);
+            asset.cacheNext = protectedHead;
+            if (protectedHead != null) protectedHead.cachePrev = asset;
+            protectedHead = asset;
+            if (protectedTail == null) protectedTail = asset;
+            protectedBytes += asset.cacheCost;
+
+            // demote the least recently used protected assets
+            while (protectedBytes > budget * PROTECTED_FRACTION && protectedTail != asset) {
+                Asset<?> demoted = protectedTail;
+                unlink(demoted);
+                pushProbation(demoted);
+            }
+        }
+
+        private void link(Asset<?> asset, boolean isProtected) {
+            asset.cacheSegment = this;
+            asset.isCacheProtected = isProtected;
+            asset.cachePrev = null;
+            usedBytes += asset.cacheCost;
+            size++;
+        }
+
+        void unlink(Asset<?> asset) {
+            Asset<?> prev = asset.cachePrev;
+            Asset<?> next = asset.cacheNext;
+
+            if (asset.isCacheProtected) {
+                if (prev == null) protectedHead = next; else prev.cacheNext = next;
+                if (next == null) protectedTail = prev; else next.cachePrev = prev;
+                protectedBytes -= asset.cacheCost;
+
+            } else {
+                if (prev == null) probationHead = next; else prev.cacheNext = next;
+                if (next == null) probationTail = prev; else next.cachePrev = prev;
+            }
+
+            usedBytes -= asset.cacheCost;
+            size--;
+            asset.cachePrev = null;
+            asset.cacheNext = null;
+            asset.cacheSegment = null;
+        }
+    }
+}
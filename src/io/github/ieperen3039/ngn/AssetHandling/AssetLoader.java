@@ -0,0 +1,129 @@
+package io.github.ieperen3039.ngn.AssetHandling;
+
+import io.github.ieperen3039.ngn.Core.RenderManager;
+import io.github.ieperen3039.ngn.Core.TaskQueue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Executes the steps of asynchronous asset loading. Reading and decoding files runs on a bounded pool of background
+ * threads, while steps that use OpenGL are executed on the render thread of the registered {@link RenderManager}.
+ * <p>
+ * The queue of the background threads is unbounded, such that submitting never blocks, fails, or executes a task on
+ * the submitting thread. Background work thus never runs on the render thread.
+ * @see Asset#getAsync()
+ */
+public final class AssetLoader {
+    private static final int NUM_THREADS = Math.min(4, Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+
+    private static final ThreadPoolExecutor ioPool;
+    private static volatile RenderManager renderManager = null;
+    private static volatile Thread renderThread = null;
+
+    static {
+        AtomicInteger threadCount = new AtomicInteger();
+        ioPool = new ThreadPoolExecutor(
+                NUM_THREADS, NUM_THREADS, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "Asset loader " + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+    }
+
+    private AssetLoader() {}
+
+    /**
+     * sets the render manager used for all steps that require the render thread. Is set automatically by the render
+     * loops on initialisation. Only one render thread can be registered at a time; registering the same thread again
+     * replaces its manager.
+     * @param manager      the manager that executes actions on the render thread
+     * @param renderThread the thread that executes these actions
+     * @throws IllegalStateException if another render thread that has not terminated has already been registered
+     */
+    public static synchronized void setRenderManager(RenderManager manager, Thread renderThread) {
+        Thread current = AssetLoader.renderThread;
+        if (current != null && current != renderThread && current.getState() != Thread.State.TERMINATED) {
+            throw new IllegalStateException(String.format(
+                    "Cannot register %s as render thread, %s is already registered", renderThread, current
+            ));
+        }
+
+        AssetLoader.renderManager = manager;
+        AssetLoader.renderThread = renderThread;
+    }
+
+    /**
+     * @return true if the current thread is the render thread of the registered render manager
+     */
+    public static boolean isRenderThread() {
+        return Thread.currentThread() == renderThread;
+    }
+
+    /**
+     * executes the given action on the render thread, or immediately if no render manager is registered.
+     */
+    static void runOnRenderThread(Runnable action) {
+        RenderManager manager = renderManager;
+        if (manager == null) {
+            action.run();
+        } else {
+            manager.executeOnRenderThread(action, TaskQueue.Priority.LOW);
+        }
+    }
+
+    /**
+     * @return the executor of the background threads. Its queue is unbounded.
+     */
+    public static Executor ioExecutor() {
+        return ioPool;
+    }
+
+    /**
+     * @return the number of tasks waiting for a background thread
+     */
+    public static int getQueueSize() {
+        return ioPool.getQueue().size();
+    }
+
+    /**
+     * executes the given supplier on a background thread, or on the render thread.
+     * @param action       the action to execute
+     * @param inBackground true to execute on a background thread, false to execute on the render thread
+     * @return a future that completes with the result of the action, or exceptionally if the action could not be
+     * scheduled or threw an exception.
+     */
+    static <T> CompletableFuture<T> supply(Supplier<? extends T> action, boolean inBackground) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                future.complete(action.get());
+
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        };
+
+        if (inBackground) {
+            ioPool.execute(task);
+
+        } else {
+            RenderManager manager = renderManager;
+            if (manager == null) {
+                future.completeExceptionally(new Asset.AssetException("No render thread registered for loading assets"));
+
+            } else {
+                manager.executeOnRenderThread(task, TaskQueue.Priority.LOW);
+            }
+        }
+
+        return future;
+    }
+}
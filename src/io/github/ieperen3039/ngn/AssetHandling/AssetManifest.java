@@ -0,0 +1,128 @@
+package io.github.ieperen3039.ngn.AssetHandling;
+
+import io.github.ieperen3039.ngn.Tools.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A list of assets to load before they are needed, for example while showing a loading screen. All assets are loaded in
+ * parallel using {@link Asset#getAsync()}, thus steps that require OpenGL are executed on the render thread, which must
+ * be running for the load to complete.
+ * <pre>{@code
+ *     AssetManifest manifest = new AssetManifest().add(GenericShapes.CUBE.meshResource(), terrainTexture);
+ *     manifest.load((loaded, total) -> progressBar.setValue(loaded / (float) total));
+ * }</pre>
+ */
+public class AssetManifest {
+    private final Set<Asset<?>> assets = new LinkedHashSet<>();
+    private final AtomicInteger nrOfLoaded = new AtomicInteger();
+    private final List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * adds the given assets to this manifest. Assets that are already in this manifest are ignored.
+     * @return this
+     */
+    public AssetManifest add(Asset<?>... assets) {
+        Collections.addAll(this.assets, assets);
+        return this;
+    }
+
+    /**
+     * adds the given assets to this manifest. Assets that are already in this manifest are ignored.
+     * @return this
+     */
+    public AssetManifest addAll(Collection<? extends Asset<?>> assets) {
+        this.assets.addAll(assets);
+        return this;
+    }
+
+    /**
+     * @see #load(ProgressListener)
+     */
+    public CompletableFuture<Void> load() {
+        return load(null);
+    }
+
+    /**
+     * starts loading all assets of this manifest in parallel.
+     * @param listener receives progress updates after each asset has finished loading, or null. The listener is called
+     *                 on the thread that finished the asset, and must therefore be thread-safe.
+     * @return a future that completes when all assets have finished. If any asset failed to load, the future completes
+     * exceptionally with the first failure, after all other assets have finished. All failures are logged.
+     */
+    public CompletableFuture<Void> load(ProgressListener listener) {
+        nrOfLoaded.set(0);
+        failures.clear();
+
+        int total = assets.size();
+        CompletableFuture<?>[] loads = new CompletableFuture<?>[total];
+        int i = 0;
+
+        for (Asset<?> asset : assets) {
+            loads[i++] = asset.getAsync().whenComplete((value, ex) -> {
+                if (ex != null) {
+                    Throwable cause = (ex instanceof CompletionException) ? ex.getCause() : ex;
+                    failures.add(cause);
+                    Logger.ERROR.print(cause);
+                }
+
+                int loaded = nrOfLoaded.incrementAndGet();
+                if (listener != null) listener.onProgress(loaded, total);
+            });
+        }
+
+        return CompletableFuture.allOf(loads);
+    }
+
+    /**
+     * @return the number of assets that have finished loading since the last call to {@link #load()}, including failed
+     * assets.
+     */
+    public int getNrOfLoaded() {
+        return nrOfLoaded.get();
+    }
+
+    /**
+     * @return the fraction of assets that finished loading since the last call to {@link #load()}, or 1 if this
+     * manifest is empty.
+     */
+    public float getProgress() {
+        int total = assets.size();
+        return total == 0 ? 1 : (float) nrOfLoaded.get() / total;
+    }
+
+    /**
+     * @return the exceptions of the assets that failed to load in the last call to {@link #load()}
+     */
+    public List<Throwable> getFailures() {
+        synchronized (failures) {
+            return new ArrayList<>(failures);
+        }
+    }
+
+    /**
+     * @return the number of assets in this manifest
+     */
+    public int size() {
+        return assets.size();
+    }
+
+    /**
+     * Receives the progress of {@link #load(ProgressListener)}
+     */
+    public interface ProgressListener {
+        /**
+         * @param nrOfLoaded the number of assets that have finished loading
+         * @param total      the number of assets in the manifest
+         */
+        void onProgress(int nrOfLoaded, int total);
+    }
+}
@@ -0,0 +1,220 @@
+package io.github.ieperen3039.ngn.AssetHandling;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A read-only archive of resources, memory-mapped as a whole when opened. Packs are created with
+ * {@link AssetPackBuilder}, and are used by {@link Resource} after being {@link Resource#mount(AssetPack) mounted}.
+ * <p>
+ * The file starts with a little-endian header of {@link #HEADER_BYTES} bytes:
+ * {@code int magic, int version, int number of entries, int reserved}, followed by one index entry of
+ * {@link #ENTRY_BYTES} bytes per file, sorted on path hash:
+ * {@code long path hash, long offset, int stored length, int length, int compression}. The file data follows the
+ * index. Uncompressed files are returned as slices of the mapped file, without copying.
+ */
+public class AssetPack {
+    static final int MAGIC = 0x504E474E; // "NGNP"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int ENTRY_BYTES = 28;
+    /** alignment of the start of each file */
+    static final int ALIGNMENT = 16;
+
+    private final java.nio.file.Path file;
+    private final ByteBuffer data;
+    private final long[] hashes;
+    private final int nrOfEntries;
+
+    /**
+     * opens and maps the given pack file
+     * @throws IOException if the file could not be read, or is not a pack file of this version
+     */
+    public AssetPack(java.nio.file.Path file) throws IOException {
+        this.file = file;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Pack files are limited to 2 GB: " + file);
+            if (size < HEADER_BYTES) throw new IOException("Not a pack file: " + file);
+
+            // the mapping remains valid after the channel is closed
+            this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        if (data.getInt(0) != MAGIC) throw new IOException("Not a pack file: " + file);
+        if (data.getInt(4) != VERSION) throw new IOException("Unsupported pack version " + data.getInt(4) + ": " + file);
+
+        this.nrOfEntries = data.getInt(8);
+        if (HEADER_BYTES + (long) nrOfEntries * ENTRY_BYTES > data.capacity()) {
+            throw new IOException("Pack index exceeds the file size: " + file);
+        }
+
+        // the hashes are copied for a cache-friendly binary search
+        this.hashes = new long[nrOfEntries];
+        for (int i = 0; i < nrOfEntries; i++) {
+            hashes[i] = data.getLong(entryPosition(i));
+        }
+    }
+
+    /**
+     * @return true if this pack contains the file of the given path
+     */
+    public boolean contains(Resource.Path path) {
+        return indexOf(path) >= 0;
+    }
+
+    /**
+     * returns the content of the given file. Uncompressed files are returned as a read-only slice of the mapped pack,
+     * compressed files are decompressed into a new direct buffer.
+     * @return the content of the file, or null if this pack does not contain it
+     * @throws Asset.AssetException if the file is compressed, and could not be decompressed
+     */
+    public ByteBuffer get(Resource.Path path) throws Asset.AssetException {
+        int index = indexOf(path);
+        if (index < 0) return null;
+
+        int position = entryPosition(index);
+        long offset = data.getLong(position + 8);
+        int storedLength = data.getInt(position + 16);
+        int length = data.getInt(position + 20);
+        Compression compression = Compression.values()[data.getInt(position + 24)];
+
+        ByteBuffer stored = data.slice((int) offset, storedLength);
+
+        return switch (compression) {
+            case NONE -> stored;
+            case DEFLATE -> inflate(stored, length, path);
+        };
+    }
+
+    /**
+     * @return an input stream of the given file, or null if this pack does not contain it
+     * @see #get(Resource.Path)
+     */
+    public InputStream openStream(Resource.Path path) throws Asset.AssetException {
+        ByteBuffer buffer = get(path);
+        return buffer == null ? null : new BufferInputStream(buffer);
+    }
+
+    /**
+     * @return the number of files in this pack
+     */
+    public int size() {
+        return nrOfEntries;
+    }
+
+    private int indexOf(Resource.Path path) {
+        long hash = hash(path.toString());
+
+        int low = 0;
+        int high = nrOfEntries - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midHash = hashes[mid];
+
+            if (midHash < hash) {
+                low = mid + 1;
+            } else if (midHash > hash) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int entryPosition(int index) {
+        return HEADER_BYTES + index * ENTRY_BYTES;
+    }
+
+    private static ByteBuffer inflate(ByteBuffer stored, int length, Resource.Path path) throws Asset.AssetException {
+        ByteBuffer result = ByteBuffer.allocateDirect(length);
+        Inflater inflater = new Inflater();
+
+        try {
+            inflater.setInput(stored);
+            while (result.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(result) == 0 && inflater.needsInput()) break;
+            }
+
+            if (result.hasRemaining()) {
+                throw new Asset.AssetException(path + " is truncated in its pack");
+            }
+
+        } catch (DataFormatException ex) {
+            throw new Asset.AssetException(ex, "Could not decompress " + path);
+
+        } finally {
+            inflater.end();
+        }
+
+        return result.flip();
+    }
+
+    /**
+     * @return the hash of a path as used in the pack index: the 64-bit FNV-1a hash of its UTF-8 bytes
+     */
+    static long hash(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xFF);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+
+    /** the compression of a file in the pack, stored as its ordinal */
+    enum Compression {
+        NONE, DEFLATE
+    }
+
+    /** an input stream that reads a byte buffer, without copying it */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (length == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(target, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
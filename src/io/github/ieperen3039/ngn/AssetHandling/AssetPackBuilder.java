@@ -0,0 +1,170 @@
+package io.github.ieperen3039.ngn.AssetHandling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+/**
+ * Creates an {@link AssetPack} of a set of files. Can be run from the command line:
+ * <pre>{@code
+ *     AssetPackBuilder <source directory> <target file> [--compress]
+ * }</pre>
+ * which packs all files in the source directory, using their path relative to that directory as resource path.
+ */
+public class AssetPackBuilder {
+    /** files are only stored compressed if this reduces their size to at most this fraction */
+    private static final float COMPRESSION_THRESHOLD = 0.9f;
+
+    private final boolean doCompress;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<Long, String> pathsByHash = new HashMap<>();
+
+    /**
+     * @param doCompress if true, files that compress well are stored deflated. Decompression requires a copy when
+     *                   reading, thus this trades load time for pack size.
+     */
+    public AssetPackBuilder(boolean doCompress) {
+        this.doCompress = doCompress;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: AssetPackBuilder <source directory> <target file> [--compress]");
+            System.exit(1);
+        }
+
+        boolean doCompress = args.length > 2 && args[2].equals("--compress");
+        AssetPackBuilder builder = new AssetPackBuilder(doCompress);
+        builder.addDirectory(Path.of(args[0]));
+        builder.write(Path.of(args[1]));
+
+        System.out.println("Packed " + builder.entries.size() + " files into " + args[1]);
+    }
+
+    /**
+     * adds all files in the given directory and its subdirectories, with their path relative to the given directory
+     */
+    public AssetPackBuilder addDirectory(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile).sorted().toList();
+        }
+
+        for (Path file : files) {
+            String relative = directory.relativize(file).toString();
+            add(Resource.Path.of(relative), Files.readAllBytes(file));
+        }
+
+        return this;
+    }
+
+    /**
+     * adds a file with the given content
+     * @throws IOException if the path was already added, or its hash collides with another path
+     */
+    public AssetPackBuilder add(Resource.Path path, byte[] content) throws IOException {
+        String name = path.toString();
+        long hash = AssetPack.hash(name);
+
+        String existing = pathsByHash.putIfAbsent(hash, name);
+        if (existing != null) {
+            throw new IOException(existing.equals(name) ?
+                    "Duplicate path " + name :
+                    "Hash collision between " + existing + " and " + name + ", rename one of them"
+            );
+        }
+
+        byte[] stored = content;
+        AssetPack.Compression compression = AssetPack.Compression.NONE;
+
+        if (doCompress) {
+            byte[] deflated = deflate(content);
+            if (deflated.length <= content.length * COMPRESSION_THRESHOLD) {
+                stored = deflated;
+                compression = AssetPack.Compression.DEFLATE;
+            }
+        }
+
+        entries.add(new Entry(hash, stored, content.length, compression));
+        return this;
+    }
+
+    /**
+     * writes all added files to the given pack file, replacing any existing file
+     */
+    public void write(Path target) throws IOException {
+        entries.sort(Comparator.comparingLong(Entry::hash));
+
+        long indexEnd = AssetPack.HEADER_BYTES + (long) entries.size() * AssetPack.ENTRY_BYTES;
+        long dataStart = align(indexEnd);
+
+        ByteBuffer header = ByteBuffer.allocate((int) dataStart).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(AssetPack.MAGIC).putInt(AssetPack.VERSION).putInt(entries.size()).putInt(0);
+
+        long offset = dataStart;
+        for (Entry entry : entries) {
+            header.putLong(entry.hash()).putLong(offset)
+                    .putInt(entry.stored().length).putInt(entry.length()).putInt(entry.compression().ordinal());
+            offset = align(offset + entry.stored().length);
+        }
+
+        if (offset > Integer.MAX_VALUE) throw new IOException("Pack files are limited to 2 GB");
+        header.position(0);
+
+        try (FileChannel channel = FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            writeFully(channel, header, 0);
+
+            long position = dataStart;
+            for (Entry entry : entries) {
+                writeFully(channel, ByteBuffer.wrap(entry.stored()), position);
+                position = align(position + entry.stored().length);
+            }
+
+            // padding of the last file
+            if (channel.size() < position) writeFully(channel, ByteBuffer.allocate(1), position - 1);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static long align(long position) {
+        int mask = AssetPack.ALIGNMENT - 1;
+        return (position + mask) & ~mask;
+    }
+
+    private static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(content);
+        deflater.finish();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 2 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(chunk);
+            output.write(chunk, 0, count);
+        }
+
+        deflater.end();
+        return output.toByteArray();
+    }
+
+    private record Entry(long hash, byte[] stored, int length, AssetPack.Compression compression) {}
+}
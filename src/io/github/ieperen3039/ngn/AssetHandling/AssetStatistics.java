@@ -0,0 +1,247 @@
+package io.github.ieperen3039.ngn.AssetHandling;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the load times, memory use, hit rates and evictions of all {@link Asset assets} and {@link LazyInit lazy
+ * elements}. A {@link #snapshot()} lists one {@link Sample} per tracked object, and can be written to a CSV or JSON file
+ * to find expensive assets and to tune the budgets of the {@link AssetCache}.
+ * <p>
+ * Objects are tracked from their first access, until they are garbage collected.
+ */
+public final class AssetStatistics {
+    private static final Set<Reference<Record>> allRecords = ConcurrentHashMap.newKeySet();
+    private static final ReferenceQueue<Record> recordsToClear = new ReferenceQueue<>();
+
+    private AssetStatistics() {}
+
+    /**
+     * @return the statistics of all tracked assets, with the highest total load time first
+     */
+    public static List<Sample> snapshot() {
+        removeCollectedRecords();
+
+        List<Sample> samples = new ArrayList<>(allRecords.size());
+        for (Reference<Record> reference : allRecords) {
+            Record record = reference.get();
+            if (record != null) samples.add(record.sample());
+        }
+
+        samples.sort(Comparator.comparingLong(Sample::totalLoadNanos).reversed());
+        return samples;
+    }
+
+    /**
+     * clears the counters of all tracked assets. The residency of loaded assets is kept.
+     */
+    public static void reset() {
+        for (Reference<Record> reference : allRecords) {
+            Record record = reference.get();
+            if (record != null) record.reset();
+        }
+    }
+
+    /**
+     * writes a {@link #snapshot()} to the given file, as comma separated values with a header row
+     */
+    public static void dumpCSV(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeCSV(snapshot(), writer);
+        }
+    }
+
+    /**
+     * writes a {@link #snapshot()} to the given file, as a JSON array of objects
+     */
+    public static void dumpJSON(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeJSON(snapshot(), writer);
+        }
+    }
+
+    public static void writeCSV(List<Sample> samples, Writer writer) throws IOException {
+        writer.write("type,name,resident,bytes,memory,loads,total load ms,max load ms,hits,misses,evictions\n");
+
+        for (Sample sample : samples) {
+            writer.write(String.format(Locale.US, "%s,\"%s\",%b,%d,%s,%d,%.3f,%.3f,%d,%d,%d%n",
+                    sample.type(), sample.name().replace("\"", "\"\""), sample.isResident(),
+                    sample.bytes(), sample.memoryKind(), sample.loads(),
+                    sample.totalLoadNanos() / 1e6, sample.maxLoadNanos() / 1e6,
+                    sample.hits(), sample.misses(), sample.evictions()
+            ));
+        }
+    }
+
+    public static void writeJSON(List<Sample> samples, Writer writer) throws IOException {
+        writer.write("[");
+
+        for (int i = 0; i < samples.size(); i++) {
+            Sample sample = samples.get(i);
+            writer.write(i == 0 ? "\n" : ",\n");
+            writer.write(String.format(Locale.US,
+                    "  {\"type\": \"%s\", \"name\": \"%s\", \"resident\": %b, \"bytes\": %d, \"memory\": \"%s\", " +
+                            "\"loads\": %d, \"totalLoadMillis\": %.3f, \"maxLoadMillis\": %.3f, " +
+                            "\"hits\": %d, \"misses\": %d, \"evictions\": %d}",
+                    sample.type(), escapeJSON(sample.name()), sample.isResident(),
+                    sample.bytes(), sample.memoryKind(), sample.loads(),
+                    sample.totalLoadNanos() / 1e6, sample.maxLoadNanos() / 1e6,
+                    sample.hits(), sample.misses(), sample.evictions()
+            ));
+        }
+
+        writer.write("\n]\n");
+    }
+
+    private static String escapeJSON(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return a readable name of the class of a generator lambda, being the class where the lambda is declared
+     */
+    static String nameOf(Object generator) {
+        String name = generator.getClass().getName();
+        int lambdaIndex = name.indexOf("$$Lambda");
+        if (lambdaIndex > 0) name = name.substring(0, lambdaIndex);
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    private static void removeCollectedRecords() {
+        while (true) {
+            Reference<? extends Record> poll = recordsToClear.poll();
+            if (poll == null) break;
+            //noinspection SuspiciousMethodCalls
+            allRecords.remove(poll);
+        }
+    }
+
+    /**
+     * The statistics of one asset at the moment of the snapshot
+     * @param type           the class of the asset
+     * @param name           the file or generator of the asset
+     * @param isResident     true if the element is loaded
+     * @param bytes          the size of the last loaded element, see {@link MemoryFootprint}
+     * @param memoryKind     the memory used by the last loaded element
+     * @param loads          the number of times the element was loaded
+     * @param totalLoadNanos the total time spent loading
+     * @param maxLoadNanos   the longest time spent on one load
+     * @param hits           the number of requests for the element while it was loaded
+     * @param misses         the number of requests for the element while it was not loaded
+     * @param evictions      the number of times the element was dropped by the {@link AssetCache}
+     */
+    public record Sample(
+            String type, String name, boolean isResident, long bytes, AssetCache.MemoryKind memoryKind,
+            long loads, long totalLoadNanos, long maxLoadNanos, long hits, long misses, long evictions
+    ) {
+        /**
+         * @return the fraction of requests that found the element loaded, or 1 if there were no requests
+         */
+        public float hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 1 : (float) hits / requests;
+        }
+    }
+
+    /**
+     * The statistics of one asset, updated by the asset itself.
+     */
+    static final class Record {
+        private final String type;
+        private final String name;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        private long loads = 0;
+        private long totalLoadNanos = 0;
+        private long maxLoadNanos = 0;
+        private long evictions = 0;
+        private long bytes = 0;
+        private AssetCache.MemoryKind memoryKind = AssetCache.MemoryKind.HEAP;
+        private boolean isResident = false;
+
+        Record(String type, String name) {
+            this.type = type;
+            this.name = name;
+            allRecords.add(new WeakReference<>(this, recordsToClear));
+        }
+
+        void hit() {
+            hits.increment();
+        }
+
+        void miss() {
+            misses.increment();
+        }
+
+        /** records a load of the given element, which took the given time */
+        synchronized void loaded(Object element, long durationNanos) {
+            loads++;
+            totalLoadNanos += durationNanos;
+            maxLoadNanos = Math.max(maxLoadNanos, durationNanos);
+            isResident = true;
+
+            if (element instanceof MemoryFootprint footprint) {
+                bytes = footprint.byteSize();
+                memoryKind = footprint.memoryKind();
+            } else {
+                bytes = AssetCache.DEFAULT_COST;
+                memoryKind = AssetCache.MemoryKind.HEAP;
+            }
+        }
+
+        synchronized void dropped() {
+            isResident = false;
+        }
+
+        synchronized void evicted() {
+            evictions++;
+        }
+
+        synchronized void reset() {
+            hits.reset();
+            misses.reset();
+            loads = 0;
+            totalLoadNanos = 0;
+            maxLoadNanos = 0;
+            evictions = 0;
+        }
+
+        synchronized Sample sample() {
+            return new Sample(
+                    type, name, isResident, bytes, memoryKind, loads, totalLoadNanos, maxLoadNanos,
+                    hits.sum(), misses.sum(), evictions
+            );
+        }
+    }
+}
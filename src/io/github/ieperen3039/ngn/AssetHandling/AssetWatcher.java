@@ -0,0 +1,210 @@
+package io.github.ieperen3039.ngn.AssetHandling;
+
+import io.github.ieperen3039.ngn.Tools.Directory;
+import io.github.ieperen3039.ngn.Tools.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches directories for changed files, and invalidates the assets loaded from these files. Changes are debounced:
+ * a file is only reloaded when it has not changed for a short time, such that an editor writing a file in multiple
+ * steps causes a single reload. Assets derived from a changed asset are invalidated as well, see
+ * {@link Asset#invalidate()}. Invalidation runs on the render thread, after which reloading happens in the background.
+ * <p>
+ * The watcher runs on its own daemon thread, from {@link #start()} until {@link #close()}.
+ */
+public class AssetWatcher implements AutoCloseable {
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+
+    private final WatchService service;
+    private final long debounceNanos;
+    private final Thread thread;
+    /** for each watched directory, the resource root it belongs to, or null for external files */
+    private final Map<WatchKey, Path> keyDirectories = new ConcurrentHashMap<>();
+    private final Map<Path, Path> resourceRoots = new ConcurrentHashMap<>();
+    /** changed files that have not yet been reloaded, with the time of their last change */
+    private final Map<Path, Long> pending = new HashMap<>();
+
+    public AssetWatcher() throws IOException {
+        this(DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * @param debounceMillis the time a file must remain unchanged before its assets are reloaded
+     */
+    public AssetWatcher(long debounceMillis) throws IOException {
+        this.service = FileSystems.getDefault().newWatchService();
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        this.thread = new Thread(this::run, "Asset watcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * watches the source directory of the class path resources, including all its subdirectories. Resources are read
+     * from this directory from now on, see {@link Resource#setSourceDirectory(Path)}
+     * @param resourceRoot the directory that corresponds to the root of the class path, e.g. {@code res}
+     */
+    public void watchResources(Path resourceRoot) throws IOException {
+        Path root = resourceRoot.toAbsolutePath().normalize();
+        Resource.setSourceDirectory(root);
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(dir);
+                resourceRoots.put(dir, root);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * watches the given directory for changes to files of external assets
+     */
+    public void watch(Directory directory) throws IOException {
+        watch(directory.getPath());
+    }
+
+    /**
+     * watches the given directory for changes to files of external assets. Subdirectories are not watched.
+     */
+    public void watch(Path directory) throws IOException {
+        register(directory.toAbsolutePath().normalize());
+    }
+
+    /**
+     * watches the directories of all external assets that exist at the moment of calling
+     */
+    public void watchExternalAssets() throws IOException {
+        for (Path file : ExternalAsset.getAllFiles()) {
+            Path parent = file.toAbsolutePath().normalize().getParent();
+            if (parent != null && !keyDirectories.containsValue(parent)) {
+                register(parent);
+            }
+        }
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+        thread.interrupt();
+    }
+
+    private void register(Path directory) throws IOException {
+        WatchKey key = directory.register(service, ENTRY_CREATE, ENTRY_MODIFY);
+        keyDirectories.put(key, directory);
+    }
+
+    private void run() {
+        long pollMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(debounceNanos) / 2);
+
+        try {
+            while (!Thread.interrupted()) {
+                WatchKey key = service.poll(pollMillis, TimeUnit.MILLISECONDS);
+
+                while (key != null) {
+                    collectEvents(key);
+                    key = service.poll();
+                }
+
+                reloadSettledFiles();
+            }
+
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // closed
+        }
+    }
+
+    private void collectEvents(WatchKey key) {
+        Path directory = keyDirectories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || directory == null) continue;
+
+            Path file = directory.resolve((Path) event.context());
+
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(file) && resourceRoots.containsKey(directory)) {
+                // new subdirectory of a resource root
+                try {
+                    register(file);
+                    resourceRoots.put(file, resourceRoots.get(directory));
+
+                } catch (IOException ex) {
+                    Logger.WARN.print(ex);
+                }
+                continue;
+            }
+
+            pending.put(file, System.nanoTime());
+        }
+
+        if (!key.reset()) {
+            keyDirectories.remove(key);
+        }
+    }
+
+    private void reloadSettledFiles() {
+        if (pending.isEmpty()) return;
+
+        long now = System.nanoTime();
+        List<Asset<?>> changed = new ArrayList<>();
+
+        Iterator<Map.Entry<Path, Long>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Long> entry = iterator.next();
+            if (now - entry.getValue() < debounceNanos) continue;
+
+            iterator.remove();
+            Path file = entry.getKey();
+            List<Asset<?>> assets = findAssets(file);
+
+            if (!assets.isEmpty()) {
+                Logger.INFO.print("Reloading " + file);
+                changed.addAll(assets);
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            AssetLoader.runOnRenderThread(() -> {
+                for (Asset<?> asset : changed) {
+                    asset.invalidate();
+                }
+            });
+        }
+    }
+
+    private List<Asset<?>> findAssets(Path file) {
+        List<Asset<?>> result = new ArrayList<>(ExternalAsset.getAll(file));
+
+        Path root = resourceRoots.get(file.getParent());
+        if (root != null) {
+            String relative = root.relativize(file).toString();
+            result.addAll(Resource.getAll(Resource.Path.of(relative)));
+        }
+
+        return result;
+    }
+}
@@ -3,11 +3,14 @@ package io.github.ieperen3039.ngn.AssetHandling;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ExternalAsset<T> extends Asset<T> {
-    private static final Map<Path, ExternalAsset<?>> allExternalAssets = new HashMap<>();
+    private static final Map<Key, ExternalAsset<?>> allExternalAssets = new ConcurrentHashMap<>();
 
     /** must be relative to file directory, for the sake of serialisation */
     private final Path fileLocation;
@@ -19,6 +22,11 @@ public class ExternalAsset<T> extends Asset<T> {
         this.fileLocation = relativePath;
     }
 
+    @Override
+    String getName() {
+        return fileLocation.toString();
+    }
+
     @Override
     protected T reload() throws AssetException {
         try {
@@ -29,14 +37,66 @@ public class ExternalAsset<T> extends Asset<T> {
         }
     }
 
-    @SuppressWarnings("unchecked")
+    /** loads this resource on a background thread. The loader must therefore not use OpenGL. */
+    @Override
+    protected CompletableFuture<T> loadAsync() {
+        return AssetLoader.supply(this::reload, true);
+    }
+
+    /**
+     * returns the asset of the given file, creating it with the given loader if no asset of this file exists. Calls
+     * with a loader created by the same lambda expression or class share the same asset, also when called concurrently.
+     */
     public static <T> ExternalAsset<T> get(FileLoader<T> loader, Path path) {
+        return get(loader, path, loader.getClass());
+    }
+
+    /**
+     * returns the asset of the given file and variant, creating it with the given loader if no such asset exists.
+     * @param variant an object with proper {@code equals} and {@code hashCode} that distinguishes the element
+     * @see Resource#get(Resource.FileLoader, Resource.Path, Object)
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ExternalAsset<T> get(FileLoader<T> loader, Path path, Object variant) {
+        Key key = new Key(path.normalize(), variant);
+        ExternalAsset<?> existing = allExternalAssets.get(key);
+        if (existing != null) return (ExternalAsset<T>) existing;
+
         //noinspection unchecked
         return (ExternalAsset<T>) allExternalAssets.computeIfAbsent(
-                path, (p) -> new ExternalAsset<>(loader, p)
+                key, (k) -> new ExternalAsset<>(loader, path)
         );
     }
 
+    /**
+     * @return all assets of the given file, of any variant
+     */
+    static List<ExternalAsset<?>> getAll(Path path) {
+        Path target = path.toAbsolutePath().normalize();
+        List<ExternalAsset<?>> result = new ArrayList<>();
+        for (ExternalAsset<?> asset : allExternalAssets.values()) {
+            if (asset.fileLocation.toAbsolutePath().normalize().equals(target)) result.add(asset);
+        }
+        return result;
+    }
+
+    /**
+     * @return the files of all external assets
+     */
+    static List<Path> getAllFiles() {
+        List<Path> result = new ArrayList<>();
+        for (ExternalAsset<?> asset : allExternalAssets.values()) {
+            result.add(asset.fileLocation);
+        }
+        return result;
+    }
+
+    private record Key(Path path, Object variant) {}
+
+    /**
+     * loads a file. May be executed on a background thread by {@link #getAsync()}, and must therefore not use OpenGL;
+     * derive a separate asset for uploading to the GPU.
+     */
     public interface FileLoader<T> extends Serializable {
         T apply(Path path) throws IOException;
     }
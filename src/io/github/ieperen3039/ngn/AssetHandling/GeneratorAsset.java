@@ -2,12 +2,26 @@ package io.github.ieperen3039.ngn.AssetHandling;
 
 import io.github.ieperen3039.ngn.Tools.Toolbox;
 
+import java.io.IOException;
+import java.io.Serial;
+import java.lang.ref.Cleaner;
+import java.util.concurrent.CompletableFuture;
+
 /**
+ * An asset generated by a lambda, possibly from other assets. An asset generated from sources holds a reference to each
+ * source until it is {@link #release() released}, or until it becomes unreachable.
  * @author Geert van Ieperen created on 26-2-2020.
  */
 public class GeneratorAsset<T> extends Asset<T> {
+    /** releases the sources of generator assets that are garbage collected */
+    private static final Cleaner CLEANER = Cleaner.create();
+
     private final AssetGenerator<? extends T> generator;
     private final AssetCleaner<T> cleanup;
+    private final boolean isBackgroundSafe;
+    private final Asset<?>[] sources;
+    /** the references to the sources, shared with the cleaner */
+    private transient SourceReferences sourceReferences;
 
     /**
      * a resource to use with lambdas.
@@ -15,13 +29,74 @@ public class GeneratorAsset<T> extends Asset<T> {
      * @param cleanup   is called on the element when this is dropped. If no action is required, use null.
      */
     public GeneratorAsset(AssetGenerator<? extends T> generator, AssetCleaner<T> cleanup) {
-        this.generator = generator;
-        this.cleanup = cleanup;
+        this(generator, cleanup, false);
     }
 
     public GeneratorAsset(AssetGenerator<? extends T> generator) {
+        this(generator, null, false);
+    }
+
+    /**
+     * a resource to use with lambdas, that can be loaded asynchronously.
+     * @param generator        is called to generate a new element
+     * @param cleanup          is called on the element when this is dropped. If no action is required, use null.
+     * @param isBackgroundSafe true if the generator does not use OpenGL, and may thus be executed on a background
+     *                         thread. If false, the generator is executed on the render thread by {@link #getAsync()}
+     * @param sources          the assets used by the generator. These are loaded asynchronously before the generator
+     *                         is executed by {@link #getAsync()}
+     */
+    public GeneratorAsset(
+            AssetGenerator<? extends T> generator, AssetCleaner<T> cleanup, boolean isBackgroundSafe,
+            Asset<?>... sources
+    ) {
         this.generator = generator;
-        this.cleanup = null;
+        this.cleanup = cleanup;
+        this.isBackgroundSafe = isBackgroundSafe;
+        this.sources = sources;
+        registerDependencies();
+    }
+
+    /**
+     * adds this asset to the dependency graph, holding a reference to each source until this asset is released or
+     * garbage collected
+     */
+    private void registerDependencies() {
+        if (sources.length == 0) return;
+
+        for (Asset<?> source : sources) {
+            source.addDependent(this);
+        }
+
+        sourceReferences = new SourceReferences(sources);
+        sourceReferences.acquire();
+        CLEANER.register(this, sourceReferences);
+    }
+
+    @Override
+    void acquireSources() {
+        if (sourceReferences != null) sourceReferences.acquire();
+    }
+
+    @Override
+    void releaseSources() {
+        if (sourceReferences != null) sourceReferences.release();
+    }
+
+    @Override
+    Asset<?>[] getSources() {
+        return sources;
+    }
+
+    @Override
+    String getName() {
+        if (sources.length == 0) return AssetStatistics.nameOf(generator);
+
+        StringBuilder builder = new StringBuilder(AssetStatistics.nameOf(generator)).append(" from ");
+        for (int i = 0; i < sources.length; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(sources[i].getName());
+        }
+        return builder.toString();
     }
 
     @Override
@@ -29,6 +104,38 @@ public class GeneratorAsset<T> extends Asset<T> {
         return generator.get();
     }
 
+    @Override
+    protected CompletableFuture<T> loadAsync() {
+        if (sources.length == 0) {
+            return AssetLoader.supply(generator, isBackgroundSafe);
+        }
+
+        CompletableFuture<?>[] sourceLoads = new CompletableFuture<?>[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            sourceLoads[i] = sources[i].getAsync();
+        }
+
+        return CompletableFuture.allOf(sourceLoads)
+                .thenCompose(v -> AssetLoader.supply(generator, isBackgroundSafe));
+    }
+
+    @Serial
+    private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        registerDependencies();
+    }
+
+    @Override
+    protected void discard(T value) {
+        if (cleanup == null) return;
+
+        if (AssetLoader.isRenderThread()) {
+            cleanup.accept(value);
+        } else {
+            AssetLoader.runOnRenderThread(() -> cleanup.accept(value));
+        }
+    }
+
     @Override
     public void drop() {
         if (cleanup != null && element != null) {
@@ -39,4 +146,44 @@ public class GeneratorAsset<T> extends Asset<T> {
         super.drop();
     }
 
+    /**
+     * The references of a generator asset to its sources. Must not refer to the asset itself, as it is the cleaning
+     * action of the asset.
+     */
+    private static final class SourceReferences implements Runnable {
+        private final Asset<?>[] sources;
+        private boolean isHeld = false;
+
+        SourceReferences(Asset<?>[] sources) {
+            this.sources = sources;
+        }
+
+        void acquire() {
+            synchronized (this) {
+                if (isHeld) return;
+                isHeld = true;
+            }
+
+            for (Asset<?> source : sources) {
+                source.acquire();
+            }
+        }
+
+        void release() {
+            synchronized (this) {
+                if (!isHeld) return;
+                isHeld = false;
+            }
+
+            for (Asset<?> source : sources) {
+                source.release();
+            }
+        }
+
+        /** called by the cleaner when the asset is unreachable. Releasing may drop GPU resources */
+        @Override
+        public void run() {
+            AssetLoader.runOnRenderThread(this::release);
+        }
+    }
 }
@@ -6,13 +6,17 @@ import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
+ * A lazily generated element. The element is generated at most once until it is dropped, also when multiple threads
+ * request it at the same time. Reading a generated element does not lock.
  * @author Geert van Ieperen created on 26-2-2020.
  */
 public class LazyInit<T> implements Serializable {
     private final ResourceGenerator<? extends T> generator;
     private final ResourceCleaner<T> cleanup;
     /** the cached element */
-    protected transient T element = null;
+    protected transient volatile T element = null;
+    /** the statistics of this element, created on first access */
+    private transient volatile AssetStatistics.Record statistics = null;
 
     /**
      * a resource to use with lambdas.
@@ -40,11 +44,14 @@ public class LazyInit<T> implements Serializable {
     /**
      * drops the cached element, causing a reload on the next get
      */
-    public void drop() {
-        if (cleanup != null && element != null) {
+    public synchronized void drop() {
+        if (element == null) return;
+
+        if (cleanup != null) {
             cleanup.accept(element);
         }
 
+        statistics().dropped();
         element = null;
     }
 
@@ -54,11 +61,21 @@ public class LazyInit<T> implements Serializable {
      * @throws ResourceException if the reloading operation fails
      */
     public T get() throws ResourceException {
-        if (element == null) {
-            element = reload();
+        T current = element;
+        if (current != null) {
+            statistics().hit();
+            return current;
         }
 
-        return element;
+        synchronized (this) {
+            if (element == null) {
+                element = load();
+            } else {
+                statistics().hit();
+            }
+
+            return element;
+        }
     }
 
 
@@ -69,12 +86,45 @@ public class LazyInit<T> implements Serializable {
      * @throws ResourceException if the reloading operation fails
      */
     public T getOrElse(Consumer<T> action) throws ResourceException {
-        if (element == null) {
-            element = reload();
-            action.accept(element);
+        T current = element;
+        if (current != null) {
+            statistics().hit();
+            return current;
+        }
+
+        synchronized (this) {
+            if (element == null) {
+                element = load();
+                action.accept(element);
+            } else {
+                statistics().hit();
+            }
+
+            return element;
         }
+    }
 
-        return element;
+    /** reloads the element, recording a miss and the load time */
+    private T load() {
+        AssetStatistics.Record record = statistics();
+        record.miss();
+
+        long start = System.nanoTime();
+        T value = reload();
+        record.loaded(value, System.nanoTime() - start);
+        return value;
+    }
+
+    private AssetStatistics.Record statistics() {
+        AssetStatistics.Record current = statistics;
+        if (current != null) return current;
+
+        synchronized (this) {
+            if (statistics == null) {
+                statistics = new AssetStatistics.Record(getClass().getSimpleName(), AssetStatistics.nameOf(generator));
+            }
+            return statistics;
+        }
     }
 
     /**
@@ -82,8 +132,9 @@ public class LazyInit<T> implements Serializable {
      * @param action an action that receives the element iff it exists.
      */
     public void ifPresent(Consumer<T> action) {
-        if (element != null) {
-            action.accept(element);
+        T current = element;
+        if (current != null) {
+            action.accept(current);
         }
     }
 
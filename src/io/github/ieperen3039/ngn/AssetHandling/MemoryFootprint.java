@@ -0,0 +1,20 @@
+package io.github.ieperen3039.ngn.AssetHandling;
+
+/**
+ * An element of an {@link Asset} that can report how much memory it occupies. The {@link AssetCache} charges this
+ * amount against the budget of its memory kind. Elements that do not implement this interface are charged
+ * {@link AssetCache#DEFAULT_COST} bytes of heap memory.
+ */
+public interface MemoryFootprint {
+    /**
+     * @return the approximate number of bytes occupied by this element
+     */
+    long byteSize();
+
+    /**
+     * @return the kind of memory occupied by this element
+     */
+    default AssetCache.MemoryKind memoryKind() {
+        return AssetCache.MemoryKind.HEAP;
+    }
+}
@@ -2,17 +2,28 @@ package io.github.ieperen3039.ngn.AssetHandling;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serial;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author Geert van Ieperen created on 26-2-2020.
  */
 public class Resource<T> extends Asset<T> {
-    private static final Map<Path, Resource<?>> allFileResources = new HashMap<>();
+    private static final Map<Key, Resource<?>> allFileResources = new ConcurrentHashMap<>();
+    /** if not null, resources are read from this directory before the packs and the class path */
+    private static volatile java.nio.file.Path sourceDirectory = null;
+    /** mounted packs, most recently mounted first */
+    private static final List<AssetPack> packs = new CopyOnWriteArrayList<>();
 
     /**
      * must be relative to file directory, for the sake of serialisation
@@ -26,6 +37,11 @@ public class Resource<T> extends Asset<T> {
         this.fileLocation = relativePath;
     }
 
+    @Override
+    String getName() {
+        return fileLocation.toString();
+    }
+
     @Override
     protected T reload() throws AssetException {
         try {
@@ -36,23 +52,162 @@ public class Resource<T> extends Asset<T> {
         }
     }
 
-    @SuppressWarnings("unchecked")
+    /** loads this resource on a background thread. The loader must therefore not use OpenGL. */
+    @Override
+    protected CompletableFuture<T> loadAsync() {
+        return AssetLoader.supply(this::reload, true);
+    }
+
+    /**
+     * returns the resource of the given path, creating it with the given loader if no resource of this path exists.
+     * Calls with a loader created by the same lambda expression or class share the same resource, also when called
+     * concurrently.
+     */
     public static <T> Resource<T> get(FileLoader<T> loader, Path path) {
+        return get(loader, path, loader.getClass());
+    }
+
+    /**
+     * returns the resource of the given path and variant, creating it with the given loader if no such resource
+     * exists. Use this when one loader can produce different elements from the same file, such as a mesh loaded with
+     * different scaling.
+     * @param variant an object with proper {@code equals} and {@code hashCode} that distinguishes the element
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Resource<T> get(FileLoader<T> loader, Path path, Object variant) {
+        Key key = new Key(path.id, variant);
+        Resource<?> existing = allFileResources.get(key);
+        if (existing != null) return (Resource<T>) existing;
+
         //noinspection unchecked
         return (Resource<T>) allFileResources.computeIfAbsent(
-                path, (p) -> new Resource<>(loader, p)
+                key, (k) -> new Resource<>(loader, path)
         );
     }
 
+    /**
+     * Makes resources load from the given directory if the file exists there, and from the class path otherwise. This
+     * allows editing the source files of resources while the application runs, for example with an
+     * {@link AssetWatcher}.
+     * @param directory the root directory of the resources, or null to only use the class path
+     */
+    public static void setSourceDirectory(java.nio.file.Path directory) {
+        sourceDirectory = directory;
+    }
+
+    /**
+     * Makes resources load from the given pack if it contains them. Packs mounted later take precedence over packs
+     * mounted earlier, and all packs take precedence over the class path.
+     */
+    public static void mount(AssetPack pack) {
+        packs.add(0, pack);
+    }
+
+    /**
+     * removes a pack mounted with {@link #mount(AssetPack)}. Resources that are already loaded are not affected.
+     */
+    public static void unmount(AssetPack pack) {
+        packs.remove(pack);
+    }
+
+    /**
+     * @return all resources of the given path, of any variant
+     */
+    static List<Resource<?>> getAll(Path path) {
+        List<Resource<?>> result = new ArrayList<>();
+        for (Map.Entry<Key, Resource<?>> entry : allFileResources.entrySet()) {
+            if (entry.getKey().pathId() == path.id) result.add(entry.getValue());
+        }
+        return result;
+    }
+
+    private record Key(int pathId, Object variant) {}
+
+    /**
+     * loads a file. May be executed on a background thread by {@link #getAsync()}, and must therefore not use OpenGL;
+     * derive a separate asset for uploading to the GPU.
+     */
     public interface FileLoader<T> extends Serializable {
         T apply(Path path) throws IOException;
     }
 
-    public static class Path {
-        String path;
+    /**
+     * A path of a resource, relative to the resource root. Paths are interned: each distinct path string has exactly
+     * one instance, with a compact integer id. Paths can thus be compared by identity or id, except for paths created
+     * with the deprecated constructor, which are equal to the interned instance but not identical.
+     */
+    public static final class Path implements Serializable {
+        private static final Map<String, Path> allPaths = new ConcurrentHashMap<>();
+        private static final List<Path> pathsById = new ArrayList<>();
 
-        public Path(String path) {
+        final String path;
+        private final transient int id;
+
+        private Path(String path, int id) {
             this.path = path;
+            this.id = id;
+        }
+
+        /**
+         * creates a copy of the interned path of the given string, which is equal to it but not identical.
+         * @deprecated use {@link #of(String)}, which returns the interned instance itself
+         */
+        @Deprecated
+        public Path(String path) {
+            this(of(path));
+        }
+
+        private Path(Path interned) {
+            this(interned.path, interned.id);
+        }
+
+        /**
+         * @return the unique path of the given string. Backslashes are replaced by slashes, and duplicate or trailing
+         * slashes are removed.
+         */
+        public static Path of(String path) {
+            Path existing = allPaths.get(path);
+            if (existing != null) return existing;
+
+            String normalized = normalize(path);
+            Path result = allPaths.computeIfAbsent(normalized, Path::create);
+            allPaths.putIfAbsent(path, result);
+            return result;
+        }
+
+        private static Path create(String normalized) {
+            synchronized (pathsById) {
+                Path newPath = new Path(normalized, pathsById.size());
+                pathsById.add(newPath);
+                return newPath;
+            }
+        }
+
+        /**
+         * @return the path with the given id
+         */
+        public static Path byId(int id) {
+            synchronized (pathsById) {
+                return pathsById.get(id);
+            }
+        }
+
+        private static String normalize(String path) {
+            String result = path.replace('\\', '/');
+            while (result.contains("//")) {
+                result = result.replace("//", "/");
+            }
+            if (result.length() > 1 && result.endsWith("/")) {
+                result = result.substring(0, result.length() - 1);
+            }
+            return result;
+        }
+
+        /**
+         * @return the unique id of this path
+         */
+        public int id() {
+            return id;
         }
 
         public Path resolve(String... relative) {
@@ -61,12 +216,12 @@ public class Resource<T> extends Asset<T> {
                 pathBuilder.append("/");
                 pathBuilder.append(s);
             }
-            return new Path(pathBuilder.toString());
+            return of(pathBuilder.toString());
         }
 
         public Path resolve(Path relative) {
             String newPath = this.path + "/" + relative.path;
-            return new Path(newPath);
+            return of(newPath);
         }
 
         public static Path get(String... elements) {
@@ -75,16 +230,32 @@ public class Resource<T> extends Asset<T> {
                 pathBuilder.append("/");
                 pathBuilder.append(elements[i]);
             }
-            return new Path(pathBuilder.toString());
+            return of(pathBuilder.toString());
         }
 
         /**
-         * creates a file input stream of the resource indicated by this path.
+         * creates a file input stream of the resource indicated by this path. The resource is read from the source
+         * directory if set, or otherwise from the mounted packs, or otherwise from the class path.
          * Intended for use as part of a {@link FileLoader}
          *
          * @return this resource as input stream
          */
         public InputStream asStream() throws AssetException {
+            java.nio.file.Path file = findInSourceDirectory();
+            if (file != null) {
+                try {
+                    return Files.newInputStream(file);
+
+                } catch (IOException ex) {
+                    throw new AssetException(ex, "Could not read resource " + file);
+                }
+            }
+
+            for (AssetPack pack : packs) {
+                InputStream packed = pack.openStream(this);
+                if (packed != null) return packed;
+            }
+
             InputStream stream = getClass().getClassLoader().getResourceAsStream(path);
             if (stream == null) {
                 throw new AssetException("Could not find resource " + path);
@@ -92,6 +263,34 @@ public class Resource<T> extends Asset<T> {
             return stream;
         }
 
+        /**
+         * returns the content of the resource indicated by this path. If the resource is stored uncompressed in a
+         * mounted pack, this returns a read-only slice of the mapped pack without copying. Otherwise, the content is
+         * read into a new buffer.
+         * @return this resource as a byte buffer, positioned at the start of the content
+         */
+        public ByteBuffer asByteBuffer() throws IOException {
+            if (findInSourceDirectory() == null) {
+                for (AssetPack pack : packs) {
+                    ByteBuffer packed = pack.get(this);
+                    if (packed != null) return packed;
+                }
+            }
+
+            try (InputStream stream = asStream()) {
+                return ByteBuffer.wrap(stream.readAllBytes());
+            }
+        }
+
+        /** @return the file of this resource in the source directory, or null if there is no such file */
+        private java.nio.file.Path findInSourceDirectory() {
+            java.nio.file.Path directory = sourceDirectory;
+            if (directory == null) return null;
+
+            java.nio.file.Path file = directory.resolve(path);
+            return Files.isRegularFile(file) ? file : null;
+        }
+
         public String asText() throws IOException, AssetException {
             String result;
             try (InputStream in = this.asStream();
@@ -101,9 +300,26 @@ public class Resource<T> extends Asset<T> {
             return result;
         }
 
+        @Override
+        public boolean equals(Object other) {
+            // interned, thus equal ids imply equal paths
+            return this == other || (other instanceof Path p && p.id == id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
         @Override
         public String toString() {
             return path;
         }
+
+        /** replaces a deserialized path with the interned instance */
+        @Serial
+        private Object readResolve() {
+            return of(path);
+        }
     }
 }
@@ -0,0 +1,91 @@
+package io.github.ieperen3039.ngn.Camera;
+
+import io.github.ieperen3039.ngn.Scene.TransformPipeline;
+import io.github.ieperen3039.ngn.Scene.TransformSnapshot;
+import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
+import org.joml.Vector3f;
+
+/**
+ * Advances a camera on the simulation thread, and passes its state to the render thread through a
+ * {@link TransformPipeline}. The eye, focus and up vector of the camera each take a slot of the pipeline, such that
+ * the render thread interpolates the camera like any other entity. A simulation loop uses it as follows:
+ * <pre>{@code
+ *     camera.update(deltaTime);
+ *     // set the transforms of the entities
+ *     pipeline.publish(time);
+ * }</pre>
+ * @see io.github.ieperen3039.ngn.Rendering.RenderLoop#setTransformPipeline(TransformPipeline, PublishedCamera)
+ */
+public class PublishedCamera {
+    private static final Quaternionfc NO_ROTATION = new Quaternionf();
+
+    private final Camera source;
+    private final TransformPipeline pipeline;
+    private final int eyeSlot;
+    private final int focusSlot;
+    private final int upSlot;
+
+    // only used by the render thread
+    private final Vector3f eye;
+    private final Vector3f focus;
+    private final Vector3f up;
+    private final StaticCamera frameCamera;
+
+    /**
+     * registers the camera in the given pipeline. This may only be called from the simulation thread. Whether the
+     * camera is isometric is taken from the source at this moment.
+     * @param source   the camera that is advanced by the simulation thread
+     * @param pipeline the pipeline of the simulation
+     */
+    public PublishedCamera(Camera source, TransformPipeline pipeline) {
+        this.source = source;
+        this.pipeline = pipeline;
+
+        this.eye = new Vector3f(source.getEye());
+        this.focus = new Vector3f(source.getFocus());
+        this.up = new Vector3f(source.getUpVector());
+
+        this.eyeSlot = pipeline.register(eye, NO_ROTATION);
+        this.focusSlot = pipeline.register(focus, NO_ROTATION);
+        this.upSlot = pipeline.register(up, NO_ROTATION);
+
+        // reads the vectors above, which are updated in place
+        this.frameCamera = new StaticCamera(eye, focus, up, source.isIsometric());
+    }
+
+    /**
+     * advances the camera and writes its state for the current tick. This may only be called from the simulation
+     * thread, before {@link TransformPipeline#publish}.
+     * @param deltaTime the number of seconds passed since the last update
+     */
+    public void update(float deltaTime) {
+        source.updatePosition(deltaTime);
+
+        pipeline.set(eyeSlot, source.getEye(), NO_ROTATION);
+        pipeline.set(focusSlot, source.getFocus(), NO_ROTATION);
+        pipeline.set(upSlot, source.getUpVector(), NO_ROTATION);
+    }
+
+    /**
+     * computes the state of the camera between the last two ticks. This may only be called from the render thread.
+     * @param snapshot the snapshot of the current frame
+     * @param alpha    the interpolation factor of the current frame
+     * @return a camera at the interpolated state, which remains valid until the next call to this method
+     */
+    public Camera interpolate(TransformSnapshot snapshot, float alpha) {
+        // snapshots published before registering do not contain the camera
+        if (snapshot.size() > Math.max(eyeSlot, Math.max(focusSlot, upSlot))) {
+            snapshot.getPosition(eyeSlot, alpha, eye);
+            snapshot.getPosition(focusSlot, alpha, focus);
+            snapshot.getPosition(upSlot, alpha, up);
+        }
+
+        return frameCamera;
+    }
+
+    /** @return the camera that is advanced by the simulation thread */
+    public Camera getSource() {
+        return source;
+    }
+}
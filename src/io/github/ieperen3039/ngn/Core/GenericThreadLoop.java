@@ -1,12 +1,12 @@
 package io.github.ieperen3039.ngn.Core;
 
-import io.github.ieperen3039.ngn.DataStructures.Generic.AveragingQueue;
+import io.github.ieperen3039.ngn.DataStructures.Generic.RollingHistogram;
 import io.github.ieperen3039.ngn.Tools.Logger;
 import io.github.ieperen3039.ngn.Tools.RealTimeTimer;
 import io.github.ieperen3039.ngn.Tools.TickTime;
 import io.github.ieperen3039.ngn.Tools.Toolbox;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.function.Supplier;
 
@@ -14,18 +14,38 @@ import java.util.function.Supplier;
 /**
  * A general-purpose simulation loop that allows concurrent control on a process. This object has not been started, and
  * can be started by a call to {@link Thread#start()}. The loop will run until {@link #initiateStop()} is called.
+ * <p>
+ * Ticks are scheduled on {@link System#nanoTime()} at a fixed interval, such that a slow tick does not shift the
+ * schedule of all following ticks. By default, each tick receives the real time since the previous tick, and ticks that
+ * are late are simply started as soon as possible. With {@link #setFixedTimestep(boolean, int)}, each tick instead
+ * receives exactly the target delta time, and the loop runs a limited number of catch-up ticks to recover from a slow
+ * tick.
  * @author Geert van Ieperen recreated on 29-10-2019
  */
 public abstract class GenericThreadLoop extends Thread {
     private final Supplier<String> tickCounter;
     private final Supplier<String> possessionCounter;
-    private float targetDeltaMillis;
+    private long targetDeltaNanos;
     private CountDownLatch pauseBlock = new CountDownLatch(0);
     private boolean shouldStop = false;
     private boolean isPaused = true;
-    private ConcurrentLinkedQueue<Runnable> postLoopActions = new ConcurrentLinkedQueue<>();
-    private AveragingQueue avgTPS;
-    private AveragingQueue avgPoss;
+    private final TaskQueue postLoopActions = new TaskQueue();
+    private long postLoopBudgetNanos = Long.MAX_VALUE;
+    private final RollingHistogram tickIntervals;
+    private final RollingHistogram tickDurations;
+
+    private SleepStrategy sleepStrategy = SleepStrategy.PARK_THEN_SPIN;
+    private boolean fixedTimestep = false;
+    private int maxCatchUpTicks = 0;
+    private volatile long missedDeadlines = 0;
+    private volatile long droppedTicks = 0;
+
+    private boolean isUnthrottled = false;
+    private long tickLimit = Long.MAX_VALUE;
+    private boolean isHeadless = false;
+    private volatile long tickCount = 0;
+    private volatile long activeNanos = 0;
+    private QualityGovernor governor = null;
 
     /**
      * creates a new, unstarted simulation loop
@@ -35,13 +55,23 @@ public abstract class GenericThreadLoop extends Thread {
     public GenericThreadLoop(String name, int targetTps) {
         super(name);
         assert targetTps > 0;
-        this.targetDeltaMillis = 1000f / targetTps;
-
-        avgTPS = new AveragingQueue(targetTps / 2);
-        avgPoss = new AveragingQueue(targetTps / 10);
-
-        tickCounter = () -> String.format("%s TPS: %1.01f", name, avgTPS.average());
-        possessionCounter = () -> String.format("%s POSS: %3d%%", name, (int) (100 * avgPoss.average()));
+        this.targetDeltaNanos = 1_000_000_000L / targetTps;
+
+        // statistics over the last 2 seconds
+        tickIntervals = new RollingHistogram(targetTps * 2);
+        tickDurations = new RollingHistogram(targetTps * 2);
+
+        tickCounter = () -> String.format(
+                "%s TPS: %1.01f (p99 %1.01f ms, jitter %1.02f ms)", name,
+                1e9 / tickIntervals.mean(), tickIntervals.percentile(0.99f) / 1e6,
+                tickIntervals.standardDeviation() / 1e6
+        );
+        possessionCounter = () -> String.format(
+                "%s POSS: %3d%% (p99 %3d%%, missed %d)", name,
+                (int) (100 * tickDurations.mean() / targetDeltaNanos),
+                (int) (100 * tickDurations.percentile(0.99f) / targetDeltaNanos),
+                missedDeadlines
+        );
     }
 
     /**
@@ -75,48 +105,90 @@ public abstract class GenericThreadLoop extends Thread {
             RealTimeTimer loopTimer = new RealTimeTimer();
             isPaused = false;
 
+            long deadline = System.nanoTime();
+            long previousTickStart = deadline;
+            long previousTickEnd = deadline;
+            int catchUpTicks = 0;
+
             while (!shouldStop && !Thread.interrupted()) {
-                // start measuring how long a gameloop takes
-                loopTimer.updateLoopTime();
+                long tickStart = System.nanoTime();
+                boolean unthrottled = isUnthrottled;
+                if (fixedTimestep || unthrottled) {
+                    loopTimer.addDeltaTimeNanos(targetDeltaNanos);
+                } else {
+                    loopTimer.updateLoopTime();
+                }
 
                 // do stuff
                 update(loopTimer);
                 if (Thread.interrupted()) break;
 
                 // do more stuff
-                runPostLoopActions();
+                postLoopActions.run(postLoopBudgetNanos);
                 if (Thread.interrupted()) break;
 
-                // number of milliseconds remaining in this loop
-                float remainingTime = targetDeltaMillis - loopTimer.getMillisSinceLastUpdate();
+                long tickEnd = System.nanoTime();
+                deadline += targetDeltaNanos;
+
+                if (unthrottled) {
+                    // never wait, and never consider ourselves behind
+                    deadline = tickEnd;
+
+                } else if (tickEnd - deadline > 0) {
+                    // the next tick should have started already
+                    missedDeadlines++;
 
-                // sleep at least 0 milliseconds
-                long correctedTime = (long) Math.max(remainingTime, 0);
-                Thread.sleep(correctedTime);
+                    if (fixedTimestep && catchUpTicks < maxCatchUpTicks) {
+                        // run the next tick immediately
+                        catchUpTicks++;
+
+                    } else {
+                        // give up on the ticks we are behind on
+                        if (fixedTimestep) droppedTicks += (tickEnd - deadline) / targetDeltaNanos;
+                        catchUpTicks = 0;
+                        deadline = tickEnd;
+                    }
+
+                } else {
+                    catchUpTicks = 0;
+                    sleepStrategy.sleepUntil(deadline);
+                }
 
                 // update Ticks per Second
-                float realTPS = 1000f / loopTimer.getMillisSinceLastUpdate();
-                avgTPS.add(realTPS);
-                avgPoss.add((targetDeltaMillis - remainingTime) / targetDeltaMillis);
+                if (tickCount > 0) tickIntervals.add(tickStart - previousTickStart);
+                tickDurations.add(tickEnd - tickStart);
+                if (governor != null && !unthrottled) governor.addTick(tickEnd - tickStart, targetDeltaNanos);
+                previousTickStart = tickStart;
+                activeNanos += tickEnd - previousTickEnd;
+                previousTickEnd = tickEnd;
+
+                if (++tickCount >= tickLimit) break;
 
                 // wait if the simulation is paused
-                isPaused = true;
-                pauseBlock.await();
-                isPaused = false;
+                if (pauseBlock.getCount() > 0) {
+                    isPaused = true;
+                    pauseBlock.await();
+                    isPaused = false;
+
+                    // do not try to catch up on the paused time
+                    deadline = System.nanoTime();
+                    previousTickStart = deadline - targetDeltaNanos;
+                    previousTickEnd = deadline;
+                }
             }
 
         } catch (Exception ex) {
             Logger.ERROR.print(this + " has crashed! " + ex.getClass());
-            exceptionHandler(ex);
+            handleCrash(ex);
 
         } catch (AssertionError ae) {
             Logger.ERROR.print(this + " has triggered an assertion: " + ae.getMessage());
-            exceptionHandler(new Exception(ae));
+            handleCrash(new Exception(ae));
 
         } finally {
             Logger.removeOnlinePrint(tickCounter);
             Logger.removeOnlinePrint(possessionCounter);
-            runPostLoopActions();
+            postLoopActions.run(Long.MAX_VALUE);
             cleanup();
         }
 
@@ -124,29 +196,63 @@ public abstract class GenericThreadLoop extends Thread {
         Logger.DEBUG.print(this + " is stopped");
     }
 
-    private void runPostLoopActions() {
-        while (!postLoopActions.isEmpty() && !Thread.interrupted()) {
-            try {
-                postLoopActions.remove().run();
-
-            } catch (Exception ex) {
-                Logger.ERROR.print(ex);
-            }
+    /** passes the exception to {@link #exceptionHandler(Exception)}, or only logs it when running headless */
+    private void handleCrash(Exception ex) {
+        if (isHeadless) {
+            Logger.ERROR.print(ex);
+        } else {
+            exceptionHandler(ex);
         }
     }
 
     /**
-     * is executed after printing the stacktrace
+     * is executed after printing the stacktrace, unless this loop runs headless
      * @param ex the exception that caused the crash
      */
     protected void exceptionHandler(Exception ex) {
         Toolbox.display(ex);
     }
 
+    /**
+     * executes the given action on this thread, after the current or next call to {@link #update(TickTime)}.
+     */
     public void defer(Runnable action) {
         postLoopActions.offer(action);
     }
 
+    /**
+     * executes the given action on this thread, after the current or next call to {@link #update(TickTime)}. Actions
+     * with higher priority are executed first.
+     */
+    public void defer(Runnable action, TaskQueue.Priority priority) {
+        postLoopActions.offer(action, priority);
+    }
+
+    /**
+     * executes all given actions in order on this thread, after the current or next call to
+     * {@link #update(TickTime)}.
+     */
+    public void deferAll(List<? extends Runnable> actions, TaskQueue.Priority priority) {
+        postLoopActions.offerAll(actions, priority);
+    }
+
+    /**
+     * Limits the time spent on deferred actions per tick. Actions that do not fit in the budget are executed in the
+     * next tick. At least one action is executed each tick. By default, all deferred actions are executed every tick.
+     * @param budgetNanos the maximum number of nanoseconds spent on deferred actions per tick
+     * @see #defer(Runnable)
+     */
+    public void setDeferredActionBudget(long budgetNanos) {
+        this.postLoopBudgetNanos = budgetNanos;
+    }
+
+    /**
+     * @return the queue of deferred actions, for inspection of its metrics
+     */
+    public TaskQueue getDeferredActions() {
+        return postLoopActions;
+    }
+
     @Override
     public String toString() {
         return getName();
@@ -172,10 +278,116 @@ public abstract class GenericThreadLoop extends Thread {
     }
 
     public int getTPS() {
-        return (int) (1000f / targetDeltaMillis);
+        return (int) (1_000_000_000L / targetDeltaNanos);
     }
 
     public void setTPS(int TPS) {
-        this.targetDeltaMillis = 1000f / TPS;
+        this.targetDeltaNanos = 1_000_000_000L / TPS;
+    }
+
+    /**
+     * sets the way this loop waits between two ticks. The default is {@link SleepStrategy#PARK_THEN_SPIN}
+     * @param strategy the new strategy
+     */
+    public void setSleepStrategy(SleepStrategy strategy) {
+        this.sleepStrategy = strategy;
+    }
+
+    /**
+     * Switches between fixed and variable timesteps. When using a fixed timestep, every call to
+     * {@link #update(TickTime)} receives exactly {@code 1 / TPS} seconds of delta time, and the loop recovers from slow
+     * ticks by running at most {@code maxCatchUpTicks} additional ticks without sleeping. Ticks that are still behind
+     * after that are dropped.
+     * @param doFixed         true to use a fixed timestep, false to pass the real time since the previous tick
+     * @param maxCatchUpTicks the maximum number of consecutive ticks that may be run without sleeping in between. Only
+     *                        used when doFixed is true.
+     */
+    public void setFixedTimestep(boolean doFixed, int maxCatchUpTicks) {
+        assert maxCatchUpTicks >= 0 : maxCatchUpTicks;
+        this.fixedTimestep = doFixed;
+        this.maxCatchUpTicks = maxCatchUpTicks;
+    }
+
+    /**
+     * When unthrottled, the loop never sleeps, and runs ticks as fast as possible. Each tick receives exactly
+     * {@code 1 / TPS} seconds of virtual time, as with {@link #setFixedTimestep(boolean, int)}, regardless of how much
+     * real time has passed. This is intended for batch simulations, replays and benchmarks.
+     * @param doUnthrottled true to run as fast as possible, false to run at the target TPS
+     * @see #getTicksPerSecond()
+     */
+    public void setUnthrottled(boolean doUnthrottled) {
+        this.isUnthrottled = doUnthrottled;
+    }
+
+    /**
+     * sets a governor that adjusts quality settings based on the possession of this loop. The governor is updated after
+     * each tick, on this thread, except when the loop is unthrottled.
+     * @param governor the new governor, or null to remove the current governor
+     */
+    public void setQualityGovernor(QualityGovernor governor) {
+        this.governor = governor;
+    }
+
+    /**
+     * When headless, a crash of this loop is only logged, instead of being passed to
+     * {@link #exceptionHandler(Exception)}, which may open a dialog. Must be set before the loop is started.
+     * @param doHeadless true if there is no user to show errors to
+     */
+    public void setHeadless(boolean doHeadless) {
+        this.isHeadless = doHeadless;
+    }
+
+    /**
+     * stops this loop after the given number of ticks. By default, there is no limit.
+     * @param maxTicks the total number of ticks executed by this loop before it stops
+     */
+    public void setTickLimit(long maxTicks) {
+        this.tickLimit = maxTicks;
+    }
+
+    /**
+     * @return the number of ticks executed by this loop
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * @return the average number of ticks executed per second of real time while the loop was not paused. For an
+     * unthrottled loop, this is the throughput of the simulation.
+     */
+    public double getTicksPerSecond() {
+        long nanos = activeNanos;
+        return (nanos == 0) ? 0 : tickCount * 1e9 / nanos;
+    }
+
+    /**
+     * @return the time in nanoseconds between the starts of consecutive ticks, over the last 2 seconds
+     */
+    public RollingHistogram getTickIntervals() {
+        return tickIntervals;
+    }
+
+    /**
+     * @return the time in nanoseconds spent executing each tick, including deferred actions, over the last 2 seconds.
+     * Relative to the target delta time, this is the possession of this loop.
+     */
+    public RollingHistogram getTickDurations() {
+        return tickDurations;
+    }
+
+    /**
+     * @return the number of ticks that finished after the next tick should have started
+     */
+    public long getMissedDeadlines() {
+        return missedDeadlines;
+    }
+
+    /**
+     * @return the number of ticks skipped because the loop could not catch up with a fixed timestep
+     * @see #setFixedTimestep(boolean, int)
+     */
+    public long getDroppedTicks() {
+        return droppedTicks;
     }
 }
@@ -0,0 +1,81 @@
+package io.github.ieperen3039.ngn.Core;
+
+import io.github.ieperen3039.ngn.Tools.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs simulation loops without a window or rendering, as fast as possible. Each loop runs on its own thread, thus
+ * multiple independent simulations can be run in parallel. Intended for batch simulations, replays and performance
+ * checks.
+ * @see GenericThreadLoop#setUnthrottled(boolean)
+ */
+public final class HeadlessRunner {
+    private HeadlessRunner() {}
+
+    /**
+     * Runs the given loop unthrottled for the given number of ticks, and waits until it has finished
+     * @param loop     an unstarted loop
+     * @param maxTicks the number of ticks to run
+     * @return the measured result of the run
+     */
+    public static Result run(GenericThreadLoop loop, long maxTicks) throws InterruptedException {
+        return runParallel(List.of(loop), maxTicks).get(0);
+    }
+
+    /**
+     * Runs all given loops unthrottled in parallel, each for the given number of ticks, and waits until all have
+     * finished. A loop that crashes is logged and stops early, which is visible in the tick count of its result. If
+     * this thread is interrupted while waiting, all loops are stopped.
+     * @param loops    unstarted loops, which must not share any state
+     * @param maxTicks the number of ticks each loop runs
+     * @return for each loop, in order, the measured result of the run
+     */
+    public static List<Result> runParallel(List<? extends GenericThreadLoop> loops, long maxTicks)
+            throws InterruptedException {
+        for (GenericThreadLoop loop : loops) {
+            loop.setUnthrottled(true);
+            loop.setTickLimit(maxTicks);
+            loop.setHeadless(true);
+        }
+
+        List<Result> results = new ArrayList<>(loops.size());
+        try {
+            for (GenericThreadLoop loop : loops) {
+                loop.start();
+            }
+
+            for (GenericThreadLoop loop : loops) {
+                loop.join();
+
+                Result result = new Result(loop.getName(), loop.getTickCount(), loop.getTicksPerSecond());
+                Logger.INFO.print(result);
+                results.add(result);
+            }
+
+        } finally {
+            // only has effect if we stopped waiting early
+            for (GenericThreadLoop loop : loops) {
+                if (loop.isAlive()) {
+                    loop.initiateStop();
+                    loop.interrupt();
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * @param name           the name of the loop
+     * @param ticks          the number of ticks executed
+     * @param ticksPerSecond the average number of ticks per second of real time
+     */
+    public record Result(String name, long ticks, double ticksPerSecond) {
+        @Override
+        public String toString() {
+            return String.format("%s: %d ticks at %1.01f ticks/sec", name, ticks, ticksPerSecond);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package io.github.ieperen3039.ngn.Core;
+
+import io.github.ieperen3039.ngn.Tools.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+/**
+ * A fixed pool of worker threads that executes jobs, where each job may depend on other jobs. Together, the jobs of a
+ * frame form a directed acyclic graph: a job is started only after all its dependencies have finished.
+ * <p>
+ * Each worker has its own deque of jobs. A worker takes new jobs from the front of its own deque, and when that is
+ * empty, steals jobs from the back of the deques of other workers. Jobs scheduled from outside the pool are placed in a
+ * shared queue. Threads that wait for a job using {@link #waitFor(Job)} help executing jobs if they are workers of this
+ * pool, and block otherwise.
+ * <p>
+ * If a job throws an exception, the exception is logged and stored in the job. Jobs that depend on a failed job are not
+ * executed, but fail with the same exception, and waiting for a failed job rethrows its exception.
+ */
+public class JobSystem {
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+    private static JobSystem defaultInstance = null;
+
+    private final Worker[] workers;
+    private final Queue<Job> sharedQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nrOfIdleWorkers = new AtomicInteger();
+    /** the jobs and counters that threads outside this pool are blocked on, such that shutdown can release them */
+    private final Queue<Object> blockedOn = new ConcurrentLinkedQueue<>();
+    private volatile boolean isRunning = true;
+
+    /**
+     * creates and starts a new job system.
+     * @param nrOfWorkers the number of worker threads
+     * @param name        the name of the job system, used to name the worker threads
+     */
+    public JobSystem(int nrOfWorkers, String name) {
+        assert nrOfWorkers > 0 : nrOfWorkers;
+        this.workers = new Worker[nrOfWorkers];
+
+        for (int i = 0; i < nrOfWorkers; i++) {
+            workers[i] = new Worker(name + " worker " + i);
+        }
+        for (Worker worker : workers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * @return a job system shared by the engine, with one worker for each processor except one.
+     */
+    public static synchronized JobSystem getDefault() {
+        if (defaultInstance == null) {
+            int nrOfWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            defaultInstance = new JobSystem(nrOfWorkers, "Jobs");
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * schedules the given task, to be executed after all given dependencies have finished.
+     * @param task         the action to execute
+     * @param dependencies the jobs that must be finished before this job starts
+     * @return a job that can be used as dependency or to wait on
+     */
+    public Job schedule(Runnable task, Job... dependencies) {
+        return schedule(task, null, dependencies);
+    }
+
+    /**
+     * schedules the given task, to be executed after all given dependencies have finished.
+     * @param task         the action to execute
+     * @param counter      a counter that counts this job until it has finished, or null
+     * @param dependencies the jobs that must be finished before this job starts
+     * @return a job that can be used as dependency or to wait on
+     */
+    public Job schedule(Runnable task, Counter counter, Job... dependencies) {
+        Job job = new Job(task, counter);
+        if (counter != null) counter.increment();
+
+        // one extra count, such that the job does not start while we are still adding dependencies
+        job.unresolved.set(dependencies.length + 1);
+
+        int resolved = 1;
+        for (Job dependency : dependencies) {
+            if (!dependency.addDependent(job)) {
+                job.resolve(dependency);
+                resolved++;
+            }
+        }
+
+        if (job.unresolved.addAndGet(-resolved) == 0) {
+            enqueue(job);
+        }
+
+        return job;
+    }
+
+    /**
+     * Executes the given action for every index in the range [start, end), split in jobs of at most grainSize indices.
+     * @param start        the first index, inclusive
+     * @param end          the last index, exclusive
+     * @param grainSize    the number of indices handled by one job
+     * @param body         the action to execute for each index
+     * @param dependencies the jobs that must be finished before any index is handled
+     * @return a job that finishes when all indices have been handled
+     */
+    public Job parallelFor(int start, int end, int grainSize, IntConsumer body, Job... dependencies) {
+        assert grainSize > 0 : grainSize;
+        List<Job> chunks = new ArrayList<>((end - start) / grainSize + 1);
+
+        for (int chunkStart = start; chunkStart < end; chunkStart += grainSize) {
+            int from = chunkStart;
+            int to = Math.min(chunkStart + grainSize, end);
+
+            chunks.add(schedule(() -> {
+                for (int i = from; i < to; i++) {
+                    body.accept(i);
+                }
+            }, dependencies));
+        }
+
+        if (chunks.isEmpty()) return schedule(() -> {}, dependencies);
+        return schedule(() -> {}, chunks.toArray(new Job[0]));
+    }
+
+    /**
+     * waits until the given job has finished. If called from a worker of this job system, this thread executes other
+     * jobs while waiting.
+     * @throws CompletionException   if the job or one of its dependencies threw an exception, wrapping that exception
+     * @throws CancellationException if this job system is shut down before the job has finished
+     */
+    public void waitFor(Job job) throws InterruptedException {
+        await(job, job::isDone);
+        if (job.failure != null) throw new CompletionException(job.failure);
+    }
+
+    /**
+     * waits until all jobs counted by the given counter have finished. If called from a worker of this job system, this
+     * thread executes other jobs while waiting.
+     * @throws CompletionException   if any of the counted jobs failed, wrapping the first exception
+     * @throws CancellationException if this job system is shut down before the jobs have finished
+     */
+    public void waitFor(Counter counter) throws InterruptedException {
+        await(counter, counter::isDone);
+        if (counter.failure != null) throw new CompletionException(counter.failure);
+    }
+
+    /**
+     * waits until isDone returns true, by helping if this is a worker, or by waiting on the given monitor otherwise. The
+     * monitor is notified when it may have become done.
+     */
+    private void await(Object monitor, BooleanSupplier isDone) throws InterruptedException {
+        if (isOwnWorker()) {
+            while (!isDone.getAsBoolean()) {
+                if (!isRunning) throw new CancellationException("Job system has been shut down");
+                helpOnce();
+            }
+            return;
+        }
+
+        blockedOn.add(monitor);
+        try {
+            synchronized (monitor) {
+                while (!isDone.getAsBoolean()) {
+                    if (!isRunning) throw new CancellationException("Job system has been shut down");
+                    monitor.wait();
+                }
+            }
+
+        } finally {
+            blockedOn.remove(monitor);
+        }
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    public int getNrOfWorkers() {
+        return workers.length;
+    }
+
+    /**
+     * stops all workers after they finish their current job. Jobs that have not started are not executed, and threads
+     * that wait for unfinished jobs receive a {@link CancellationException}.
+     */
+    public void shutdown() {
+        isRunning = false;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker);
+        }
+
+        for (Object monitor : blockedOn) {
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    private void enqueue(Job job) {
+        Thread thread = Thread.currentThread();
+
+        if (thread instanceof Worker worker && worker.system() == this) {
+            worker.deque.addFirst(job);
+        } else {
+            sharedQueue.offer(job);
+        }
+
+        if (nrOfIdleWorkers.get() > 0) {
+            for (Worker worker : workers) {
+                if (worker.isIdle) {
+                    LockSupport.unpark(worker);
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean isOwnWorker() {
+        return Thread.currentThread() instanceof Worker worker && worker.system() == this;
+    }
+
+    /** executes one job that is available to the current worker, or spins once if there is none */
+    private void helpOnce() {
+        Worker worker = (Worker) Thread.currentThread();
+        Job job = worker.findJob();
+
+        if (job == null) {
+            Thread.onSpinWait();
+        } else {
+            job.execute();
+        }
+    }
+
+    /**
+     * A unit of work with an optional set of dependencies.
+     */
+    public final class Job {
+        private final Runnable task;
+        private final Counter counter;
+        private final AtomicInteger unresolved = new AtomicInteger();
+        private List<Job> dependents = new ArrayList<>(2);
+        private volatile boolean isDone = false;
+        /** the exception thrown by this job or by one of its dependencies, or null */
+        private volatile Throwable failure = null;
+
+        private Job(Runnable task, Counter counter) {
+            this.task = task;
+            this.counter = counter;
+        }
+
+        /**
+         * @return true if this job has been executed
+         */
+        public boolean isDone() {
+            return isDone;
+        }
+
+        /**
+         * @return true if this job has finished, and either this job or one of its dependencies threw an exception
+         */
+        public boolean isFailed() {
+            return isDone && failure != null;
+        }
+
+        /** @return true if the dependent was added, false if this job is already done */
+        private synchronized boolean addDependent(Job dependent) {
+            if (isDone) return false;
+            dependents.add(dependent);
+            return true;
+        }
+
+        /** takes over the failure of the given finished dependency. Must be called before this job is executed */
+        private void resolve(Job dependency) {
+            if (dependency.failure != null && failure == null) {
+                failure = dependency.failure;
+            }
+        }
+
+        private void execute() {
+            // a job is not executed if any of its dependencies failed
+            if (failure == null) {
+                try {
+                    task.run();
+
+                } catch (Throwable ex) {
+                    Logger.ERROR.print(ex);
+                    failure = ex;
+                }
+            }
+
+            List<Job> toRelease;
+            synchronized (this) {
+                isDone = true;
+                toRelease = dependents;
+                dependents = null;
+                notifyAll();
+            }
+
+            for (Job dependent : toRelease) {
+                dependent.resolve(this);
+                if (dependent.unresolved.decrementAndGet() == 0) {
+                    enqueue(dependent);
+                }
+            }
+
+            if (counter != null) counter.decrement(failure);
+        }
+    }
+
+    /**
+     * Counts the number of jobs that have been scheduled with this counter, but have not yet finished.
+     */
+    public static final class Counter {
+        private final AtomicInteger count = new AtomicInteger();
+        /** the first exception of any of the counted jobs, or null */
+        private volatile Throwable failure = null;
+
+        /**
+         * @return the number of unfinished jobs
+         */
+        public int get() {
+            return count.get();
+        }
+
+        /**
+         * @return true if all jobs of this counter have finished
+         */
+        public boolean isDone() {
+            return count.get() == 0;
+        }
+
+        private void increment() {
+            count.incrementAndGet();
+        }
+
+        private void decrement(Throwable jobFailure) {
+            if (jobFailure != null) {
+                synchronized (this) {
+                    if (failure == null) failure = jobFailure;
+                }
+            }
+
+            if (count.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private class Worker extends Thread {
+        private final ConcurrentLinkedDeque<Job> deque = new ConcurrentLinkedDeque<>();
+        private volatile boolean isIdle = false;
+
+        Worker(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        JobSystem system() {
+            return JobSystem.this;
+        }
+
+        @Override
+        public void run() {
+            while (isRunning) {
+                Job job = findJob();
+
+                if (job != null) {
+                    job.execute();
+                    continue;
+                }
+
+                isIdle = true;
+                nrOfIdleWorkers.incrementAndGet();
+
+                // check again, a job may have been added before we were marked idle
+                job = findJob();
+                if (job == null) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+
+                nrOfIdleWorkers.decrementAndGet();
+                isIdle = false;
+
+                if (job != null) job.execute();
+            }
+        }
+
+        /** @return a job from this worker's deque, the shared queue, or another worker's deque. */
+        Job findJob() {
+            Job job = deque.pollFirst();
+            if (job != null) return job;
+
+            job = sharedQueue.poll();
+            if (job != null) return job;
+
+            int nrOfWorkers = workers.length;
+            int offset = ThreadLocalRandom.current().nextInt(nrOfWorkers);
+            for (int i = 0; i < nrOfWorkers; i++) {
+                Worker victim = workers[(offset + i) % nrOfWorkers];
+                if (victim == this) continue;
+
+                job = victim.deque.pollLast();
+                if (job != null) return job;
+            }
+
+            return null;
+        }
+    }
+}
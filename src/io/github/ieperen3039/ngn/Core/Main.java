@@ -10,7 +10,8 @@ import io.github.ieperen3039.ngn.UserInterface.FrameManagers.UIManager;
 import io.github.ieperen3039.ngn.Version;
 
 /**
- * A collection of references to any major element of the simulation.
+ * A collection of references to any major element of the simulation. Implementations should delegate all
+ * {@code executeOnRenderThread} overloads to the render loop, which implements each of them on its task queue.
  * @author Geert van Ieperen. Created on 16-9-2018.
  */
 public interface Main extends RenderManager {
@@ -0,0 +1,170 @@
+package io.github.ieperen3039.ngn.Core;
+
+import io.github.ieperen3039.ngn.DataStructures.Generic.RollingHistogram;
+import io.github.ieperen3039.ngn.Tools.Logger;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Adjusts a set of {@link QualityKnob quality knobs} to keep a loop at its target TPS. The governor watches the
+ * possession of the loop, the fraction of the tick budget that is used, at a high percentile over a window of recent
+ * ticks. When this exceeds the upper threshold, one knob is stepped down; when it stays below the lower threshold for a
+ * full window, one knob is stepped back up.
+ * <p>
+ * The gap between the thresholds and the reset of the window after each step prevent the governor from oscillating.
+ * Knobs are lowered in order of registration, and raised in reverse order; register the knobs with the least visible
+ * effect first.
+ * @see GenericThreadLoop#setQualityGovernor(QualityGovernor)
+ */
+public class QualityGovernor {
+    private final List<Setting> settings = new CopyOnWriteArrayList<>();
+    private final RollingHistogram possession;
+    private final int windowTicks;
+
+    private float percentile = 0.95f;
+    private float lowerAbove = 0.9f;
+    private float raiseBelow = 0.6f;
+    private int minSamples;
+    private boolean isEnabled = true;
+
+    /**
+     * @param windowTicks the number of ticks over which the possession is measured. After each change of quality,
+     *                    this many ticks must pass before quality is raised again.
+     */
+    public QualityGovernor(int windowTicks) {
+        assert windowTicks > 0 : windowTicks;
+        this.windowTicks = windowTicks;
+        this.minSamples = Math.max(1, windowTicks / 4);
+        this.possession = new RollingHistogram(windowTicks);
+    }
+
+    /**
+     * adds a knob to this governor. The knob is assumed to be at its highest level.
+     * @param knob the new knob. Knobs registered earlier are lowered before knobs registered later.
+     */
+    public void register(QualityKnob knob) {
+        settings.add(new Setting(knob));
+    }
+
+    /**
+     * removes a knob from this governor. The level of the knob is left as is.
+     */
+    public void unregister(QualityKnob knob) {
+        settings.removeIf(s -> s.knob == knob);
+    }
+
+    /**
+     * sets the possession thresholds, as fractions of the target tick time.
+     * @param lowerAbove quality is lowered when possession is above this value
+     * @param raiseBelow quality is raised when possession stays below this value. Must be less than lowerAbove.
+     */
+    public void setThresholds(float lowerAbove, float raiseBelow) {
+        assert raiseBelow < lowerAbove : raiseBelow + " >= " + lowerAbove;
+        this.lowerAbove = lowerAbove;
+        this.raiseBelow = raiseBelow;
+    }
+
+    /**
+     * @param percentile the percentile of the tick time that is compared to the thresholds. The default is 0.95
+     */
+    public void setPercentile(float percentile) {
+        assert percentile > 0 && percentile <= 1 : percentile;
+        this.percentile = percentile;
+    }
+
+    /**
+     * @param minSamples the number of ticks after a change of quality before quality may be lowered again. The default
+     *                   is a quarter of the window.
+     */
+    public void setMinSamples(int minSamples) {
+        assert minSamples > 0 && minSamples <= windowTicks : minSamples;
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * @param doEnable when false, the governor does not change any knob
+     */
+    public void setEnabled(boolean doEnable) {
+        this.isEnabled = doEnable;
+    }
+
+    /**
+     * @return the current level of the given knob, or -1 if it is not registered
+     */
+    public int getLevel(QualityKnob knob) {
+        for (Setting setting : settings) {
+            if (setting.knob == knob) return setting.level;
+        }
+        return -1;
+    }
+
+    /**
+     * sets all knobs back to their highest level
+     */
+    public void reset() {
+        for (Setting setting : settings) {
+            setting.set(setting.knob.levels() - 1);
+        }
+        possession.clear();
+    }
+
+    /**
+     * records one tick, and changes the quality if necessary.
+     * @param tickNanos   the time spent executing the tick
+     * @param targetNanos the target time of a tick
+     */
+    void addTick(long tickNanos, long targetNanos) {
+        if (!isEnabled) return;
+
+        possession.add(tickNanos);
+        int count = possession.count();
+        if (count < minSamples) return;
+
+        float value = (float) possession.percentile(percentile) / targetNanos;
+
+        if (value > lowerAbove) {
+            if (lower()) possession.clear();
+
+        } else if (value < raiseBelow && count == windowTicks) {
+            if (raise()) possession.clear();
+        }
+    }
+
+    private boolean lower() {
+        for (Setting setting : settings) {
+            if (setting.level > 0) {
+                setting.set(setting.level - 1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean raise() {
+        for (int i = settings.size() - 1; i >= 0; i--) {
+            Setting setting = settings.get(i);
+            if (setting.level < setting.knob.levels() - 1) {
+                setting.set(setting.level + 1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Setting {
+        final QualityKnob knob;
+        int level;
+
+        Setting(QualityKnob knob) {
+            this.knob = knob;
+            this.level = knob.levels() - 1;
+        }
+
+        void set(int newLevel) {
+            Logger.DEBUG.printf("Quality of %s set from %d to %d", knob.name(), level, newLevel);
+            level = newLevel;
+            knob.apply(newLevel);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.ieperen3039.ngn.Core;
+
+import java.util.function.IntConsumer;
+
+/**
+ * A setting that trades visual quality or simulation detail for performance, such as a LOD bias, a particle budget or a
+ * shadow map resolution. A knob has a fixed number of levels, where 0 is the cheapest and {@code levels() - 1} the
+ * most expensive.
+ * @see QualityGovernor
+ */
+public interface QualityKnob {
+    /**
+     * @return a name of this knob, used for logging
+     */
+    String name();
+
+    /**
+     * @return the number of levels of this knob. Must be at least 1.
+     */
+    int levels();
+
+    /**
+     * applies the given level. Is called on the thread of the loop that owns the governor, thus this must be safe to
+     * call concurrently with other loops that read the setting.
+     * @param level a level between 0 and {@link #levels()}, exclusive
+     */
+    void apply(int level);
+
+    /**
+     * @param name   the name of the knob
+     * @param levels the number of levels
+     * @param action the action that applies a level
+     * @return a knob that executes the given action to apply a level
+     */
+    static QualityKnob of(String name, int levels, IntConsumer action) {
+        assert levels > 0 : levels;
+        return new QualityKnob() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public int levels() {
+                return levels;
+            }
+
+            @Override
+            public void apply(int level) {
+                action.accept(level);
+            }
+        };
+    }
+}
@@ -2,19 +2,46 @@ package io.github.ieperen3039.ngn.Core;
 
 import io.github.ieperen3039.ngn.Tools.Logger;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 
 public interface RenderManager {
 
     /**
-     * Schedules the specified action to be executed in the OpenGL context. The action is guaranteed to be executed
-     * before two frames have been rendered.
+     * Schedules the specified action to be executed in the OpenGL context. The action is executed as soon as the time
+     * budget of the render thread allows.
      * @param action the action to execute
      */
     void executeOnRenderThread(Runnable action);
 
+    /**
+     * Schedules the specified action to be executed in the OpenGL context. Actions of higher priority are executed
+     * before actions of lower priority. Implementations backed by a {@link GenericThreadLoop}, such as the render loop,
+     * should override this with {@link GenericThreadLoop#defer(Runnable, TaskQueue.Priority)}; this default ignores the
+     * priority.
+     * @param action   the action to execute
+     * @param priority the priority of the action
+     */
+    default void executeOnRenderThread(Runnable action, TaskQueue.Priority priority) {
+        executeOnRenderThread(action);
+    }
+
+    /**
+     * Schedules all given actions to be executed in order in the OpenGL context. Implementations backed by a
+     * {@link GenericThreadLoop} should override this with {@link GenericThreadLoop#deferAll(List, TaskQueue.Priority)}
+     * @param actions  the actions to execute
+     * @param priority the priority of the actions
+     */
+    default void executeOnRenderThread(List<? extends Runnable> actions, TaskQueue.Priority priority) {
+        for (Runnable action : actions) {
+            executeOnRenderThread(action, priority);
+        }
+    }
+
     /**
      * Schedules the specified action to be executed in the OpenGL context. The action is guaranteed to be executed
      * before two frames have been rendered.
@@ -37,4 +64,35 @@ public interface RenderManager {
         return task;
     }
 
-}
\ No newline at end of file
+    /**
+     * Schedules all the specified actions to be executed in order in the OpenGL context. The actions are queued at
+     * once, but may be executed across multiple frames.
+     * @param actions  the actions to execute
+     * @param priority the priority of the actions
+     * @param <V>      the return type of the actions
+     * @return for each action a future that completes with its result, or completes exceptionally if it threw an
+     * exception
+     */
+    default <V> List<CompletableFuture<V>> computeOnRenderThread(
+            List<? extends Callable<V>> actions, TaskQueue.Priority priority
+    ) {
+        List<CompletableFuture<V>> futures = new ArrayList<>(actions.size());
+        List<Runnable> tasks = new ArrayList<>(actions.size());
+
+        for (Callable<V> action : actions) {
+            CompletableFuture<V> future = new CompletableFuture<>();
+            futures.add(future);
+            tasks.add(() -> {
+                try {
+                    future.complete(action.call());
+
+                } catch (Exception ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        }
+
+        executeOnRenderThread(tasks, priority);
+        return futures;
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.ieperen3039.ngn.Core;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Determines how a {@link GenericThreadLoop} waits until the start of its next tick. Parking alone is subject to the
+ * granularity of the OS scheduler, which is typically between 50 microseconds and a few milliseconds. Spinning for the
+ * final part of the wait removes this jitter, at the cost of keeping one core busy for that duration.
+ * @see #parkThenSpin(long)
+ */
+public interface SleepStrategy {
+    /** default number of nanoseconds that {@link #PARK_THEN_SPIN} busy-waits before the deadline */
+    long DEFAULT_SPIN_NANOS = 300_000;
+
+    /**
+     * blocks the current thread until {@link System#nanoTime()} is at least the given deadline. Returns immediately if
+     * the deadline has already passed.
+     * @param deadlineNanos a value relative to {@link System#nanoTime()}
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    void sleepUntil(long deadlineNanos) throws InterruptedException;
+
+    /** uses {@link Thread#sleep(long)} with millisecond resolution. Cheapest, but also the least accurate */
+    SleepStrategy SLEEP = deadlineNanos -> {
+        long remaining = deadlineNanos - System.nanoTime();
+        if (remaining > 0) Thread.sleep(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+    };
+
+    /** parks the thread for the entire duration */
+    SleepStrategy PARK = parkThenSpin(0);
+
+    /** parks the thread, and spins for the final {@link #DEFAULT_SPIN_NANOS} nanoseconds */
+    SleepStrategy PARK_THEN_SPIN = parkThenSpin(DEFAULT_SPIN_NANOS);
+
+    /**
+     * creates a strategy that parks the thread until {@code spinNanos} before the deadline, and then busy-waits until
+     * the deadline itself.
+     * @param spinNanos the number of nanoseconds before the deadline where parking is replaced by spinning
+     * @return a new sleep strategy
+     */
+    static SleepStrategy parkThenSpin(long spinNanos) {
+        assert spinNanos >= 0 : spinNanos;
+
+        return deadlineNanos -> {
+            long remaining = deadlineNanos - System.nanoTime();
+
+            while (remaining > spinNanos) {
+                LockSupport.parkNanos(remaining - spinNanos);
+                if (Thread.interrupted()) throw new InterruptedException();
+                remaining = deadlineNanos - System.nanoTime();
+            }
+
+            while (deadlineNanos - System.nanoTime() > 0) {
+                Thread.onSpinWait();
+            }
+        };
+    }
+}
@@ -0,0 +1,307 @@
+package io.github.ieperen3039.ngn.Core;
+
+import io.github.ieperen3039.ngn.DataStructures.Generic.AveragingQueue;
+import io.github.ieperen3039.ngn.Tools.Logger;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A queue of tasks that may be filled from any thread, and is executed by a single consumer thread. Tasks are executed
+ * in order of {@link Priority}, and in order of insertion within the same priority. Each call to {@link #run(long)}
+ * executes tasks until the given time budget is exhausted; remaining tasks are kept for the next call.
+ * <p>
+ * Each priority level is backed by a bounded lock-free ring buffer. When a ring buffer is full, tasks are placed in an
+ * unbounded overflow queue instead, such that offering a task never blocks nor fails. As long as the overflow queue of a
+ * priority is not empty, new tasks of that priority are placed in the overflow queue as well, such that tasks offered
+ * by the same thread are always executed in insertion order.
+ */
+public class TaskQueue {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int WAIT_TIME_SAMPLES = 64;
+
+    public enum Priority {
+        /** executed before any other task */
+        HIGH,
+        /** default priority */
+        NORMAL,
+        /** executed only if no other tasks are queued */
+        LOW
+    }
+
+    private final Ring[] rings;
+    private final AtomicInteger overflowSize = new AtomicInteger();
+
+    private final AveragingQueue waitTimes = new AveragingQueue(WAIT_TIME_SAMPLES);
+    private volatile long maxWaitNanos = 0;
+    private volatile long nrOfExecutedTasks = 0;
+
+    public TaskQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of tasks per priority that can be queued before falling back to the overflow queue.
+     *                 Is rounded up to a power of 2.
+     */
+    public TaskQueue(int capacity) {
+        Priority[] priorities = Priority.values();
+        this.rings = new Ring[priorities.length];
+
+        for (int i = 0; i < priorities.length; i++) {
+            rings[i] = new Ring(capacity);
+        }
+    }
+
+    /**
+     * queues the given task with {@link Priority#NORMAL} priority. May be called from any thread.
+     */
+    public void offer(Runnable task) {
+        offer(task, Priority.NORMAL);
+    }
+
+    /**
+     * queues the given task with the given priority. May be called from any thread.
+     */
+    public void offer(Runnable task, Priority priority) {
+        long now = System.nanoTime();
+        Ring ring = rings[priority.ordinal()];
+
+        // the ring is polled before the overflow queue, thus the ring may only be used if nothing has overflowed
+        if (!ring.overflow.isEmpty() || !ring.offer(task, now)) {
+            overflowSize.incrementAndGet();
+            ring.overflow.offer(new Entry(task, now));
+        }
+    }
+
+    /**
+     * queues all given tasks with the given priority, such that the tasks are executed in the given order. Claims all
+     * slots in the ring buffer at once where possible. May be called from any thread.
+     */
+    public void offerAll(List<? extends Runnable> tasks, Priority priority) {
+        long now = System.nanoTime();
+        Ring ring = rings[priority.ordinal()];
+
+        if (!ring.overflow.isEmpty() || !ring.offerAll(tasks, now)) {
+            // never split a batch between the ring and the overflow queue
+            overflowSize.addAndGet(tasks.size());
+            for (Runnable task : tasks) {
+                ring.overflow.offer(new Entry(task, now));
+            }
+        }
+    }
+
+    /**
+     * Executes queued tasks until either the queue is empty, or the given number of nanoseconds has passed. At least
+     * one task is executed if the queue is not empty. Tasks that throw an exception are logged and dropped. May only be
+     * called by one thread at a time.
+     * @param budgetNanos the maximum time spent in this method, checked after each task.
+     * @return the number of tasks executed
+     */
+    public int run(long budgetNanos) {
+        long start = System.nanoTime();
+        long maxWait = 0;
+        int count = 0;
+
+        Thread thread = Thread.currentThread();
+        while (!thread.isInterrupted()) {
+            Runnable task = null;
+            long enqueueTime = 0;
+
+            for (int p = 0; p < rings.length && task == null; p++) {
+                Ring ring = rings[p];
+                task = ring.poll();
+
+                if (task != null) {
+                    enqueueTime = ring.lastEnqueueTime;
+
+                } else {
+                    Entry entry = ring.overflow.poll();
+                    if (entry != null) {
+                        overflowSize.decrementAndGet();
+                        task = entry.task();
+                        enqueueTime = entry.enqueueTime();
+                    }
+                }
+            }
+
+            if (task == null) break;
+
+            long taskStart = System.nanoTime();
+            long waitNanos = taskStart - enqueueTime;
+            waitTimes.add(waitNanos / 1e9f);
+            maxWait = Math.max(maxWait, waitNanos);
+            count++;
+
+            try {
+                task.run();
+
+            } catch (Exception ex) {
+                Logger.ERROR.print(ex);
+            }
+
+            if (System.nanoTime() - start >= budgetNanos) break;
+        }
+
+        if (count > 0) {
+            maxWaitNanos = maxWait;
+            nrOfExecutedTasks += count;
+        }
+
+        return count;
+    }
+
+    /**
+     * @return true if no tasks are queued, or all queued tasks are still in the process of being inserted.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of tasks currently queued. This value may be outdated by the time it is returned.
+     */
+    public int size() {
+        int size = overflowSize.get();
+        for (Ring ring : rings) {
+            size += ring.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the average time in seconds between queueing and execution of the last executed tasks
+     */
+    public float averageWaitTime() {
+        return waitTimes.average();
+    }
+
+    /**
+     * @return the largest time in seconds between queueing and execution of a task, in the last call to
+     * {@link #run(long)} that executed any tasks
+     */
+    public float maxWaitTime() {
+        return maxWaitNanos / 1e9f;
+    }
+
+    /**
+     * @return the total number of tasks executed by this queue
+     */
+    public long getNrOfExecutedTasks() {
+        return nrOfExecutedTasks;
+    }
+
+    private record Entry(Runnable task, long enqueueTime) {}
+
+    /**
+     * A bounded multi-producer single-consumer ring buffer, together with the overflow queue of its priority. Each slot carries a sequence number that tells whether the
+     * slot is free for the producer of a given position, or filled for the consumer of that position.
+     */
+    private static final class Ring {
+        private final int mask;
+        private final AtomicLongArray sequence;
+        private final Runnable[] tasks;
+        private final long[] enqueueTimes;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head = 0;
+        /** tasks that did not fit in the ring, all of which were offered after the tasks in the ring */
+        final Queue<Entry> overflow = new ConcurrentLinkedQueue<>();
+        /** enqueue time of the last element returned by {@link #poll()} */
+        long lastEnqueueTime;
+
+        Ring(int capacity) {
+            int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+            this.mask = size - 1;
+            this.sequence = new AtomicLongArray(size);
+            this.tasks = new Runnable[size];
+            this.enqueueTimes = new long[size];
+
+            for (int i = 0; i < size; i++) {
+                sequence.set(i, i);
+            }
+        }
+
+        boolean offer(Runnable task, long enqueueTime) {
+            long pos = tail.get();
+
+            while (true) {
+                int index = (int) pos & mask;
+                long diff = sequence.get(index) - pos;
+
+                if (diff == 0) {
+                    if (tail.compareAndSet(pos, pos + 1)) {
+                        write(pos, task, enqueueTime);
+                        return true;
+                    }
+                    pos = tail.get();
+
+                } else if (diff < 0) {
+                    return false; // full
+
+                } else {
+                    pos = tail.get(); // another producer claimed this slot
+                }
+            }
+        }
+
+        boolean offerAll(List<? extends Runnable> batch, long enqueueTime) {
+            int count = batch.size();
+            if (count == 0) return true;
+            if (count > mask + 1) return false;
+
+            long pos = tail.get();
+
+            while (true) {
+                // the consumer frees slots in order, thus if the last slot is free, all slots are free
+                long last = pos + count - 1;
+                long diff = sequence.get((int) last & mask) - last;
+
+                if (diff == 0) {
+                    if (tail.compareAndSet(pos, pos + count)) {
+                        for (int i = 0; i < count; i++) {
+                            write(pos + i, batch.get(i), enqueueTime);
+                        }
+                        return true;
+                    }
+                    pos = tail.get();
+
+                } else if (diff < 0) {
+                    return false; // not enough space
+
+                } else {
+                    pos = tail.get();
+                }
+            }
+        }
+
+        private void write(long pos, Runnable task, long enqueueTime) {
+            int index = (int) pos & mask;
+            tasks[index] = task;
+            enqueueTimes[index] = enqueueTime;
+            // publishes the writes above to the consumer
+            sequence.set(index, pos + 1);
+        }
+
+        Runnable poll() {
+            long pos = head;
+            int index = (int) pos & mask;
+            if (sequence.get(index) != pos + 1) return null; // empty, or not yet published
+
+            Runnable task = tasks[index];
+            lastEnqueueTime = enqueueTimes[index];
+            tasks[index] = null;
+
+            sequence.set(index, pos + mask + 1);
+            head = pos + 1;
+            return task;
+        }
+
+        int size() {
+            return (int) Math.max(tail.get() - head, 0);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.ieperen3039.ngn.DataStructures.Generic;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Two instances of the same state, where one is read by others while the other is being written. A call to
+ * {@link #swap()} publishes the written state. The caller must make sure that no thread is reading the state while
+ * swapping, for example by using {@link io.github.ieperen3039.ngn.Scene.EntityScheduler}.
+ * @param <T> the type of state
+ */
+public class DoubleBuffer<T> {
+    private final T first;
+    private final T second;
+    private final BiConsumer<T, T> copier;
+    private volatile boolean firstIsFront = true;
+
+    /**
+     * @param first  the initial front state
+     * @param second the initial back state
+     * @param copier copies the first argument into the second argument. It is called after each swap, such that the
+     *               new back state continues from the published state. May be null if {@link #write()} always
+     *               overwrites the entire state.
+     */
+    public DoubleBuffer(T first, T second, BiConsumer<T, T> copier) {
+        this.first = first;
+        this.second = second;
+        this.copier = copier;
+
+        if (copier != null) copier.accept(first, second);
+    }
+
+    /**
+     * @return the published state, which must not be modified
+     */
+    public T read() {
+        return firstIsFront ? first : second;
+    }
+
+    /**
+     * @return the state that is being written, and is published on the next {@link #swap()}
+     */
+    public T write() {
+        return firstIsFront ? second : first;
+    }
+
+    /**
+     * publishes the written state, and prepares the other state for writing.
+     */
+    public void swap() {
+        firstIsFront = !firstIsFront;
+        if (copier != null) copier.accept(read(), write());
+    }
+}
@@ -0,0 +1,89 @@
+package io.github.ieperen3039.ngn.DataStructures.Generic;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of primitive floats, without boxing.
+ */
+public final class FloatArrayList {
+    private float[] data;
+    private int size = 0;
+
+    public FloatArrayList() {
+        this(16);
+    }
+
+    public FloatArrayList(int initialCapacity) {
+        this.data = new float[Math.max(initialCapacity, 1)];
+    }
+
+    public void add(float value) {
+        if (size == data.length) grow(size + 1);
+        data[size++] = value;
+    }
+
+    public void add(float a, float b) {
+        if (size + 2 > data.length) grow(size + 2);
+        data[size] = a;
+        data[size + 1] = b;
+        size += 2;
+    }
+
+    public void add(float a, float b, float c) {
+        if (size + 3 > data.length) grow(size + 3);
+        data[size] = a;
+        data[size + 1] = b;
+        data[size + 2] = c;
+        size += 3;
+    }
+
+    public float get(int index) {
+        assert index < size : index + " >= " + size;
+        return data[index];
+    }
+
+    public void set(int index, float value) {
+        assert index < size : index + " >= " + size;
+        data[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * makes sure that the given number of elements fit without growing
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) grow(capacity);
+    }
+
+    /**
+     * @return a copy of the elements, with exactly {@link #size()} elements
+     */
+    public float[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /**
+     * copies all elements into the given array
+     * @param target       the array to copy to
+     * @param targetOffset the index in target of the first element
+     */
+    public void copyTo(float[] target, int targetOffset) {
+        System.arraycopy(data, 0, target, targetOffset, size);
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = Math.max(minCapacity, data.length + (data.length >> 1));
+        data = Arrays.copyOf(data, newCapacity);
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.ieperen3039.ngn.DataStructures.Generic;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of primitive ints, without boxing.
+ */
+public final class IntArrayList {
+    private int[] data;
+    private int size = 0;
+
+    public IntArrayList() {
+        this(16);
+    }
+
+    public IntArrayList(int initialCapacity) {
+        this.data = new int[Math.max(initialCapacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == data.length) grow(size + 1);
+        data[size++] = value;
+    }
+
+    public int get(int index) {
+        assert index < size : index + " >= " + size;
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        assert index < size : index + " >= " + size;
+        data[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * makes sure that the given number of elements fit without growing
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) grow(capacity);
+    }
+
+    /**
+     * @return a copy of the elements, with exactly {@link #size()} elements
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /**
+     * copies all elements into the given array
+     * @param target       the array to copy to
+     * @param targetOffset the index in target of the first element
+     */
+    public void copyTo(int[] target, int targetOffset) {
+        System.arraycopy(data, 0, target, targetOffset, size);
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = Math.max(minCapacity, data.length + (data.length >> 1));
+        data = Arrays.copyOf(data, newCapacity);
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.ieperen3039.ngn.DataStructures.Generic;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A collection of the last n non-negative long values (e.g. durations in nanoseconds) that can report percentiles, the
+ * maximum and the standard deviation of these values. Adding a value runs in constant time and never allocates.
+ * <p>
+ * Percentiles are read from a histogram with log-linear buckets: values below {@value #SUB_BUCKETS} have a bucket each,
+ * and every following power of 2 is split in {@value #SUB_BUCKETS} buckets of equal width. A reported percentile is
+ * thus accurate within about 3% of its value. The mean, maximum and standard deviation are exact.
+ */
+public class RollingHistogram implements Serializable {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** values of 2^MAX_BITS and larger are all counted in the last bucket (2^40 nanoseconds is about 18 minutes) */
+    private static final int MAX_BITS = 40;
+    private static final int NUM_BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] entries;
+    private final int[] buckets;
+    private final int capacity;
+
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * @param capacity the number of most recent values that are considered
+     */
+    public RollingHistogram(int capacity) {
+        if (capacity < 1) capacity = 1;
+        this.capacity = capacity;
+        this.entries = new long[capacity];
+        this.buckets = new int[NUM_BUCKETS];
+    }
+
+    /**
+     * Add a value to this collection, removing the oldest value if this collection is full. Runs in constant time
+     * @param value a non-negative value. Negative values are treated as 0
+     */
+    public void add(long value) {
+        if (value < 0) value = 0;
+
+        if (size == capacity) {
+            buckets[bucketOf(entries[head])]--;
+        } else {
+            size++;
+        }
+
+        entries[head] = value;
+        buckets[bucketOf(value)]++;
+        head = (head + 1) % capacity;
+    }
+
+    /**
+     * @return the number of values currently considered
+     */
+    public int count() {
+        return size;
+    }
+
+    /**
+     * @param fraction the fraction of values that should be less than or equal to the result, between 0 and 1
+     * @return an approximation of the smallest value such that at least the given fraction of the values is less than
+     * or equal to it. Returns 0 if this collection is empty.
+     */
+    public long percentile(float fraction) {
+        int n = size;
+        if (n == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+
+        // the last bucket is unbounded
+        for (int i = 0; i < NUM_BUCKETS - 1; i++) {
+            seen += buckets[i];
+            if (seen >= target) return Math.min(valueOf(i), max());
+        }
+
+        return max();
+    }
+
+    /**
+     * @return the largest value. Runs in linear time of the capacity.
+     */
+    public long max() {
+        long max = 0;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, entries[i]);
+        }
+        return max;
+    }
+
+    /**
+     * @return the average of the values. Runs in linear time of the capacity.
+     */
+    public double mean() {
+        if (size == 0) return 0;
+
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += entries[i];
+        }
+        return sum / size;
+    }
+
+    /**
+     * @return the standard deviation of the values, or the jitter when the values are intervals. Runs in linear time
+     * of the capacity.
+     */
+    public double standardDeviation() {
+        if (size < 2) return 0;
+
+        double mean = mean();
+        double sumOfSquares = 0;
+        for (int i = 0; i < size; i++) {
+            double diff = entries[i] - mean;
+            sumOfSquares += diff * diff;
+        }
+        return Math.sqrt(sumOfSquares / size);
+    }
+
+    public void clear() {
+        Arrays.fill(entries, 0);
+        Arrays.fill(buckets, 0);
+        head = 0;
+        size = 0;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        if (highestBit >= MAX_BITS) return NUM_BUCKETS - 1;
+
+        int shift = highestBit - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /** @return the largest value that is counted in the given bucket */
+    private static long valueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+
+        int shift = (bucket / SUB_BUCKETS) - 1;
+        long lowest = (long) ((bucket % SUB_BUCKETS) + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.ieperen3039.ngn.DataStructures.Generic;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Three instances of the same state, shared between one producer and one consumer without locking. The producer
+ * writes into {@link #write()} and makes it available with {@link #publish()}, while the consumer reads the most
+ * recently published state with {@link #read()}. Neither side ever waits for the other, and the consumer never sees a
+ * state that is being written. States published while the consumer did not read are skipped.
+ * @param <T> the type of state
+ */
+public class TripleBuffer<T> {
+    /** set on the middle index if it contains a state that the consumer has not yet read */
+    private static final int NEW_STATE = 4;
+    private static final int INDEX_MASK = 3;
+
+    private final Object[] buffers;
+    /** the index of the buffer that is exchanged between producer and consumer */
+    private final AtomicInteger middle = new AtomicInteger(1);
+    /** the index of the buffer owned by the producer */
+    private int back = 2;
+    /** the index of the buffer owned by the consumer */
+    private int front = 0;
+
+    public TripleBuffer(T first, T second, T third) {
+        this.buffers = new Object[]{first, second, third};
+    }
+
+    /**
+     * @return the state to be written by the producer. Only the producer may call this method.
+     */
+    @SuppressWarnings("unchecked")
+    public T write() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * publishes the state returned by {@link #write()}. After this call, {@link #write()} returns a different state,
+     * with undefined contents. Only the producer may call this method.
+     */
+    public void publish() {
+        int old = middle.getAndSet(back | NEW_STATE);
+        back = old & INDEX_MASK;
+    }
+
+    /**
+     * @return the most recently published state, which must not be modified. The result remains valid until the next
+     * call to this method. Only the consumer may call this method.
+     */
+    @SuppressWarnings("unchecked")
+    public T read() {
+        if ((middle.get() & NEW_STATE) != 0) {
+            int old = middle.getAndSet(front);
+            front = old & INDEX_MASK;
+        }
+
+        return (T) buffers[front];
+    }
+
+    /**
+     * @return true if a state has been published since the last call to {@link #read()}
+     */
+    public boolean hasNewState() {
+        return (middle.get() & NEW_STATE) != 0;
+    }
+}
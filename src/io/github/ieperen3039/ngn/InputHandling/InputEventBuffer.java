@@ -0,0 +1,201 @@
+package io.github.ieperen3039.ngn.InputHandling;
+
+import io.github.ieperen3039.ngn.Tools.Logger;
+
+/**
+ * A buffer of input events, written by the thread that polls the window events and read by the thread that handles
+ * them. Events are stored as primitives in a pre-allocated ring buffer, such that writing and reading an event does not
+ * allocate. Consecutive mouse move events are merged into one event, as are consecutive scroll events; all other events
+ * are kept in order.
+ * <p>
+ * The ring buffer has a fixed capacity. If it is full, a mouse move or scroll event is merged into the last buffered
+ * event of the same type, and any other event is dropped. Dropped events are reported on the next call to
+ * {@link #drain(Receiver)}.
+ */
+public class InputEventBuffer {
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private static final byte KEY_PRESS = 0;
+    private static final byte KEY_RELEASE = 1;
+    private static final byte MOUSE_CLICK = 2;
+    private static final byte MOUSE_RELEASE = 3;
+    private static final byte MOUSE_MOVE = 4;
+    private static final byte MOUSE_SCROLL = 5;
+    private static final byte KEY_TYPE = 6;
+
+    private final byte[] type;
+    private final int[] a;
+    private final int[] b;
+    private final float[] x;
+    private final float[] y;
+    private final int mask;
+
+    // all positions are guarded by this
+    /** position of the first event that has not been dispatched */
+    private long head = 0;
+    /** position after the last event */
+    private long tail = 0;
+    /** events before this position are being dispatched, and may not be modified */
+    private long claimed = 0;
+    private int nrOfDroppedEvents = 0;
+
+    public InputEventBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of events that can be buffered between two calls to {@link #drain(Receiver)}. Is
+     *                 rounded up to a power of 2.
+     */
+    public InputEventBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.mask = size - 1;
+        this.type = new byte[size];
+        this.a = new int[size];
+        this.b = new int[size];
+        this.x = new float[size];
+        this.y = new float[size];
+    }
+
+    public synchronized void keyPressed(int keyCode) {
+        add(KEY_PRESS, keyCode, 0, 0, 0);
+    }
+
+    public synchronized void keyReleased(int keyCode) {
+        add(KEY_RELEASE, keyCode, 0, 0, 0);
+    }
+
+    public synchronized void keyTyped(char letter) {
+        add(KEY_TYPE, letter, 0, 0, 0);
+    }
+
+    public synchronized void onClick(int button, int x, int y) {
+        add(MOUSE_CLICK, button, 0, x, y);
+    }
+
+    public synchronized void onRelease(int button) {
+        add(MOUSE_RELEASE, button, 0, 0, 0);
+    }
+
+    /**
+     * adds a mouse move event, or adds the deltas to the last event if that is a mouse move event as well.
+     */
+    public synchronized void onMouseMove(int xDelta, int yDelta, float xPos, float yPos) {
+        int index = findMergeTarget(MOUSE_MOVE);
+
+        if (index >= 0) {
+            a[index] += xDelta;
+            b[index] += yDelta;
+            x[index] = xPos;
+            y[index] = yPos;
+
+        } else {
+            add(MOUSE_MOVE, xDelta, yDelta, xPos, yPos);
+        }
+    }
+
+    /**
+     * adds a scroll event, or adds the value to the last event if that is a scroll event as well.
+     */
+    public synchronized void onScroll(float value) {
+        int index = findMergeTarget(MOUSE_SCROLL);
+
+        if (index >= 0) {
+            x[index] += value;
+
+        } else {
+            add(MOUSE_SCROLL, 0, 0, value, 0);
+        }
+    }
+
+    /**
+     * dispatches all events buffered since the previous call, in order. New events may be added while this method
+     * runs; these are dispatched on the next call. Anything thrown by the receiver is logged, and does not prevent the
+     * remaining events from being dispatched. May only be called by one thread at a time.
+     * @param receiver the receiver of the events
+     * @return the number of events dispatched
+     */
+    public int drain(Receiver receiver) {
+        long start;
+        long end;
+        int dropped;
+        synchronized (this) {
+            start = head;
+            end = tail;
+            claimed = end;
+            dropped = nrOfDroppedEvents;
+            nrOfDroppedEvents = 0;
+        }
+
+        if (dropped > 0) {
+            Logger.WARN.print("Input event buffer overflowed, dropped " + dropped + " events");
+        }
+
+        // the producer does not write to the claimed events, and does not reuse their slots until head is moved
+        for (long pos = start; pos < end; pos++) {
+            int i = (int) pos & mask;
+            int a = this.a[i];
+            float x = this.x[i];
+
+            try {
+                switch (type[i]) {
+                    case KEY_PRESS -> receiver.keyPressed(a);
+                    case KEY_RELEASE -> receiver.keyReleased(a);
+                    case KEY_TYPE -> receiver.keyTyped((char) a);
+                    case MOUSE_CLICK -> receiver.onClick(a, (int) x, (int) y[i]);
+                    case MOUSE_RELEASE -> receiver.onRelease(a);
+                    case MOUSE_MOVE -> receiver.onMouseMove(a, b[i], x, y[i]);
+                    case MOUSE_SCROLL -> receiver.onScroll(x);
+                }
+
+            } catch (Throwable ex) {
+                // Caught an error while executing an input handler.
+                Logger.ERROR.print(ex);
+            }
+        }
+
+        synchronized (this) {
+            head = end;
+        }
+
+        return (int) (end - start);
+    }
+
+    /**
+     * @return the index of the event that an event of the given type should be merged into, or -1 if it should be
+     * added. This is the last event if it has the same type, or if the buffer is full, the last unclaimed event of the
+     * same type.
+     */
+    private int findMergeTarget(byte eventType) {
+        long first = Math.max(head, claimed);
+        boolean isFull = (tail - head) > mask;
+        long stop = isFull ? first : tail - 1;
+
+        for (long pos = tail - 1; pos >= stop && pos >= first; pos--) {
+            int index = (int) pos & mask;
+            if (type[index] == eventType) return index;
+        }
+
+        return -1;
+    }
+
+    private void add(byte type, int a, int b, float x, float y) {
+        if (tail - head > mask) {
+            nrOfDroppedEvents++;
+            return;
+        }
+
+        int index = (int) tail & mask;
+        this.type[index] = type;
+        this.a[index] = a;
+        this.b[index] = b;
+        this.x[index] = x;
+        this.y[index] = y;
+        tail++;
+    }
+
+    /**
+     * a receiver of all event types
+     */
+    public interface Receiver extends MouseListener, KeyPressListener, KeyReleaseListener, KeyTypeListener {}
+}
@@ -2,30 +2,48 @@ package io.github.ieperen3039.ngn.InputHandling.MouseTools;
 
 import io.github.ieperen3039.ngn.Core.Main;
 import io.github.ieperen3039.ngn.Core.ToolElement;
+import io.github.ieperen3039.ngn.InputHandling.InputEventBuffer;
 import io.github.ieperen3039.ngn.InputHandling.KeyControl;
 import io.github.ieperen3039.ngn.Rendering.GLFWWindow;
 import io.github.ieperen3039.ngn.Tools.Logger;
-import io.github.ieperen3039.ngn.Tools.Toolbox;
 import org.joml.Vector2i;
 import org.lwjgl.glfw.*;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.lwjgl.glfw.GLFW.GLFW_PRESS;
 import static org.lwjgl.glfw.GLFW.GLFW_RELEASE;
 
 /**
  * A callback handler that can be attached to a 
- * mouse pointer for manipulating the behaviour of the mouse
+ * mouse pointer for manipulating the behaviour of the mouse.
+ * <p>
+ * Input events are collected in an {@link InputEventBuffer}. By default, the events are handled on a separate input
+ * thread, which is woken once for any number of events that arrive while it is busy. Applications that rather handle
+ * input at a fixed point of their own loop may call {@link #setManualDispatch(boolean) setManualDispatch(true)}, and
+ * call {@link #processEvents()} at the start of every tick.
  * @author Geert van Ieperen. Created on 18-11-2018.
  */
 public class MouseToolCallbacks implements ToolElement {
-    private final ExecutorService taskScheduler = Executors.newSingleThreadExecutor();
+    private final InputEventBuffer events = new InputEventBuffer();
+    private final EventDispatcher dispatcher = new EventDispatcher();
+    private final ExecutorService dispatchThread = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean isDispatchScheduled = new AtomicBoolean();
+    private final Runnable dispatchTask = () -> {
+        // events that arrive from now on schedule a new dispatch
+        isDispatchScheduled.set(false);
+        processEvents();
+    };
+    private volatile boolean isManualDispatch = false;
     private final KeyControl keyControl = new KeyControl();
     private MouseTool DEFAULT_MOUSE_TOOL;
     private Main root;
     private MouseTool currentTool;
+    /** last known cursor position, written by the event polling thread */
+    private int cursorX;
+    private int cursorY;
 
     @Override
     public void init(Main root) {
@@ -37,13 +55,42 @@ public class MouseToolCallbacks implements ToolElement {
 
         GLFWWindow target = root.window();
         Vector2i mousePosition = target.getMousePosition();
+        cursorX = mousePosition.x;
+        cursorY = mousePosition.y;
         target.setCallbacks(new KeyPressCallback(), new MouseButtonPressCallback(), new MouseMoveCallback(mousePosition), new MouseScrollCallback());
         target.setTextCallback(new CharTypeCallback());
     }
 
     @Override
     public void cleanup() {
-        taskScheduler.shutdown();
+        dispatchThread.shutdown();
+    }
+
+    /**
+     * handles all input events received since the previous call, in order of arrival. Consecutive mouse movements are
+     * handled as one movement. Only needs to be called if {@link #setManualDispatch(boolean) manual dispatch} is
+     * enabled.
+     */
+    public void processEvents() {
+        synchronized (dispatcher) {
+            events.drain(dispatcher);
+        }
+    }
+
+    /**
+     * @param manual if true, input events are only handled by calls to {@link #processEvents()}. If false, input
+     *               events are handled on a separate input thread as they arrive. Default is false.
+     */
+    public void setManualDispatch(boolean manual) {
+        isManualDispatch = manual;
+        if (!manual) scheduleDispatch();
+    }
+
+    /** makes sure the input thread handles the buffered events, unless manual dispatch is enabled */
+    private void scheduleDispatch() {
+        if (!isManualDispatch && isDispatchScheduled.compareAndSet(false, true)) {
+            dispatchThread.execute(dispatchTask);
+        }
     }
 
     public MouseTool getMouseTool() {
@@ -68,29 +115,17 @@ public class MouseToolCallbacks implements ToolElement {
         return keyControl;
     }
 
-    private void execute(Runnable action) {
-        taskScheduler.submit(() -> {
-            try {
-                action.run();
-
-            } catch (Throwable ex) {
-                // Caught an error while executing an input handler.
-                // Look at the second element of the stack trace
-                Logger.ERROR.print(ex);
-                Toolbox.display(ex);
-            }
-        });
-    }
-
     private class KeyPressCallback extends GLFWKeyCallback {
         @Override
         public void invoke(long window, int keyCode, int scanCode, int action, int mods) {
             if (keyCode < 0) return;
             if (action == GLFW_PRESS) {
-                execute(() -> keyControl.keyPressed(keyCode));
+                events.keyPressed(keyCode);
+                scheduleDispatch();
 
             } else if (action == GLFW_RELEASE) {
-                execute(() -> keyControl.keyReleased(keyCode));
+                events.keyReleased(keyCode);
+                scheduleDispatch();
             }
         }
     }
@@ -98,13 +133,13 @@ public class MouseToolCallbacks implements ToolElement {
     private class MouseButtonPressCallback extends GLFWMouseButtonCallback {
         @Override
         public void invoke(long windowHandle, int button, int action, int mods) {
-            Vector2i pos = root.window().getMousePosition();
-
             if (action == GLFW_PRESS) {
-                execute(() -> currentTool.onClick(button, pos.x, pos.y));
+                events.onClick(button, cursorX, cursorY);
+                scheduleDispatch();
 
             } else if (action == GLFW_RELEASE) {
-                execute(() -> currentTool.onRelease(button));
+                events.onRelease(button);
+                scheduleDispatch();
             }
         }
     }
@@ -130,14 +165,18 @@ public class MouseToolCallbacks implements ToolElement {
                 xGiven += xDiff;
                 yGiven += yDiff;
             }
-            execute(() -> currentTool.onMouseMove(xDiff, yDiff, xFloat, yFloat));
+            cursorX = (int) xpos;
+            cursorY = (int) ypos;
+            events.onMouseMove(xDiff, yDiff, xFloat, yFloat);
+            scheduleDispatch();
         }
     }
 
     private class MouseScrollCallback extends GLFWScrollCallback {
         @Override
         public void invoke(long window, double xoffset, double yoffset) {
-            execute(() -> currentTool.onScroll((float) yoffset));
+            events.onScroll((float) yoffset);
+            scheduleDispatch();
         }
     }
 
@@ -145,10 +184,48 @@ public class MouseToolCallbacks implements ToolElement {
         @Override
         public void invoke(long window, int codepoint) {
             if (Character.isAlphabetic(codepoint)) {
-                char s = Character.toChars(codepoint)[0];
-
-                execute(() -> root.gui().keyTyped(s));
+                char s = Character.isBmpCodePoint(codepoint) ? (char) codepoint : Character.highSurrogate(codepoint);
+                events.keyTyped(s);
+                scheduleDispatch();
             }
         }
     }
+
+    /** forwards the buffered events to the current mouse tool */
+    private class EventDispatcher implements InputEventBuffer.Receiver {
+        @Override
+        public void keyPressed(int keyCode) {
+            keyControl.keyPressed(keyCode);
+        }
+
+        @Override
+        public void keyReleased(int keyCode) {
+            keyControl.keyReleased(keyCode);
+        }
+
+        @Override
+        public void keyTyped(char letter) {
+            root.gui().keyTyped(letter);
+        }
+
+        @Override
+        public void onClick(int button, int xRel, int yRel) {
+            currentTool.onClick(button, xRel, yRel);
+        }
+
+        @Override
+        public void onRelease(int button) {
+            currentTool.onRelease(button);
+        }
+
+        @Override
+        public void onMouseMove(int xDelta, int yDelta, float xPos, float yPos) {
+            currentTool.onMouseMove(xDelta, yDelta, xPos, yPos);
+        }
+
+        @Override
+        public void onScroll(float value) {
+            currentTool.onScroll(value);
+        }
+    }
 }
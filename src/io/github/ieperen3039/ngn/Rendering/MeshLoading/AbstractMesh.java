@@ -1,5 +1,7 @@
 package io.github.ieperen3039.ngn.Rendering.MeshLoading;
 
+import io.github.ieperen3039.ngn.AssetHandling.AssetCache;
+import io.github.ieperen3039.ngn.AssetHandling.MemoryFootprint;
 import io.github.ieperen3039.ngn.Rendering.MatrixStack.SGL;
 import org.lwjgl.system.MemoryUtil;
 
@@ -11,11 +13,13 @@ import static org.lwjgl.opengl.GL30.*;
 /**
  * @author Geert van Ieperen created on 1-2-2019.
  */
-public abstract class AbstractMesh implements Mesh {
+public abstract class AbstractMesh implements Mesh, MemoryFootprint {
     private int VAO_ID = 0;
     private int EBO_ID = 0;
     private int nrOfElements = 0;
     private int[] VBOIndices;
+    /** number of bytes uploaded to the GPU */
+    private long gpuBytes = 0;
 
     public void render(SGL.Painter lock) {
         if (VAO_ID == 0) return;
@@ -60,6 +64,7 @@ public abstract class AbstractMesh implements Mesh {
 
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, EBO_ID);
         glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+        gpuBytes += (long) indices.length * Integer.BYTES;
     }
 
     /**
@@ -101,6 +106,17 @@ public abstract class AbstractMesh implements Mesh {
         glDeleteVertexArrays(VAO_ID);
 
         VAO_ID = 0;
+        gpuBytes = 0;
+    }
+
+    @Override
+    public long byteSize() {
+        return gpuBytes;
+    }
+
+    @Override
+    public AssetCache.MemoryKind memoryKind() {
+        return AssetCache.MemoryKind.GPU;
     }
 
     /**
@@ -130,6 +146,7 @@ public abstract class AbstractMesh implements Mesh {
             glVertexAttribPointer(index, size, GL_FLOAT, false, 0, 0);
 
             VBOIndices[index] = vboId;
+            gpuBytes += (long) data.length * Float.BYTES;
 
         } finally {
             MemoryUtil.memFree(buffer);
@@ -163,6 +180,7 @@ public abstract class AbstractMesh implements Mesh {
             glVertexAttribPointer(index, size, GL_FLOAT, false, 0, 0);
 
             VBOIndices[index] = vboId;
+            gpuBytes += (long) data.length * Float.BYTES;
 
         } finally {
             MemoryUtil.memFree(buffer);
@@ -1,19 +1,10 @@
 package io.github.ieperen3039.ngn.Rendering.MeshLoading;
 
-import io.github.ieperen3039.ngn.DataStructures.Generic.Color4f;
-import io.github.ieperen3039.ngn.Tools.Logger;
-import io.github.ieperen3039.ngn.Tools.Toolbox;
-import org.joml.Vector2f;
-import org.joml.Vector2fc;
-import org.joml.Vector3f;
 import org.joml.Vector3fc;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
 
 /**
  * @author Geert van Ieperen created on 6-5-2018.
@@ -25,164 +16,46 @@ public final class FileLoaders {
      * @param name  debug name of the shape
      */
     public static MeshFile loadOBJ(Vector3fc scale, InputStream objInput, String name) throws IOException {
-        List<Vector2fc> textureCoords;
-        List<Vector3fc> vertices;
-        List<Vector3fc> normals;
-        List<Face> faces;
-        List<Color4f> colors;
-        textureCoords = new ArrayList<>();
-        vertices = new ArrayList<>();
-        normals = new ArrayList<>();
-        faces = new ArrayList<>();
-        colors = new ArrayList<>();
-
-        try (Scanner sc = new Scanner(objInput)) {
-            while (sc.hasNext()) {
-                String line = sc.nextLine();
-                String[] tokens = Toolbox.WHITESPACE_PATTERN.split(line);
-                switch (tokens[0]) {
-                    case "v" ->
-                            // Geometric vertex
-                            vertices.add(new Vector3f(
-                                            Float.parseFloat(tokens[1]),
-                                            Float.parseFloat(tokens[2]),
-                                            Float.parseFloat(tokens[3])
-                                    )
-                                            .mul(scale)
-                            );
-                    case "vn" ->
-                            // Vertex normal
-                            normals.add(new Vector3f(
-                                    Float.parseFloat(tokens[1]),
-                                    Float.parseFloat(tokens[2]),
-                                    Float.parseFloat(tokens[3])
-                            ));
-                    case "vt" -> textureCoords.add(new Vector2f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2])
-                    ));
-                    case "f" -> faces.add(Face.parseOBJ(tokens));
-                    default -> {
-                    }
-                    // Ignore other lines
-                }
-            }
-        }
-
-        if (vertices.isEmpty() || faces.isEmpty()) {
-            Logger.ERROR.print("Empty mesh loaded: " + name + " (this may result in errors)");
+        byte[] content;
+        try (objInput) {
+            content = objInput.readAllBytes();
         }
 
-        return new MeshFile(name, vertices, normals, faces, textureCoords, colors);
+        return loadOBJ(scale, ByteBuffer.wrap(content), name);
     }
 
     /**
-     * Starts the parsing of a new .ply file. Opens the file as a list of strings where each String corresponds to a
-     * line in the .ply file. Each line is then processed one by one and at the end the data is restructured to be
-     * usable by the Mesh class.
-     * @param objInput input stream of the .ply file to parse
-     * @throws IOException if file not found
-     * @throws IOException if file format not supported
+     * parses an OBJ file from its bytes, without creating objects per vertex or face. Large files are split in chunks
+     * that are parsed in parallel. See {@link ObjParser}.
+     * @param scale   the scaling applied to the loaded object
+     * @param content the content of the file, from its position to its limit
+     * @param name    debug name of the shape
      */
-    public static MeshFile loadPLY(Vector3fc scale, InputStream objInput, String name) throws IOException {
-        int nrOfVertices = -1;
-        int nrOfFaces = -1;
-
-        // Open the file as a list of strings
-        
-        List<String> lines = new ArrayList<>();
-        try (Scanner sc = new Scanner(objInput)) {
-            while (sc.hasNext()) {
-                lines.add(sc.nextLine());
-            }
-        }
-
-        // Check if the file format is correct
-        int endHeader = lines.indexOf("end_header");
-        if (endHeader == -1) {
-            throw new IOException("PLYLoader.loadMesh() failed: Unsupported file format. " +
-                    "'end_header' keyword is missing");
-        }
-
-        List<String> header = new ArrayList<>(lines.subList(0, endHeader)); // exclude "end_header"
-        List<String> body = new ArrayList<>(lines.subList(endHeader + 1, lines.size()));
-
-        // Check the header and query the amount of vertices and faces
-        int numberOfProperties = 0;
-
-        for (String line : header) {
-            String[] tokens = Toolbox.WHITESPACE_PATTERN.split(line);
-
-            switch (tokens[0]) {
-                case "ply", "comment" -> {}
-                case "format" -> {
-                    if (!tokens[1].equals("ascii")) {
-                        throw new IOException("Not the ASCII format, but " + tokens[1]);
-                    }
-                }
-                case "element" -> {
-                    if (tokens[1].equals("vertex")) {
-                        assert nrOfVertices == -1;
-                        nrOfVertices = Integer.parseInt(tokens[2]);
-
-                    } else if (tokens[1].equals("face")) {
-                        assert nrOfFaces == -1;
-                        nrOfFaces = Integer.parseInt(tokens[2]);
-
-                    } else {
-                        throw new IOException("Unsupported element " + tokens[1]);
-                    }
-                }
-                case "property" -> numberOfProperties++;
-                default -> throw new IOException("Unsupported keyword " + tokens[0]);
-            }
-        }
-
-        List<Vector3fc> vertices = new ArrayList<>();
-        List<Vector3fc> normals = new ArrayList<>();
-        List<Face> faces = new ArrayList<>();
-        List<Color4f> colors = new ArrayList<>();
-
-        // TODO allow variable properties
-        if (numberOfProperties < 10) {
-            throw new IOException("Wrong number of properties: " + numberOfProperties + " where 10 were expected (3 position, 3 normal, 4 color)");
-        }
-
-        // Parse all vertices
-        for (int i = 0; i < nrOfVertices; i++) {
-            String[] tokens = Toolbox.WHITESPACE_PATTERN.split(body.get(i));
-
-            // Position vector data
-            vertices.add(
-                    new Vector3f(
-                            Float.parseFloat(tokens[0]),
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2])
-                    )
-                            .mul(scale)
-            );
-
-            // Normal vector data
-            normals.add(new Vector3f(
-                    Float.parseFloat(tokens[3]),
-                    Float.parseFloat(tokens[4]),
-                    Float.parseFloat(tokens[5])
-            ));
+    public static MeshFile loadOBJ(Vector3fc scale, ByteBuffer content, String name) throws IOException {
+        return ObjParser.parse(content, scale, name);
+    }
 
-            // Color data
-            colors.add(Color4f.rgb(
-                    Integer.parseInt(tokens[6]),
-                    Integer.parseInt(tokens[7]),
-                    Integer.parseInt(tokens[8])
-            ));
+    /**
+     * @param scale    the scaling applied to the loaded object
+     * @param plyInput a file-input stream of the object
+     * @param name     debug name of the shape
+     */
+    public static MeshFile loadPLY(Vector3fc scale, InputStream plyInput, String name) throws IOException {
+        byte[] content;
+        try (plyInput) {
+            content = plyInput.readAllBytes();
         }
 
-        // Parse all faces
-        for (int i = nrOfVertices; i < nrOfVertices + nrOfFaces; i++) {
-            String[] s = Toolbox.WHITESPACE_PATTERN.split(body.get(i));
-            faces.add(Face.parsePLY(s));
-        }
+        return loadPLY(scale, ByteBuffer.wrap(content), name);
+    }
 
-        return new MeshFile(name, vertices, normals, faces, Collections.emptyList(), colors);
+    /**
+     * parses a PLY file in ascii or binary format, with any set of properties. See {@link PlyParser}.
+     * @param scale   the scaling applied to the loaded object
+     * @param content the content of the file, from its position to its limit. This may be a mapped file.
+     * @param name    debug name of the shape
+     */
+    public static MeshFile loadPLY(Vector3fc scale, ByteBuffer content, String name) throws IOException {
+        return PlyParser.parse(content, scale, name);
     }
 }
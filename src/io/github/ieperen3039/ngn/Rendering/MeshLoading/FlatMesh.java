@@ -18,45 +18,93 @@ import static org.lwjgl.opengl.GL15.glBindBuffer;
 import static org.lwjgl.opengl.GL30.glBindVertexArray;
 
 /**
- * A mesh that supports (only) flat shading. Allows colors, but no textures
+ * A mesh that supports (only) flat shading. Allows colors, but no textures. Corners with equal position, normal and
+ * color are merged using a {@link VertexWelder}, and the mesh is drawn with an index buffer if that saves memory. The
+ * index buffer is optimized with the {@link MeshOptimizer}. Both happen in {@link #weld(List, List, List, List)},
+ * which can be done in the background, such that the render thread only uploads the buffers.
  * @author Geert van Ieperen created on 17-11-2017.
  */
 public class FlatMesh extends AbstractMesh {
+    /** the size of the grid used to merge vertices, see {@link VertexWelder} */
+    public static final float WELD_TOLERANCE = 1e-5f;
+    private static final int POSITION = 0, NORMAL = 1, COLOR = 2;
+    private static final int CORNER_SIZE = 3 + 3 + 4;
 
     /**
      * Creates a mesh from the given data. This may only be called on the main thread. VERY IMPORTANT that you have
-     * first called {@link GL#createCapabilities()} (or similar) for openGL 3 or higher.
+     * first called {@link GL#createCapabilities()} (or similar) for openGL 3 or higher. Welding and optimizing the
+     * vertices is done on the calling thread; use {@link #weld(List, List, List, List)} to do so in the background.
      * @param posList   a list of vertices
      * @param normList  a list of normal vectors
+     * @param colorList a list of colors, or null to make all vertices opaque white
      * @param facesList a list of faces, where each face refers to indices from posList and normList
      */
     public FlatMesh(
             List<? extends Vector3fc> posList, List<? extends Vector3fc> normList, List<Color4f> colorList,
             List<Face> facesList
     ) {
-        if (facesList.isEmpty()) return;
+        this(weld(posList, normList, colorList, facesList));
+    }
 
-        // Create position array in the order it has been declared. faces have (nOfEdges) vertices of 3 indices
-        int nrOfVecElements = facesList.size() * 3;
-        setElementCount(nrOfVecElements);
-        float[] posArr = new float[nrOfVecElements * 3];
-        float[] normArr = new float[nrOfVecElements * 3];
-        float[] colorArr = new float[nrOfVecElements * 4];
+    /**
+     * Creates a mesh from buffers created by {@link #weld(List, List, List, List)}. This may only be called on the main
+     * thread.
+     */
+    FlatMesh(MeshBuffers buffers) {
+        assert !buffers.isTextured();
+        if (buffers.positions.length == 0) return;
+
+        writeToGL(buffers.indices, buffers.positions, buffers.normals, buffers.colors);
+    }
+
+    /**
+     * merges corners with equal position, normal and color using a {@link VertexWelder}, and optimizes the resulting
+     * index buffer with the {@link MeshOptimizer}. Does not use OpenGL, thus this may be called on any thread.
+     * @param posList   a list of vertices
+     * @param normList  a list of normal vectors
+     * @param colorList a list of colors, or null to make all vertices opaque white
+     * @param facesList a list of triangles, where each face refers to indices from the other lists
+     * @return the buffers of a flat mesh, without index buffer if no corners were merged
+     */
+    public static MeshBuffers weld(
+            List<? extends Vector3fc> posList, List<? extends Vector3fc> normList, List<Color4f> colorList,
+            List<Face> facesList
+    ) {
+        // faces have 3 corners, which refer to a position, normal and color
+        int nrOfCorners = facesList.size() * 3;
+        int[] indices = new int[nrOfCorners];
+        float[] corner = new float[CORNER_SIZE];
+        VertexWelder welder = new VertexWelder(WELD_TOLERANCE, posList.size(), 3, 3, 4);
 
         // all opaque white
-        if (colorList == null) Arrays.fill(colorArr, 1.0f);
+        if (colorList == null) Arrays.fill(corner, 6, 10, 1.0f);
 
         for (int i = 0; i < facesList.size(); i++) {
             Face face = facesList.get(i);
-            readFaceVertex(face, posList, i, posArr);
-            readFaceNormals(face, normList, i, normArr);
+            assert face.size() == 3 : "Face is not a triangle";
+
+            for (int j = 0; j < 3; j++) {
+                readVector(posList, face.vert()[j], corner, 0);
+                readVector(normList, face.norm()[j], corner, 3);
+                if (colorList != null) readColor(colorList, face.col()[j], corner, 6);
 
-            if (colorList != null) {
-                readFaceColors(face, colorList, i, colorArr);
+                indices[i * 3 + j] = welder.add(corner);
             }
         }
 
-        writeToGL(posArr, normArr, colorArr);
+        float[] positions = welder.getAttribute(POSITION);
+        float[] normals = welder.getAttribute(NORMAL);
+        float[] colors = welder.getAttribute(COLOR);
+
+        if (welder.size() == nrOfCorners) {
+            // no corners were merged, thus the indices are 0, 1, 2... and an index buffer would only cost memory
+            indices = null;
+
+        } else {
+            indices = MeshOptimizer.optimize(indices, positions, normals, colors);
+        }
+
+        return new MeshBuffers(indices, positions, normals, colors, null);
     }
 
     /**
@@ -74,6 +122,8 @@ public class FlatMesh extends AbstractMesh {
 
     /**
      * create a mesh and store it to the GL. For both lists it holds that the ith vertex has the ith normal vector
+     * @param indices   the vertices of each triangle, as indices in the other arrays, or null to draw the vertices
+     *                  in order
      * @param positions the vertices, concatenated in groups of 3
      * @param normals   the normals, concatenated in groups of 3
      * @param colors    the vertex colors, concatenated in groups of 4. May be null.
@@ -82,7 +132,7 @@ public class FlatMesh extends AbstractMesh {
      * @throws IllegalArgumentException if the arrays are of unequal length
      * @throws IllegalStateException    if the mesh is already loaded
      */
-    private void writeToGL(float[] positions, float[] normals, float[] colors) {
+    private void writeToGL(int[] indices, float[] positions, float[] normals, float[] colors) {
         if (getVAO() != 0) throw new IllegalStateException("Tried loading a mesh that was already loaded");
 //        assert testAssumptions(positions, normals, colors);
 
@@ -91,6 +141,14 @@ public class FlatMesh extends AbstractMesh {
 
         glBindVertexArray(getVAO());
 
+        if (indices != null) {
+            // also sets the element count
+            createIndexBuffer(indices);
+
+        } else {
+            setElementCount(positions.length / 3);
+        }
+
         // Position VBO
         createVBO(positions, ShaderProgram.VERTEX_LOCATION, 3);
 
@@ -197,54 +255,35 @@ public class FlatMesh extends AbstractMesh {
             }
         }
 
-        return new GeneratorAsset<>(() -> new FlatMesh(vertices, normals, faces), Mesh::dispose);
+        // only uploading the buffers happens on the render thread
+        Asset<MeshBuffers> buffers = new GeneratorAsset<>(() -> weld(vertices, normals, null, faces), null, true);
+        return Asset.derive(buffers, MeshBuffers::upload, Mesh::dispose);
     }
 
-    private static void readFaceVertex(
-            Face face, List<? extends Vector3fc> posList, int faceNumber, float[] posArr
-    ) {
-        assert face.size() == 3 : "Face is not a triangle";
-
-        int vectorIndex = faceNumber * 3;
-        for (int i = 0; i < 3; i++) {
-            readVector(vectorIndex + i, posList, posArr, face.vert()[i]);
+    private static void readVector(List<? extends Vector3fc> sourceList, int index, float[] target, int offset) {
+        if (sourceList instanceof PackedList<?>) {
+            // read without creating a vector
+            System.arraycopy(PackedList.flatten3(sourceList), index * 3, target, offset, 3);
+            return;
         }
-    }
 
-    private static void readFaceNormals(
-            Face face, List<? extends Vector3fc> normList, int faceNumber, float[] normArr
-    ) {
-        assert face.size() == 3 : "Face is not a triangle";
-
-        int vectorIndex = faceNumber * 3;
-        for (int i = 0; i < 3; i++) {
-            readVector(vectorIndex + i, normList, normArr, face.norm()[i]);
-        }
+        Vector3fc vector = sourceList.get(index);
+        target[offset] = vector.x();
+        target[offset + 1] = vector.y();
+        target[offset + 2] = vector.z();
     }
 
-    private static void readFaceColors(Face face, List<Color4f> colorList, int faceNumber, float[] colorArr) {
-        assert face.size() == 3 : "Face is not a triangle";
-
-        int vectorIndex = faceNumber * 3;
-        for (int i = 0; i < 3; i++) {
-            Color4f color = colorList.get(face.col()[i]);
-            int offset = (vectorIndex + i) * 4;
-
-            colorArr[offset] = color.red;
-            colorArr[offset + 1] = color.green;
-            colorArr[offset + 2] = color.blue;
-            colorArr[offset + 3] = color.alpha;
+    private static void readColor(List<Color4f> colorList, int index, float[] target, int offset) {
+        if (colorList instanceof PackedList<?>) {
+            // read without creating a color
+            System.arraycopy(PackedList.flattenColors(colorList), index * 4, target, offset, 4);
+            return;
         }
-    }
 
-    private static void readVector(
-            int vectorNumber, List<? extends Vector3fc> sourceList, float[] targetArray, int index
-    ) {
-        Vector3fc vertex = sourceList.get(index);
-        int offset = vectorNumber * 3;
-        targetArray[offset] = vertex.x();
-        targetArray[offset + 1] = vertex.y();
-        targetArray[offset + 2] = vertex.z();
+        Color4f color = colorList.get(index);
+        target[offset] = color.red;
+        target[offset + 1] = color.green;
+        target[offset + 2] = color.blue;
+        target[offset + 3] = color.alpha;
     }
-
 }
@@ -27,11 +27,18 @@ public interface Mesh {
     static Asset<Mesh> createExternalAsset(Path path) {
         Asset<MeshFile> meshFile = MeshFile.createAsset(Vectors.Scaling.UNIFORM, path);
 
-        return new GeneratorAsset<>(() -> {
-            Mesh target = meshFile.get().getMesh();
+        // welding happens in the background, only uploading on the render thread
+        Asset<MeshBuffers> buffers = new GeneratorAsset<>(() -> {
+            MeshBuffers target = meshFile.get().getMeshBuffers();
             meshFile.drop();
             return target;
-        }, Mesh::dispose);
+        }, null, true, meshFile);
+
+        return new GeneratorAsset<>(() -> {
+            Mesh target = buffers.get().upload();
+            buffers.drop();
+            return target;
+        }, Mesh::dispose, false, buffers);
     }
 
     static Asset<Mesh> emptyMesh() {
@@ -0,0 +1,57 @@
+package io.github.ieperen3039.ngn.Rendering.MeshLoading;
+
+import io.github.ieperen3039.ngn.AssetHandling.MemoryFootprint;
+
+/**
+ * The vertex arrays and index buffer of a mesh, as they are uploaded to the GPU. Creating these involves welding
+ * vertices and optimizing the index buffer, which does not use OpenGL and can thus be done in the background. Only
+ * {@link #upload()} must be called on the render thread.
+ * @see FlatMesh#weld(java.util.List, java.util.List, java.util.List, java.util.List)
+ * @see SmoothMesh#combine(java.util.List, java.util.List, java.util.List, java.util.List)
+ */
+public final class MeshBuffers implements MemoryFootprint {
+    /** the vertices of each triangle, or null to draw the vertices in order */
+    final int[] indices;
+    /** the vertex positions, in groups of 3 */
+    final float[] positions;
+    /** the vertex normals, in groups of 3 */
+    final float[] normals;
+    /** the vertex colors in groups of 4, or null if this is a textured mesh */
+    final float[] colors;
+    /** the texture coordinates in groups of 2, or null if this is a colored mesh */
+    final float[] texCoords;
+
+    MeshBuffers(int[] indices, float[] positions, float[] normals, float[] colors, float[] texCoords) {
+        assert (colors == null) != (texCoords == null) : "exactly one of colors and texCoords must be given";
+        this.indices = indices;
+        this.positions = positions;
+        this.normals = normals;
+        this.colors = colors;
+        this.texCoords = texCoords;
+    }
+
+    public boolean isTextured() {
+        return texCoords != null;
+    }
+
+    /** @return the number of vertices after welding */
+    public int nrOfVertices() {
+        return positions.length / 3;
+    }
+
+    /**
+     * creates a mesh from these buffers. This may only be called on the render thread.
+     * @return a {@link SmoothMesh} if this is textured, or a {@link FlatMesh} otherwise
+     */
+    public Mesh upload() {
+        return isTextured() ? new SmoothMesh(this) : new FlatMesh(this);
+    }
+
+    @Override
+    public long byteSize() {
+        long floats = positions.length + normals.length +
+                (colors == null ? 0 : colors.length) + (texCoords == null ? 0 : texCoords.length);
+        long ints = (indices == null) ? 0 : indices.length;
+        return 4 * (floats + ints);
+    }
+}
@@ -0,0 +1,469 @@
+package io.github.ieperen3039.ngn.Rendering.MeshLoading;
+
+import io.github.ieperen3039.ngn.Tools.Directory;
+import io.github.ieperen3039.ngn.Tools.Logger;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * A binary cache of parsed mesh files. The first time a mesh is loaded, the parsed {@link MeshFile} is written to the
+ * cache directory as flat arrays. Later loads map this file into memory and copy the arrays out in bulk, which is
+ * much faster than parsing text, and does not allocate an object per vertex.
+ * <p>
+ * Each cache file records a {@link Stamp} of its source file, and is ignored when the source file has changed.
+ * <p>
+ * The format is little-endian, and consists of a header of {@link #HEADER_BYTES} bytes:
+ * <pre>
+ *     int magic, int version, long source size, long source stamp, float[3] scaling,
+ *     int vertices, int normals, int texture coordinates, int colors, int faces, int face indices, int flags
+ * </pre>
+ * followed by the arrays: vertex positions (3 floats each), normals (3 floats), texture coordinates (2 floats), colors
+ * (4 floats), the size of each face (one int each), and for each face, the vertex indices, then normal indices,
+ * texture indices and color indices for as far as the flags indicate they are present.
+ * <p>
+ * Next to each cache file, the {@link MeshBuffers} derived from the mesh are cached as well, such that welding and
+ * optimizing the vertices is also skipped on later loads. These are only valid for the settings of the
+ * {@link MeshOptimizer} and the weld tolerance they were created with. Their format consists of a header of
+ * {@link #BUFFERS_HEADER_BYTES} bytes:
+ * <pre>
+ *     int magic, int version, long source size, long source stamp, float[3] scaling, float optimizer settings,
+ *     float weld tolerance, int indices, int positions, int normals, int colors, int texture coordinates
+ * </pre>
+ * followed by the arrays in the same order. The header holds the length of each array, or -1 if the array is absent.
+ */
+public final class MeshCache {
+    private static final int MAGIC = 0x4E474E4D; // "NGNM"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 3 * 4 + 7 * 4;
+    private static final String EXTENSION = ".mesh";
+
+    private static final int BUFFERS_MAGIC = 0x4E474E42; // "NGNB"
+    private static final int BUFFERS_VERSION = 1;
+    private static final int BUFFERS_HEADER_BYTES = 4 + 4 + 8 + 8 + 3 * 4 + 4 + 4 + 5 * 4;
+    private static final String BUFFERS_EXTENSION = ".buffers";
+
+    private static final int HAS_NORMAL_INDICES = 1;
+    private static final int HAS_TEXTURE_INDICES = 1 << 1;
+    private static final int HAS_COLOR_INDICES = 1 << 2;
+
+    private static volatile Path cacheDirectory = null;
+    private static volatile boolean isEnabled = true;
+
+    private MeshCache() {}
+
+    /**
+     * @param doEnable when false, meshes are always parsed from their source, and no cache files are written.
+     */
+    public static void setEnabled(boolean doEnable) {
+        isEnabled = doEnable;
+    }
+
+    /**
+     * sets the directory where cache files are stored. By default, this is the {@link Directory#cache} directory.
+     */
+    public static void setCacheDirectory(Path directory) {
+        cacheDirectory = directory;
+    }
+
+    /**
+     * loads the mesh from the cache if its cache file is up-to-date, or otherwise parses the mesh and writes the
+     * result to the cache. Failing to use the cache is logged, but does not cause the load to fail.
+     * @param key     a unique name of the source, used to name the cache file
+     * @param stamp   the stamp of the current version of the source
+     * @param scaling the scaling applied by the parser
+     * @param parser  a parser of the source, called when the cache cannot be used
+     * @return the loaded mesh
+     */
+    static MeshFile load(String key, Stamp stamp, Vector3fc scaling, Parser parser) throws IOException {
+        if (!isEnabled) return parser.parse();
+
+        Path cacheFile = getCacheFile(key, scaling, EXTENSION);
+        Entry entry = new Entry(getCacheFile(key, scaling, BUFFERS_EXTENSION), stamp, new Vector3f(scaling));
+
+        if (Files.exists(cacheFile)) {
+            try {
+                MeshFile cached = read(cacheFile, stamp, scaling, key);
+                if (cached != null) {
+                    cached.setCacheEntry(entry);
+                    return cached;
+                }
+
+            } catch (IOException ex) {
+                Logger.WARN.print("Could not read mesh cache " + cacheFile + ": " + ex.getMessage());
+            }
+        }
+
+        MeshFile mesh = parser.parse();
+
+        try {
+            write(mesh, cacheFile, stamp, scaling);
+
+        } catch (IOException ex) {
+            Logger.WARN.print("Could not write mesh cache " + cacheFile + ": " + ex.getMessage());
+        }
+
+        mesh.setCacheEntry(entry);
+        return mesh;
+    }
+
+    /**
+     * loads the buffers of a mesh from the cache if these are up-to-date, or otherwise creates the buffers and writes
+     * them to the cache. Failing to use the cache is logged, but does not cause the load to fail.
+     * @param entry   the cache entry of the mesh file of the buffers
+     * @param builder creates the buffers, called when the cache cannot be used
+     * @return the loaded buffers
+     */
+    static MeshBuffers loadBuffers(Entry entry, Supplier<MeshBuffers> builder) {
+        if (!isEnabled) return builder.get();
+
+        if (Files.exists(entry.file())) {
+            try {
+                MeshBuffers cached = readBuffers(entry);
+                if (cached != null) return cached;
+
+            } catch (IOException ex) {
+                Logger.WARN.print("Could not read mesh cache " + entry.file() + ": " + ex.getMessage());
+            }
+        }
+
+        MeshBuffers buffers = builder.get();
+
+        try {
+            writeBuffers(buffers, entry);
+
+        } catch (IOException ex) {
+            Logger.WARN.print("Could not write mesh cache " + entry.file() + ": " + ex.getMessage());
+        }
+
+        return buffers;
+    }
+
+    /**
+     * reads a cache file
+     * @param file    the cache file
+     * @param stamp   the stamp of the current source, or null to accept any source
+     * @param scaling the scaling of the mesh, or null to accept any scaling
+     * @param name    the name of the resulting mesh file
+     * @return the cached mesh, or null if the cache file is of another version, source or scaling
+     * @throws IOException if the file could not be read, or is corrupted
+     */
+    public static MeshFile read(Path file, Stamp stamp, Vector3fc scaling, String name) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES) throw new IOException("File is too small to be a mesh cache");
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt() != MAGIC) throw new IOException("Not a mesh cache file");
+            if (buffer.getInt() != VERSION) return null;
+
+            Stamp fileStamp = new Stamp(buffer.getLong(), buffer.getLong());
+            if (stamp != null && !stamp.equals(fileStamp)) return null;
+
+            float sx = buffer.getFloat();
+            float sy = buffer.getFloat();
+            float sz = buffer.getFloat();
+            if (scaling != null && (sx != scaling.x() || sy != scaling.y() || sz != scaling.z())) return null;
+
+            int nrOfVertices = buffer.getInt();
+            int nrOfNormals = buffer.getInt();
+            int nrOfTexCoords = buffer.getInt();
+            int nrOfColors = buffer.getInt();
+            int nrOfFaces = buffer.getInt();
+            int nrOfIndices = buffer.getInt();
+            int flags = buffer.getInt();
+
+            int nrOfIndexArrays = 1 + Integer.bitCount(flags);
+            long expectedSize = HEADER_BYTES +
+                    4L * (3L * nrOfVertices + 3L * nrOfNormals + 2L * nrOfTexCoords + 4L * nrOfColors) +
+                    4L * nrOfFaces + 4L * nrOfIndices * nrOfIndexArrays;
+            if (fileSize != expectedSize) {
+                throw new IOException("File size is " + fileSize + " bytes, but its header indicates " + expectedSize);
+            }
+
+            float[] vertices = readFloats(buffer, nrOfVertices * 3);
+            float[] normals = readFloats(buffer, nrOfNormals * 3);
+            float[] texCoords = readFloats(buffer, nrOfTexCoords * 2);
+            float[] colors = readFloats(buffer, nrOfColors * 4);
+
+            int[] offsets = new int[nrOfFaces + 1];
+            for (int i = 0; i < nrOfFaces; i++) {
+                offsets[i + 1] = offsets[i] + buffer.getInt();
+            }
+
+            int[] vertIndices = readInts(buffer, nrOfIndices);
+            int[] normIndices = (flags & HAS_NORMAL_INDICES) != 0 ? readInts(buffer, nrOfIndices) : null;
+            int[] texIndices = (flags & HAS_TEXTURE_INDICES) != 0 ? readInts(buffer, nrOfIndices) : null;
+            int[] colIndices = (flags & HAS_COLOR_INDICES) != 0 ? readInts(buffer, nrOfIndices) : null;
+
+            if (offsets[nrOfFaces] != nrOfIndices) throw new IOException("Face sizes do not match the number of indices");
+            PackedFaceList faces = new PackedFaceList(offsets, vertIndices, normIndices, texIndices, colIndices);
+
+            return new MeshFile(
+                    name, PackedList.ofVector3(vertices), PackedList.ofVector3(normals), faces,
+                    nrOfTexCoords == 0 ? Collections.emptyList() : PackedList.ofVector2(texCoords),
+                    nrOfColors == 0 ? Collections.emptyList() : PackedList.ofColors(colors)
+            );
+        }
+    }
+
+    /**
+     * writes the given mesh to a cache file. The file is first written under a temporary name, such that readers
+     * never observe a partially written file.
+     * @param mesh    the mesh to write
+     * @param file    the target file
+     * @param stamp   the stamp of the source of the mesh
+     * @param scaling the scaling that was applied to the mesh
+     * @throws IOException if the file could not be written, or if the faces of the mesh do not all have the same
+     *                     index arrays
+     */
+    public static void write(MeshFile mesh, Path file, Stamp stamp, Vector3fc scaling) throws IOException {
+        PackedFaceList faces;
+        try {
+            faces = PackedFaceList.of(mesh.getFaces());
+
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Faces of " + mesh + " have different index arrays", ex);
+        }
+
+        int nrOfIndices = faces.nrOfCorners();
+        int flags = 0;
+        if (faces.norm != null) flags |= HAS_NORMAL_INDICES;
+        if (faces.tex != null) flags |= HAS_TEXTURE_INDICES;
+        if (faces.col != null) flags |= HAS_COLOR_INDICES;
+
+        float[] vertices = PackedList.flatten3(mesh.getVertices());
+        float[] normals = PackedList.flatten3(mesh.getNormals());
+        float[] texCoords = PackedList.flatten2(mesh.getTextureCoords());
+        float[] colors = PackedList.flattenColors(mesh.getColors());
+
+        int nrOfIndexArrays = 1 + Integer.bitCount(flags);
+        long size = HEADER_BYTES +
+                4L * (vertices.length + normals.length + texCoords.length + colors.length) +
+                4L * faces.size() + 4L * nrOfIndices * nrOfIndexArrays;
+        if (size > Integer.MAX_VALUE) throw new IOException("Mesh is too large to cache: " + size + " bytes");
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        buffer.putLong(stamp.size()).putLong(stamp.stamp());
+        buffer.putFloat(scaling.x()).putFloat(scaling.y()).putFloat(scaling.z());
+        buffer.putInt(vertices.length / 3).putInt(normals.length / 3)
+                .putInt(texCoords.length / 2).putInt(colors.length / 4)
+                .putInt(faces.size()).putInt(nrOfIndices).putInt(flags);
+
+        buffer.asFloatBuffer().put(vertices).put(normals).put(texCoords).put(colors);
+        buffer.position(buffer.position() + 4 * (vertices.length + normals.length + texCoords.length + colors.length));
+
+        for (int i = 0; i < faces.size(); i++) {
+            buffer.putInt(faces.offsets[i + 1] - faces.offsets[i]);
+        }
+
+        writeInts(buffer, faces.vert);
+        if (faces.norm != null) writeInts(buffer, faces.norm);
+        if (faces.tex != null) writeInts(buffer, faces.tex);
+        if (faces.col != null) writeInts(buffer, faces.col);
+
+        assert !buffer.hasRemaining() : buffer.remaining();
+        buffer.flip();
+
+        writeAtomically(buffer, file);
+    }
+
+    /**
+     * reads cached mesh buffers
+     * @return the cached buffers, or null if the cache file is of another version, source, scaling or settings
+     * @throws IOException if the file could not be read, or is corrupted
+     */
+    private static MeshBuffers readBuffers(Entry entry) throws IOException {
+        try (FileChannel channel = FileChannel.open(entry.file(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < BUFFERS_HEADER_BYTES) throw new IOException("File is too small to be a mesh cache");
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt() != BUFFERS_MAGIC) throw new IOException("Not a mesh buffers cache file");
+            if (buffer.getInt() != BUFFERS_VERSION) return null;
+            if (!entry.stamp().equals(new Stamp(buffer.getLong(), buffer.getLong()))) return null;
+
+            Vector3fc scaling = entry.scaling();
+            float sx = buffer.getFloat();
+            float sy = buffer.getFloat();
+            float sz = buffer.getFloat();
+            if (sx != scaling.x() || sy != scaling.y() || sz != scaling.z()) return null;
+
+            if (buffer.getFloat() != MeshOptimizer.settings()) return null;
+            if (buffer.getFloat() != FlatMesh.WELD_TOLERANCE) return null;
+
+            int nrOfIndices = buffer.getInt();
+            int nrOfPositions = buffer.getInt();
+            int nrOfNormals = buffer.getInt();
+            int nrOfColors = buffer.getInt();
+            int nrOfTexCoords = buffer.getInt();
+
+            long expectedSize = BUFFERS_HEADER_BYTES + 4L * (Math.max(nrOfIndices, 0) + nrOfPositions + nrOfNormals +
+                    Math.max(nrOfColors, 0) + Math.max(nrOfTexCoords, 0));
+            if (fileSize != expectedSize) {
+                throw new IOException("File size is " + fileSize + " bytes, but its header indicates " + expectedSize);
+            }
+
+            int[] indices = (nrOfIndices < 0) ? null : readInts(buffer, nrOfIndices);
+            float[] positions = readFloats(buffer, nrOfPositions);
+            float[] normals = readFloats(buffer, nrOfNormals);
+            float[] colors = (nrOfColors < 0) ? null : readFloats(buffer, nrOfColors);
+            float[] texCoords = (nrOfTexCoords < 0) ? null : readFloats(buffer, nrOfTexCoords);
+
+            if ((colors == null) == (texCoords == null)) throw new IOException("Expected either colors or textures");
+            return new MeshBuffers(indices, positions, normals, colors, texCoords);
+        }
+    }
+
+    private static void writeBuffers(MeshBuffers buffers, Entry entry) throws IOException {
+        int[] indices = buffers.indices;
+        float[] colors = buffers.colors;
+        float[] texCoords = buffers.texCoords;
+
+        long size = BUFFERS_HEADER_BYTES + buffers.byteSize();
+        if (size > Integer.MAX_VALUE) throw new IOException("Mesh is too large to cache: " + size + " bytes");
+
+        Vector3fc scaling = entry.scaling();
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(BUFFERS_MAGIC).putInt(BUFFERS_VERSION);
+        buffer.putLong(entry.stamp().size()).putLong(entry.stamp().stamp());
+        buffer.putFloat(scaling.x()).putFloat(scaling.y()).putFloat(scaling.z());
+        buffer.putFloat(MeshOptimizer.settings()).putFloat(FlatMesh.WELD_TOLERANCE);
+        buffer.putInt(indices == null ? -1 : indices.length)
+                .putInt(buffers.positions.length).putInt(buffers.normals.length)
+                .putInt(colors == null ? -1 : colors.length).putInt(texCoords == null ? -1 : texCoords.length);
+
+        if (indices != null) writeInts(buffer, indices);
+        writeFloats(buffer, buffers.positions);
+        writeFloats(buffer, buffers.normals);
+        if (colors != null) writeFloats(buffer, colors);
+        if (texCoords != null) writeFloats(buffer, texCoords);
+
+        assert !buffer.hasRemaining() : buffer.remaining();
+        buffer.flip();
+
+        writeAtomically(buffer, entry.file());
+    }
+
+    /**
+     * writes the given buffer to the given file under a temporary name, and then moves it to the file, such that
+     * readers never observe a partially written file
+     */
+    private static void writeAtomically(ByteBuffer buffer, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static Path getCacheFile(String key, Vector3fc scaling, String extension) {
+        Path directory = cacheDirectory;
+        if (directory == null) directory = Directory.cache.getPath("meshes");
+
+        String fileName = key.replaceAll("[^A-Za-z0-9._-]", "_");
+        if (fileName.length() > 100) fileName = fileName.substring(fileName.length() - 100);
+
+        // the key may have lost its uniqueness
+        int hash = 31 * key.hashCode() + scaling.hashCode();
+        return directory.resolve(fileName + "-" + Integer.toHexString(hash) + extension);
+    }
+
+    private static float[] readFloats(ByteBuffer buffer, int count) {
+        float[] result = new float[count];
+        buffer.asFloatBuffer().get(result);
+        buffer.position(buffer.position() + count * Float.BYTES);
+        return result;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] result = new int[count];
+        buffer.asIntBuffer().get(result);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return result;
+    }
+
+    private static void writeInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + values.length * Integer.BYTES);
+    }
+
+    private static void writeFloats(ByteBuffer buffer, float[] values) {
+        buffer.asFloatBuffer().put(values);
+        buffer.position(buffer.position() + values.length * Float.BYTES);
+    }
+
+    /**
+     * Identifies a version of a source file.
+     * @param size  the size of the source in bytes
+     * @param stamp the last modification time, or a checksum of the content
+     */
+    public record Stamp(long size, long stamp) {
+        /**
+         * @return a stamp of the given file, based on its size and last modification time
+         */
+        public static Stamp of(Path file) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new Stamp(attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+
+        /**
+         * @return a stamp of the given content, based on its size and checksum
+         */
+        public static Stamp of(byte[] content) {
+            CRC32 checksum = new CRC32();
+            checksum.update(content);
+            return new Stamp(content.length, checksum.getValue());
+        }
+
+        /**
+         * @return a stamp of the content of the given buffer from its position to its limit, based on its size and
+         * checksum. The position of the buffer is not modified.
+         */
+        public static Stamp of(ByteBuffer content) {
+            CRC32 checksum = new CRC32();
+            checksum.update(content.duplicate());
+            return new Stamp(content.remaining(), checksum.getValue());
+        }
+    }
+
+    /**
+     * Where the buffers of a mesh file are cached.
+     * @param file    the cache file of the buffers
+     * @param stamp   the stamp of the source of the mesh file
+     * @param scaling the scaling applied to the mesh file
+     */
+    record Entry(Path file, Stamp stamp, Vector3fc scaling) {}
+
+    /** parses a mesh from its source */
+    interface Parser {
+        MeshFile parse() throws IOException;
+    }
+}
@@ -2,6 +2,7 @@ package io.github.ieperen3039.ngn.Rendering.MeshLoading;
 
 import io.github.ieperen3039.ngn.AssetHandling.Asset;
 import io.github.ieperen3039.ngn.AssetHandling.ExternalAsset;
+import io.github.ieperen3039.ngn.AssetHandling.MemoryFootprint;
 import io.github.ieperen3039.ngn.AssetHandling.Resource;
 import io.github.ieperen3039.ngn.DataStructures.Generic.Color4f;
 import io.github.ieperen3039.ngn.Rendering.Shapes.BasicShape;
@@ -9,27 +10,32 @@ import io.github.ieperen3039.ngn.Rendering.Shapes.Shape;
 import io.github.ieperen3039.ngn.Tools.Logger;
 import io.github.ieperen3039.ngn.Tools.Vectors;
 import org.joml.Vector2fc;
+import org.joml.Vector3f;
 import org.joml.Vector3fc;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Locale;
 
 /**
  * @author Geert van Ieperen created on 28-2-2019.
  */
-public class MeshFile {
+public class MeshFile implements MemoryFootprint {
     private final List<Vector2fc> textureCoords;
     private final List<Vector3fc> vertices;
     private final List<Vector3fc> normals;
     private final List<Face> faces;
     private final List<Color4f> colors;
     private final String name;
+    /** where the buffers of this mesh are cached, or null if these are not cached */
+    private volatile MeshCache.Entry cacheEntry = null;
 
     public MeshFile(
             String name, List<Vector3fc> vertices, List<Vector3fc> normals, List<Face> faces,
@@ -71,28 +77,57 @@ public class MeshFile {
         return faces;
     }
 
+    /**
+     * @return an estimate of the heap memory used by this mesh file, assuming 32 bytes per vector object and
+     * triangular faces
+     */
+    @Override
+    public long byteSize() {
+        long vectorBytes = PackedList.byteSize(vertices, 32) + PackedList.byteSize(normals, 32) +
+                PackedList.byteSize(textureCoords, 32) + PackedList.byteSize(colors, 32);
+        // a face with 4 arrays of 3 elements, including object headers
+        long faceBytes = 160L * faces.size();
+        return vectorBytes + faceBytes;
+    }
+
     private static MeshFile loadResource(Resource.Path path, Vector3fc scaling) throws IOException {
         String fileName = path.toString();
 
-        assert fileName.contains(".") : fileName;
-        String extension = fileName.substring(fileName.lastIndexOf('.'));
+        // a mapped buffer when the resource is in an asset pack, which is then parsed without copying it
+        ByteBuffer source = path.asByteBuffer();
 
-        return switch (extension) {
-            case ".obj" -> FileLoaders.loadOBJ(scaling, path.asStream(), fileName);
-            case ".ply" -> FileLoaders.loadPLY(scaling, path.asStream(), fileName);
-            default -> throw new UnsupportedMeshFileException(fileName);
-        };
+        return MeshCache.load(fileName, MeshCache.Stamp.of(source), scaling,
+                () -> parse(source, fileName, scaling)
+        );
     }
 
     private static MeshFile loadExternalFile(java.nio.file.Path path, Vector3fc scaling) throws IOException {
         String fileName = path.toString();
 
+        return MeshCache.load(path.toAbsolutePath().toString(), MeshCache.Stamp.of(path), scaling,
+                () -> parse(map(path), fileName, scaling)
+        );
+    }
+
+    /** maps the given file into memory, such that large files are parsed without copying them to the heap first */
+    private static ByteBuffer map(java.nio.file.Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to load: " + path + " (" + size + " bytes)");
+            }
+
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private static MeshFile parse(ByteBuffer content, String fileName, Vector3fc scaling) throws IOException {
         assert fileName.contains(".") : fileName;
         String extension = fileName.substring(fileName.lastIndexOf('.'));
 
         return switch (extension) {
-            case ".obj" -> FileLoaders.loadOBJ(scaling, new FileInputStream(path.toFile()), fileName);
-            case ".ply" -> FileLoaders.loadPLY(scaling, new FileInputStream(path.toFile()), fileName);
+            case ".obj" -> FileLoaders.loadOBJ(scaling, content, fileName);
+            case ".ply" -> FileLoaders.loadPLY(scaling, content, fileName);
             default -> throw new UnsupportedMeshFileException(fileName);
         };
     }
@@ -101,24 +136,59 @@ public class MeshFile {
         return new BasicShape(vertices, normals, faces);
     }
 
-    public Mesh getMesh() {
+    /**
+     * welds and optimizes the vertices of this mesh into the buffers that are uploaded to the GPU. If this mesh was
+     * loaded through the {@link MeshCache}, the buffers are cached as well. Does not use OpenGL, thus this may be
+     * called on any thread.
+     * @see #getMesh()
+     */
+    public MeshBuffers getMeshBuffers() {
+        MeshCache.Entry entry = cacheEntry;
+        if (entry != null) return MeshCache.loadBuffers(entry, this::createMeshBuffers);
+        return createMeshBuffers();
+    }
+
+    /** sets where the buffers of this mesh are cached, see {@link MeshCache} */
+    void setCacheEntry(MeshCache.Entry entry) {
+        this.cacheEntry = entry;
+    }
+
+    private MeshBuffers createMeshBuffers() {
         if (isTextured()) {
-            return new SmoothMesh(getVertices(), getNormals(), getTextureCoords(), getFaces());
+            return SmoothMesh.combine(getVertices(), getNormals(), getTextureCoords(), getFaces());
 
         } else if (isColored()) {
-            return new FlatMesh(getVertices(), getNormals(), getColors(), getFaces());
+            return FlatMesh.weld(getVertices(), getNormals(), getColors(), getFaces());
 
         } else {
-            return new FlatMesh(getVertices(), getNormals(), getFaces());
+            return FlatMesh.weld(getVertices(), getNormals(), null, getFaces());
         }
     }
 
+    /**
+     * creates a mesh of this file. This may only be called on the render thread, and welds the vertices on that thread
+     * as well. To only upload on the render thread, derive the {@link #getMeshBuffers() buffers} in the background
+     * instead, and call {@link MeshBuffers#upload()} on those.
+     */
+    public Mesh getMesh() {
+        return getMeshBuffers().upload();
+    }
+
+    /**
+     * creates an asset of the mesh of the given file, of which the vertices are welded and optimized in the
+     * background, such that only uploading happens on the render thread
+     */
+    public static Asset<Mesh> meshAsset(Asset<MeshFile> file) {
+        Asset<MeshBuffers> buffers = Asset.deriveInBackground(file, MeshFile::getMeshBuffers);
+        return Asset.derive(buffers, MeshBuffers::upload, Mesh::dispose);
+    }
+
     public static Asset<MeshFile> createAsset(Path path) {
         return createAsset(Vectors.Scaling.UNIFORM, path);
     }
 
     public static Asset<MeshFile> createAsset(Vector3fc scaling, Path path) {
-        return ExternalAsset.get((p) -> loadExternalFile(p, scaling), path);
+        return ExternalAsset.get((p) -> loadExternalFile(p, scaling), path, new Variant(new Vector3f(scaling)));
     }
 
     public static Asset<MeshFile> createAsset(Resource.Path path) {
@@ -126,9 +196,12 @@ public class MeshFile {
     }
 
     public static Asset<MeshFile> createAsset(Vector3fc scaling, Resource.Path path) {
-        return Resource.get((p) -> loadResource(p, scaling), path);
+        return Resource.get((p) -> loadResource(p, scaling), path, new Variant(new Vector3f(scaling)));
     }
 
+    /** distinguishes mesh files of the same path loaded with a different scaling */
+    private record Variant(Vector3fc scaling) {}
+
     /**
      * writes an object to the given filename
      * @throws IOException if any problem occurs while creating the file
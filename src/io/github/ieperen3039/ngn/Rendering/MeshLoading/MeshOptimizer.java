@@ -0,0 +1,501 @@
+package io.github.ieperen3039.ngn.Rendering.MeshLoading;
+
+import io.github.ieperen3039.ngn.DataStructures.Generic.IntArrayList;
+import io.github.ieperen3039.ngn.Tools.Vectors;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reorders the index buffer and vertices of a mesh for rendering speed, before the mesh is uploaded:
+ * <ol>
+ *     <li>triangles are reordered for the post-transform vertex cache, using Tom Forsyth's linear-speed vertex cache
+ *     optimization;</li>
+ *     <li>optionally, clusters of triangles are sorted such that outward-facing clusters are drawn first, which reduces
+ *     overdraw. The new order is only kept if it does not make the cache efficiency worse than the threshold;</li>
+ *     <li>vertices are reordered in the order of first use, such that vertex fetches are mostly sequential.</li>
+ * </ol>
+ * The efficiency of an index buffer is measured by {@link #analyze(int[], int, int)}. The gain on a set of mesh files
+ * can be verified from the command line:
+ * <pre>{@code
+ *     MeshOptimizer <mesh file>...
+ * }</pre>
+ */
+public final class MeshOptimizer {
+    /** the size of the cache modelled by the optimization, as recommended by Forsyth */
+    public static final int CACHE_SIZE = 32;
+    /** the size of the FIFO cache modelled by the analysis, which is a common size on current hardware */
+    public static final int ANALYSIS_CACHE_SIZE = 16;
+
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+    private static final int MAX_TABLED_VALENCE = 64;
+    /** the score of a vertex for each position in the cache */
+    private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+    /** the score of a vertex for each number of remaining triangles */
+    private static final float[] VALENCE_SCORES = new float[MAX_TABLED_VALENCE + 1];
+
+    static {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            // the vertices of the last triangle have a fixed score, to prevent using them right away
+            CACHE_SCORES[i] = (i < 3) ? LAST_TRIANGLE_SCORE :
+                    (float) Math.pow(1 - (i - 3) / (float) (CACHE_SIZE - 3), CACHE_DECAY_POWER);
+        }
+
+        for (int i = 1; i <= MAX_TABLED_VALENCE; i++) {
+            VALENCE_SCORES[i] = valenceScore(i);
+        }
+    }
+
+    private static volatile boolean isEnabled = true;
+    private static volatile float overdrawThreshold = 1.05f;
+
+    private MeshOptimizer() {}
+
+    /**
+     * @param doEnable when false, {@link #optimize(int[], float[], float[]...)} returns the indices unchanged.
+     */
+    public static void setEnabled(boolean doEnable) {
+        isEnabled = doEnable;
+    }
+
+    /**
+     * @param threshold the maximum factor by which sorting for overdraw may increase the ACMR, for example 1.05 to
+     *                  allow 5% more cache misses. Use 0 to disable sorting for overdraw.
+     */
+    public static void setOverdrawThreshold(float threshold) {
+        overdrawThreshold = threshold;
+    }
+
+    /**
+     * @return a value that identifies the settings that affect the result of
+     * {@link #optimize(int[], float[], float[]...)}, such that cached results of other settings can be recognized
+     */
+    static float settings() {
+        return isEnabled ? overdrawThreshold : -1;
+    }
+
+    /**
+     * optimizes the given triangle mesh for the vertex cache, overdraw and vertex fetch. The vertex attributes are
+     * reordered in-place.
+     * @param indices    the vertices of each triangle, which is not modified
+     * @param positions  the positions of the vertices, concatenated in groups of 3
+     * @param attributes other attributes of the vertices, each with an equal number of components per vertex
+     * @return the new indices
+     */
+    public static int[] optimize(int[] indices, float[] positions, float[]... attributes) {
+        if (!isEnabled || indices.length < 3) return indices;
+
+        int nrOfVertices = positions.length / 3;
+        int[] result = optimizeVertexCache(indices, nrOfVertices);
+
+        float threshold = overdrawThreshold;
+        if (threshold > 0) result = optimizeOverdraw(result, positions, threshold);
+
+        int[] remap = optimizeVertexFetch(result, nrOfVertices);
+        remapAttribute(positions, 3, remap);
+        for (float[] attribute : attributes) {
+            remapAttribute(attribute, attribute.length / nrOfVertices, remap);
+        }
+
+        return result;
+    }
+
+    /**
+     * reorders the triangles such that vertices are reused while they are in the post-transform cache, using Tom
+     * Forsyth's linear-speed vertex cache optimization.
+     * @param indices      the vertices of each triangle, which is not modified
+     * @param nrOfVertices the number of vertices
+     * @return the same triangles, in a different order
+     */
+    public static int[] optimizeVertexCache(int[] indices, int nrOfVertices) {
+        int nrOfTriangles = indices.length / 3;
+        int[] result = new int[nrOfTriangles * 3];
+        if (nrOfTriangles == 0) return result;
+
+        // the triangles of each vertex. Emitted triangles are swapped to the end, and are no longer counted by valence
+        int[] valence = new int[nrOfVertices];
+        for (int i = 0; i < nrOfTriangles * 3; i++) {
+            valence[indices[i]]++;
+        }
+
+        int[] adjacencyOffsets = new int[nrOfVertices + 1];
+        for (int v = 0; v < nrOfVertices; v++) {
+            adjacencyOffsets[v + 1] = adjacencyOffsets[v] + valence[v];
+        }
+
+        int[] adjacency = new int[nrOfTriangles * 3];
+        int[] fill = Arrays.copyOf(adjacencyOffsets, nrOfVertices);
+        for (int i = 0; i < nrOfTriangles * 3; i++) {
+            adjacency[fill[indices[i]]++] = i / 3;
+        }
+
+        int[] cachePositions = new int[nrOfVertices];
+        float[] vertexScores = new float[nrOfVertices];
+        Arrays.fill(cachePositions, -1);
+        for (int v = 0; v < nrOfVertices; v++) {
+            vertexScores[v] = vertexScore(-1, valence[v]);
+        }
+
+        float[] triangleScores = new float[nrOfTriangles];
+        int best = 0;
+        for (int t = 0; t < nrOfTriangles; t++) {
+            triangleScores[t] = vertexScores[indices[t * 3]] + vertexScores[indices[t * 3 + 1]] +
+                    vertexScores[indices[t * 3 + 2]];
+            if (triangleScores[t] > triangleScores[best]) best = t;
+        }
+
+        boolean[] isEmitted = new boolean[nrOfTriangles];
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] newCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+        int cursor = 0;
+
+        for (int out = 0; out < nrOfTriangles; out++) {
+            if (best < 0) {
+                // no triangle in the cache is left, continue with the next triangle in the input
+                while (isEmitted[cursor]) cursor++;
+                best = cursor;
+            }
+
+            int a = indices[best * 3];
+            int b = indices[best * 3 + 1];
+            int c = indices[best * 3 + 2];
+            result[out * 3] = a;
+            result[out * 3 + 1] = b;
+            result[out * 3 + 2] = c;
+            isEmitted[best] = true;
+
+            removeAdjacent(a, best, adjacency, adjacencyOffsets, valence);
+            removeAdjacent(b, best, adjacency, adjacencyOffsets, valence);
+            removeAdjacent(c, best, adjacency, adjacencyOffsets, valence);
+
+            // the vertices of this triangle move to the front of the cache
+            int newCount = 0;
+            newCache[newCount++] = a;
+            if (b != a) newCache[newCount++] = b;
+            if (c != a && c != b) newCache[newCount++] = c;
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if (v != a && v != b && v != c) newCache[newCount++] = v;
+            }
+
+            // update the scores of all vertices that moved in or out of the cache
+            for (int i = 0; i < newCount; i++) {
+                int v = newCache[i];
+                cachePositions[v] = (i < CACHE_SIZE) ? i : -1;
+
+                float score = vertexScore(cachePositions[v], valence[v]);
+                float delta = score - vertexScores[v];
+                vertexScores[v] = score;
+
+                int start = adjacencyOffsets[v];
+                for (int j = start; j < start + valence[v]; j++) {
+                    triangleScores[adjacency[j]] += delta;
+                }
+            }
+
+            int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+            cacheCount = Math.min(newCount, CACHE_SIZE);
+
+            // the best next triangle uses a vertex in the cache
+            best = -1;
+            float bestScore = -Float.MAX_VALUE;
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                int start = adjacencyOffsets[v];
+                for (int j = start; j < start + valence[v]; j++) {
+                    int t = adjacency[j];
+                    if (triangleScores[t] > bestScore) {
+                        bestScore = triangleScores[t];
+                        best = t;
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * sorts clusters of triangles such that clusters that face outward are drawn first, which reduces overdraw. A
+     * cluster ends where the vertex cache is flushed, thus the order within the clusters is kept.
+     * @param indices   the vertices of each triangle, preferably optimized for the vertex cache. Not modified.
+     * @param positions the positions of the vertices, concatenated in groups of 3
+     * @param threshold the maximum factor by which the ACMR may increase
+     * @return the same triangles in a different order, or the given indices if the threshold would be exceeded
+     */
+    public static int[] optimizeOverdraw(int[] indices, float[] positions, float threshold) {
+        int nrOfTriangles = indices.length / 3;
+        int nrOfVertices = positions.length / 3;
+
+        // clusters start at triangles of which all vertices miss the cache
+        IntArrayList clusterStarts = new IntArrayList();
+        int[] timestamps = new int[nrOfVertices];
+        int time = ANALYSIS_CACHE_SIZE + 1;
+
+        for (int t = 0; t < nrOfTriangles; t++) {
+            int misses = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t * 3 + k];
+                if (time - timestamps[v] > ANALYSIS_CACHE_SIZE) {
+                    timestamps[v] = time++;
+                    misses++;
+                }
+            }
+
+            if (misses == 3 || t == 0) clusterStarts.add(t);
+        }
+
+        int nrOfClusters = clusterStarts.size();
+        if (nrOfClusters < 2) return indices;
+        clusterStarts.add(nrOfTriangles);
+
+        Vector3f meshCenter = new Vector3f();
+        for (int v = 0; v < nrOfVertices; v++) {
+            meshCenter.add(positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2]);
+        }
+        meshCenter.div(Math.max(nrOfVertices, 1));
+
+        // clusters that face away from the center of the mesh are likely to occlude the other clusters
+        float[] sortKeys = new float[nrOfClusters];
+        Vector3f p0 = new Vector3f();
+        Vector3f p1 = new Vector3f();
+        Vector3f p2 = new Vector3f();
+        Vector3f cross = new Vector3f();
+        Vector3f normal = new Vector3f();
+        Vector3f center = new Vector3f();
+
+        for (int i = 0; i < nrOfClusters; i++) {
+            normal.zero();
+            center.zero();
+            float totalArea = 0;
+
+            for (int t = clusterStarts.get(i); t < clusterStarts.get(i + 1); t++) {
+                read(positions, indices[t * 3], p0);
+                read(positions, indices[t * 3 + 1], p1);
+                read(positions, indices[t * 3 + 2], p2);
+
+                // the length of the cross product is twice the area of the triangle
+                p1.sub(p0, cross).cross(p2.x - p0.x, p2.y - p0.y, p2.z - p0.z);
+                float area = cross.length();
+                normal.add(cross);
+
+                // the centroid, weighted by area
+                center.fma(area / 3, p0.add(p1).add(p2));
+                totalArea += area;
+            }
+
+            if (totalArea > 0) center.div(totalArea);
+            float length = normal.length();
+            sortKeys[i] = (length > 0) ? center.sub(meshCenter).dot(normal) / length : 0;
+        }
+
+        Integer[] order = new Integer[nrOfClusters];
+        for (int i = 0; i < nrOfClusters; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Float.compare(sortKeys[y], sortKeys[x]));
+
+        int[] result = new int[nrOfTriangles * 3];
+        int out = 0;
+        for (int cluster : order) {
+            int from = clusterStarts.get(cluster) * 3;
+            int to = clusterStarts.get(cluster + 1) * 3;
+            System.arraycopy(indices, from, result, out, to - from);
+            out += to - from;
+        }
+
+        float before = analyze(indices, nrOfVertices, ANALYSIS_CACHE_SIZE).acmr();
+        float after = analyze(result, nrOfVertices, ANALYSIS_CACHE_SIZE).acmr();
+        return (after <= before * threshold) ? result : indices;
+    }
+
+    /**
+     * renames the vertices in the order in which they are first used, such that vertex fetches are mostly sequential.
+     * Unused vertices are moved to the end.
+     * @param indices      the vertices of each triangle, which are renamed in-place
+     * @param nrOfVertices the number of vertices
+     * @return for each old vertex index, the new vertex index. See {@link #remapAttribute(float[], int, int[])}
+     */
+    public static int[] optimizeVertexFetch(int[] indices, int nrOfVertices) {
+        int[] remap = new int[nrOfVertices];
+        Arrays.fill(remap, -1);
+        int next = 0;
+
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            if (remap[v] < 0) remap[v] = next++;
+            indices[i] = remap[v];
+        }
+
+        for (int v = 0; v < nrOfVertices; v++) {
+            if (remap[v] < 0) remap[v] = next++;
+        }
+
+        return remap;
+    }
+
+    /**
+     * moves the attribute of each vertex to its new index
+     * @param attribute the attribute of all vertices, which is reordered in-place
+     * @param size      the number of components of the attribute of one vertex
+     * @param remap     for each old vertex index, the new vertex index
+     */
+    public static void remapAttribute(float[] attribute, int size, int[] remap) {
+        float[] source = attribute.clone();
+        for (int v = 0; v < remap.length; v++) {
+            System.arraycopy(source, v * size, attribute, remap[v] * size, size);
+        }
+    }
+
+    /**
+     * simulates a FIFO post-transform cache of the given size
+     * @param indices      the vertices of each triangle
+     * @param nrOfVertices the number of vertices
+     * @param cacheSize    the number of vertices in the simulated cache
+     * @return the average cache miss ratio and the average transform to vertex ratio of the given triangles
+     */
+    public static CacheStatistics analyze(int[] indices, int nrOfVertices, int cacheSize) {
+        int[] timestamps = new int[nrOfVertices];
+        int time = cacheSize + 1;
+        int misses = 0;
+        int nrOfUsedVertices = 0;
+
+        for (int v : indices) {
+            if (timestamps[v] == 0) nrOfUsedVertices++;
+
+            // a vertex is in the cache if fewer than cacheSize vertices were added since
+            if (time - timestamps[v] > cacheSize) {
+                timestamps[v] = time++;
+                misses++;
+            }
+        }
+
+        int nrOfTriangles = indices.length / 3;
+        return new CacheStatistics(
+                (nrOfTriangles == 0) ? 0 : (float) misses / nrOfTriangles,
+                (nrOfUsedVertices == 0) ? 0 : (float) misses / nrOfUsedVertices
+        );
+    }
+
+    /**
+     * prints the cache efficiency of the given mesh files before and after optimization. Each file is welded and
+     * triangulated like a {@link FlatMesh}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: MeshOptimizer <mesh file>...");
+            System.exit(1);
+        }
+
+        for (String arg : args) {
+            Path path = Path.of(arg);
+            ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(path));
+            Vector3f scaling = new Vector3f(1);
+            MeshFile mesh = arg.endsWith(".ply") ?
+                    FileLoaders.loadPLY(scaling, content, arg) :
+                    FileLoaders.loadOBJ(scaling, content, arg);
+
+            // weld like FlatMesh, triangulating polygons as fans
+            List<Face> faces = mesh.getFaces();
+            VertexWelder welder = new VertexWelder(FlatMesh.WELD_TOLERANCE, mesh.getVertices().size(), 3, 3);
+            IntArrayList indices = new IntArrayList();
+            float[] corner = new float[6];
+            int[] polygon = new int[3];
+
+            for (Face face : faces) {
+                if (polygon.length < face.size()) polygon = new int[face.size()];
+
+                for (int j = 0; j < face.size(); j++) {
+                    Vector3fc position = mesh.getVertices().get(face.vert()[j]);
+                    corner[0] = position.x();
+                    corner[1] = position.y();
+                    corner[2] = position.z();
+
+                    // corners of OBJ files may have no normal
+                    int normalIndex = (face.norm() == null) ? -1 : face.norm()[j];
+                    Vector3fc normal = (normalIndex < 0) ? Vectors.O : mesh.getNormals().get(normalIndex);
+                    corner[3] = normal.x();
+                    corner[4] = normal.y();
+                    corner[5] = normal.z();
+                    polygon[j] = welder.add(corner);
+                }
+
+                for (int j = 2; j < face.size(); j++) {
+                    indices.add(polygon[0]);
+                    indices.add(polygon[j - 1]);
+                    indices.add(polygon[j]);
+                }
+            }
+
+            int[] original = indices.toArray();
+            int nrOfVertices = welder.size();
+            float[] positions = welder.getAttribute(0);
+
+            long start = System.nanoTime();
+            int[] optimized = optimize(original, positions);
+            long nanos = System.nanoTime() - start;
+
+            System.out.printf("%s: %d triangles, %d vertices%n", arg, original.length / 3, nrOfVertices);
+            System.out.printf("  file order: %s%n", analyze(original, nrOfVertices, ANALYSIS_CACHE_SIZE));
+            System.out.printf("  optimized:  %s (%.1f ms)%n", analyze(optimized, nrOfVertices, ANALYSIS_CACHE_SIZE),
+                    nanos / 1e6);
+        }
+    }
+
+    private static void removeAdjacent(int vertex, int triangle, int[] adjacency, int[] offsets, int[] valence) {
+        int start = offsets[vertex];
+        int last = start + valence[vertex] - 1;
+
+        for (int j = start; j <= last; j++) {
+            if (adjacency[j] == triangle) {
+                adjacency[j] = adjacency[last];
+                adjacency[last] = triangle;
+                valence[vertex]--;
+                return;
+            }
+        }
+    }
+
+    private static float vertexScore(int cachePosition, int valence) {
+        // vertices without remaining triangles are never used again
+        if (valence == 0) return -1;
+
+        float score = (cachePosition < 0) ? 0 : CACHE_SCORES[cachePosition];
+        return score + ((valence <= MAX_TABLED_VALENCE) ? VALENCE_SCORES[valence] : valenceScore(valence));
+    }
+
+    /** a boost for vertices with few remaining triangles, to prevent leaving single triangles behind */
+    private static float valenceScore(int valence) {
+        return VALENCE_BOOST_SCALE * (float) Math.pow(valence, -VALENCE_BOOST_POWER);
+    }
+
+    private static Vector3f read(float[] positions, int vertex, Vector3f target) {
+        return target.set(positions[vertex * 3], positions[vertex * 3 + 1], positions[vertex * 3 + 2]);
+    }
+
+    /**
+     * @param acmr the average cache miss ratio: the number of transformed vertices per triangle. Lower is better, with
+     *             0.5 being the optimum for large regular meshes
+     * @param atvr the average transform to vertex ratio: the number of times each vertex is transformed. Lower is
+     *             better, with 1 being the optimum
+     */
+    public record CacheStatistics(float acmr, float atvr) {
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "ACMR %.3f, ATVR %.3f", acmr, atvr);
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package io.github.ieperen3039.ngn.Rendering.MeshLoading;
+
+import io.github.ieperen3039.ngn.Core.JobSystem;
+import io.github.ieperen3039.ngn.DataStructures.Generic.FloatArrayList;
+import io.github.ieperen3039.ngn.DataStructures.Generic.IntArrayList;
+import io.github.ieperen3039.ngn.Tools.Logger;
+import org.joml.Vector3fc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * A parser of Wavefront OBJ files that reads the bytes of the file directly from a buffer, which may be a mapped file.
+ * Numbers are parsed from the bytes into growable primitive arrays, thus parsing creates no strings, and no objects per
+ * vertex or face. The resulting {@link MeshFile} is backed by these arrays.
+ * <p>
+ * Large files are split at line boundaries into chunks, which are parsed in parallel on the
+ * {@link JobSystem#getDefault() default job system}. Each chunk counts its vertices, normals and texture coordinates
+ * from zero, and remembers the corners that use relative (negative) indices. When merging the chunks, these corners are
+ * moved to the index space of the whole file, such that the result is identical to parsing the file sequentially.
+ * <p>
+ * Supports the {@code v}, {@code vn}, {@code vt} and {@code f} statements, with negative (relative) indices. Other
+ * statements are ignored.
+ */
+final class ObjParser {
+    /** exactly representable powers of 10 */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    /** the maximum number of significant digits that are parsed exactly */
+    private static final int MAX_EXACT_DIGITS = 15;
+    /** the minimum number of bytes of one chunk, such that small files are parsed on the calling thread */
+    private static final int MIN_CHUNK_BYTES = 4 * 1024 * 1024;
+    /** the number of chunks per processor, to balance chunks of vertices against the slower chunks of faces */
+    private static final int CHUNKS_PER_PROCESSOR = 4;
+
+    /** the content of the file, which is only read with absolute indices such that chunks can share it */
+    private final ByteBuffer data;
+    /** the start of the file in data, to compute line numbers */
+    private final int origin;
+    private final int end;
+    private int position;
+
+    final FloatArrayList vertices;
+    final FloatArrayList normals = new FloatArrayList();
+    final FloatArrayList texCoords = new FloatArrayList();
+    final IntArrayList faceOffsets = new IntArrayList();
+    final IntArrayList vertIndices;
+    final IntArrayList normIndices;
+    final IntArrayList texIndices;
+    /** the corners that use a relative index, which is relative to the start of this chunk */
+    private final IntArrayList relativeVerts = new IntArrayList();
+    private final IntArrayList relativeNorms = new IntArrayList();
+    private final IntArrayList relativeTexCoords = new IntArrayList();
+
+    /**
+     * @param data   the content of the file
+     * @param origin the start of the file in data
+     * @param start  the start of the lines parsed by this parser
+     * @param end    the end of the lines parsed by this parser, exclusive
+     */
+    private ObjParser(ByteBuffer data, int origin, int start, int end) {
+        this.data = data;
+        this.origin = origin;
+        this.position = start;
+        this.end = end;
+
+        // a rough estimate, to prevent most of the growing
+        int estimate = (end - start) / 64;
+        this.vertices = new FloatArrayList(estimate);
+        this.vertIndices = new IntArrayList(estimate * 3);
+        this.normIndices = new IntArrayList(estimate * 3);
+        this.texIndices = new IntArrayList(estimate * 3);
+    }
+
+    /**
+     * parses an OBJ file. Files of at least two chunks are parsed in parallel.
+     * @param buffer the content of the file, from its position to its limit
+     * @param scale  the scaling applied to the vertices
+     * @param name   the name of the resulting mesh
+     */
+    static MeshFile parse(ByteBuffer buffer, Vector3fc scale, String name) throws IOException {
+        int length = buffer.remaining();
+
+        // with one processor, parsing in chunks only adds overhead
+        int nrOfProcessors = Runtime.getRuntime().availableProcessors();
+        int nrOfChunks = (nrOfProcessors < 2) ? 1 :
+                Math.min(length / MIN_CHUNK_BYTES, nrOfProcessors * CHUNKS_PER_PROCESSOR);
+
+        return parse(buffer, scale, name, nrOfChunks, (nrOfChunks < 2) ? null : JobSystem.getDefault());
+    }
+
+    /**
+     * parses an OBJ file in the given number of chunks
+     * @param nrOfChunks the number of chunks to split the file in. Files of less than one line per chunk result in
+     *                   fewer chunks.
+     * @param jobs       the job system that parses the chunks in parallel, or null if nrOfChunks is less than 2
+     */
+    static MeshFile parse(ByteBuffer buffer, Vector3fc scale, String name, int nrOfChunks, JobSystem jobs)
+            throws IOException {
+        // absolute reads only, thus the position of the given buffer is not modified
+        int start = buffer.position();
+        int end = buffer.limit();
+
+        ObjParser[] chunks = (nrOfChunks < 2) ?
+                new ObjParser[]{new ObjParser(buffer, start, start, end)} :
+                split(buffer, start, end, nrOfChunks);
+
+        if (chunks.length == 1) {
+            chunks[0].parse(scale);
+
+        } else {
+            parseInParallel(jobs, chunks, scale);
+        }
+
+        MeshFile mesh = merge(chunks, name);
+
+        if (mesh.getVertices().isEmpty() || mesh.getFaces().isEmpty()) {
+            Logger.ERROR.print("Empty mesh loaded: " + name + " (this may result in errors)");
+        }
+
+        return mesh;
+    }
+
+    /**
+     * splits the given range in chunks of about equal size, which each start at the beginning of a line
+     * @return a parser for each chunk
+     */
+    private static ObjParser[] split(ByteBuffer data, int start, int end, int nrOfChunks) {
+        List<ObjParser> chunks = new ArrayList<>(nrOfChunks);
+        int chunkStart = start;
+        long length = end - start;
+
+        for (int i = 1; i <= nrOfChunks && chunkStart < end; i++) {
+            int chunkEnd = (int) (start + length * i / nrOfChunks);
+            if (chunkEnd < chunkStart) chunkEnd = chunkStart;
+
+            while (chunkEnd < end && data.get(chunkEnd - 1) != '\n') {
+                chunkEnd++;
+            }
+
+            chunks.add(new ObjParser(data, start, chunkStart, chunkEnd));
+            chunkStart = chunkEnd;
+        }
+
+        return chunks.toArray(new ObjParser[0]);
+    }
+
+    /**
+     * parses the first chunk on the calling thread, and all other chunks on the given job system. Returns when all
+     * chunks are done, or throws the failure of the first chunk in the file that failed. Chunks after a failed chunk
+     * are skipped if they have not started yet. Always waits for the chunks that did start, such that no chunk is still
+     * being parsed when this method returns.
+     */
+    private static void parseInParallel(JobSystem jobs, ObjParser[] chunks, Vector3fc scale) throws IOException {
+        Throwable[] failures = new Throwable[chunks.length];
+        // chunks after this index are skipped
+        AtomicInteger lastChunk = new AtomicInteger(chunks.length - 1);
+
+        IntConsumer parseChunk = i -> {
+            if (i > lastChunk.get()) return;
+
+            try {
+                chunks[i].parse(scale);
+
+            } catch (Throwable ex) {
+                failures[i] = ex;
+                lastChunk.accumulateAndGet(i, Math::min);
+            }
+        };
+
+        JobSystem.Job job = jobs.parallelFor(1, chunks.length, 1, parseChunk);
+        boolean isInterrupted;
+
+        try {
+            parseChunk.accept(0);
+
+        } finally {
+            isInterrupted = await(jobs, job, lastChunk);
+        }
+
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing");
+        }
+
+        for (Throwable failure : failures) {
+            if (failure == null) continue;
+            if (failure instanceof IOException io) throw io;
+            if (failure instanceof RuntimeException ex) throw ex;
+            if (failure instanceof Error err) throw err;
+            throw new IOException(failure);
+        }
+    }
+
+    /**
+     * waits until the given job has finished. If this thread is interrupted, the chunks that have not started are
+     * skipped, and this keeps waiting for the chunks that did.
+     * @param lastChunk the index of the last chunk that is parsed
+     * @return true if this thread was interrupted while waiting
+     */
+    private static boolean await(JobSystem jobs, JobSystem.Job job, AtomicInteger lastChunk) {
+        boolean isInterrupted = false;
+
+        while (true) {
+            try {
+                jobs.waitFor(job);
+                return isInterrupted;
+
+            } catch (InterruptedException ex) {
+                isInterrupted = true;
+                lastChunk.set(0);
+            }
+        }
+    }
+
+    /**
+     * concatenates the results of the given chunks, and moves the relative indices of each chunk to the index space of
+     * the whole file
+     * @param chunks parsers of consecutive parts of one file
+     */
+    private static MeshFile merge(ObjParser[] chunks, String name) {
+        int nrOfVertexFloats = 0;
+        int nrOfNormalFloats = 0;
+        int nrOfTexFloats = 0;
+        int nrOfFaces = 0;
+        int nrOfCorners = 0;
+
+        for (ObjParser chunk : chunks) {
+            nrOfVertexFloats += chunk.vertices.size();
+            nrOfNormalFloats += chunk.normals.size();
+            nrOfTexFloats += chunk.texCoords.size();
+            nrOfFaces += chunk.faceOffsets.size();
+            nrOfCorners += chunk.vertIndices.size();
+        }
+
+        float[] vertices = new float[nrOfVertexFloats];
+        float[] normals = new float[nrOfNormalFloats];
+        float[] texCoords = new float[nrOfTexFloats];
+        int[] offsets = new int[nrOfFaces + 1];
+        int[] vert = new int[nrOfCorners];
+        int[] norm = new int[nrOfCorners];
+        int[] tex = new int[nrOfCorners];
+
+        int vertexFloat = 0;
+        int normalFloat = 0;
+        int texFloat = 0;
+        int face = 0;
+        int corner = 0;
+
+        for (ObjParser chunk : chunks) {
+            chunk.vertices.copyTo(vertices, vertexFloat);
+            chunk.normals.copyTo(normals, normalFloat);
+            chunk.texCoords.copyTo(texCoords, texFloat);
+            chunk.vertIndices.copyTo(vert, corner);
+            chunk.normIndices.copyTo(norm, corner);
+            chunk.texIndices.copyTo(tex, corner);
+
+            for (int i = 0; i < chunk.faceOffsets.size(); i++) {
+                offsets[face + i] = chunk.faceOffsets.get(i) + corner;
+            }
+
+            moveRelative(vert, corner, chunk.relativeVerts, vertexFloat / 3);
+            moveRelative(norm, corner, chunk.relativeNorms, normalFloat / 3);
+            moveRelative(tex, corner, chunk.relativeTexCoords, texFloat / 2);
+
+            vertexFloat += chunk.vertices.size();
+            normalFloat += chunk.normals.size();
+            texFloat += chunk.texCoords.size();
+            face += chunk.faceOffsets.size();
+            corner += chunk.vertIndices.size();
+        }
+
+        offsets[nrOfFaces] = nrOfCorners;
+        PackedFaceList faces = new PackedFaceList(offsets, vert, norm, tex, null);
+
+        return new MeshFile(
+                name, PackedList.ofVector3(vertices), PackedList.ofVector3(normals), faces,
+                (texCoords.length == 0) ? Collections.emptyList() : PackedList.ofVector2(texCoords),
+                Collections.emptyList()
+        );
+    }
+
+    /**
+     * adds the given base to the indices of the given corners
+     * @param indices    the indices of all corners of the file
+     * @param cornerBase the index of the first corner of the chunk in indices
+     * @param corners    the corners of the chunk that have a relative index
+     * @param base       the number of elements defined before the chunk
+     */
+    private static void moveRelative(int[] indices, int cornerBase, IntArrayList corners, int base) {
+        if (base == 0) return;
+
+        for (int i = 0; i < corners.size(); i++) {
+            indices[cornerBase + corners.get(i)] += base;
+        }
+    }
+
+    /**
+     * parses all statements
+     * @param scale the scaling applied to the vertices
+     */
+    void parse(Vector3fc scale) throws IOException {
+        float sx = scale.x();
+        float sy = scale.y();
+        float sz = scale.z();
+
+        while (position < end) {
+            skipSpaces();
+            if (position >= end) break;
+
+            byte first = data.get(position);
+            byte second = (position + 1 < end) ? data.get(position + 1) : (byte) '\n';
+
+            if (first == 'v' && isSpace(second)) {
+                position += 1;
+                float x = parseFloat();
+                float y = parseFloat();
+                float z = parseFloat();
+                vertices.add(x * sx, y * sy, z * sz);
+
+            } else if (first == 'v' && second == 'n' && isSpaceAt(position + 2)) {
+                position += 2;
+                normals.add(parseFloat(), parseFloat(), parseFloat());
+
+            } else if (first == 'v' && second == 't' && isSpaceAt(position + 2)) {
+                position += 2;
+                texCoords.add(parseFloat(), parseFloat());
+
+            } else if (first == 'f' && isSpace(second)) {
+                position += 1;
+                parseFace();
+            }
+
+            skipLine();
+        }
+    }
+
+    /** parses the corners of a face, of the form {@code v}, {@code v/t}, {@code v//n} or {@code v/t/n} */
+    private void parseFace() throws IOException {
+        faceOffsets.add(vertIndices.size());
+
+        int nrOfVertices = vertices.size() / 3;
+        int nrOfTexCoords = texCoords.size() / 2;
+        int nrOfNormals = normals.size() / 3;
+
+        while (true) {
+            skipSpaces();
+            if (position >= end || isLineEnd(data.get(position))) break;
+
+            int vert = parseIndex(nrOfVertices, relativeVerts);
+            int tex = -1;
+            int norm = -1;
+
+            if (position < end && data.get(position) == '/') {
+                position++;
+                if (position < end && data.get(position) != '/') tex = parseIndex(nrOfTexCoords, relativeTexCoords);
+
+                if (position < end && data.get(position) == '/') {
+                    position++;
+                    norm = parseIndex(nrOfNormals, relativeNorms);
+                }
+            }
+
+            vertIndices.add(vert);
+            texIndices.add(tex);
+            normIndices.add(norm);
+        }
+    }
+
+    /**
+     * parses the index of the current corner
+     * @param count     the number of elements defined so far in this chunk, to resolve negative indices
+     * @param relatives receives the current corner if the index is relative to the start of this chunk
+     * @return the zero-based index
+     */
+    private int parseIndex(int count, IntArrayList relatives) throws IOException {
+        boolean isNegative = false;
+        if (position < end && data.get(position) == '-') {
+            isNegative = true;
+            relatives.add(vertIndices.size());
+            position++;
+        }
+
+        int start = position;
+        int value = 0;
+        while (position < end) {
+            int digit = data.get(position) - '0';
+            if (digit < 0 || digit > 9) break;
+            value = value * 10 + digit;
+            position++;
+        }
+
+        if (position == start) throw error("Expected an index");
+        return isNegative ? count - value : value - 1;
+    }
+
+    /**
+     * parses a decimal number. Numbers with at most {@value #MAX_EXACT_DIGITS} significant digits and a small exponent
+     * are computed from their digits, others fall back to {@link Float#parseFloat(String)}.
+     */
+    private float parseFloat() throws IOException {
+        skipSpaces();
+        int start = position;
+
+        boolean isNegative = false;
+        if (position < end) {
+            byte sign = data.get(position);
+            if (sign == '-' || sign == '+') {
+                isNegative = (sign == '-');
+                position++;
+            }
+        }
+
+        long mantissa = 0;
+        int nrOfDigits = 0;
+        int exponent = 0;
+        boolean hasDigits = false;
+
+        while (position < end) {
+            int digit = data.get(position) - '0';
+            if (digit < 0 || digit > 9) break;
+            hasDigits = true;
+            if (mantissa != 0 || digit != 0) nrOfDigits++;
+            mantissa = mantissa * 10 + digit;
+            position++;
+            // overflow is prevented by the fallback
+            if (nrOfDigits > MAX_EXACT_DIGITS) return parseFloatFallback(start);
+        }
+
+        if (position < end && data.get(position) == '.') {
+            position++;
+            while (position < end) {
+                int digit = data.get(position) - '0';
+                if (digit < 0 || digit > 9) break;
+                hasDigits = true;
+                if (mantissa != 0 || digit != 0) nrOfDigits++;
+                mantissa = mantissa * 10 + digit;
+                exponent--;
+                position++;
+                if (nrOfDigits > MAX_EXACT_DIGITS) return parseFloatFallback(start);
+            }
+        }
+
+        if (!hasDigits) return parseFloatFallback(start);
+
+        if (position < end && (data.get(position) == 'e' || data.get(position) == 'E')) {
+            position++;
+            boolean isNegativeExponent = false;
+            if (position < end && (data.get(position) == '-' || data.get(position) == '+')) {
+                isNegativeExponent = data.get(position) == '-';
+                position++;
+            }
+
+            int explicitExponent = 0;
+            int exponentStart = position;
+            while (position < end) {
+                int digit = data.get(position) - '0';
+                if (digit < 0 || digit > 9) break;
+                if (explicitExponent < 1000) explicitExponent = explicitExponent * 10 + digit;
+                position++;
+            }
+
+            if (position == exponentStart) throw error("Expected an exponent");
+            exponent += isNegativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (exponent < -POWERS_OF_TEN.length + 1 || exponent >= POWERS_OF_TEN.length) {
+            return parseFloatFallback(start);
+        }
+
+        // both operands are exact, thus the result is the correctly rounded double
+        double value = (exponent >= 0) ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return (float) (isNegative ? -value : value);
+    }
+
+    /** parses the token starting at the given position using {@link Float#parseFloat(String)} */
+    private float parseFloatFallback(int start) throws IOException {
+        position = start;
+        while (position < end && !isSpace(data.get(position))) {
+            position++;
+        }
+
+        byte[] token = new byte[position - start];
+        data.get(start, token);
+        String text = new String(token, StandardCharsets.US_ASCII);
+
+        try {
+            return Float.parseFloat(text);
+
+        } catch (NumberFormatException ex) {
+            position = start;
+            throw error("Expected a number but found '" + text + "'");
+        }
+    }
+
+    private void skipSpaces() {
+        while (position < end) {
+            byte b = data.get(position);
+            if (b != ' ' && b != '\t' && b != '\r') break;
+            position++;
+        }
+    }
+
+    /** moves to the start of the next line */
+    private void skipLine() {
+        while (position < end && data.get(position) != '\n') {
+            position++;
+        }
+        position++;
+    }
+
+    private boolean isSpaceAt(int index) {
+        return index >= end || isSpace(data.get(index));
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || isLineEnd(b);
+    }
+
+    private static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    /** @return an exception with the given message and the line number of the current position */
+    private IOException error(String message) {
+        int line = 1;
+        for (int i = origin; i < position && i < end; i++) {
+            if (data.get(i) == '\n') line++;
+        }
+        return new IOException(message + " on line " + line);
+    }
+}
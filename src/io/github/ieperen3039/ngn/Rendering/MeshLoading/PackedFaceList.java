@@ -0,0 +1,102 @@
+package io.github.ieperen3039.ngn.Rendering.MeshLoading;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable list of faces, backed by flat arrays with the indices of all face corners. A {@link Face} is only
+ * created when accessed with {@link #get(int)}, such that loading a mesh does not allocate objects per face.
+ */
+final class PackedFaceList extends AbstractList<Face> implements RandomAccess {
+    /** the index of the first corner of each face, with one extra element holding the total number of corners */
+    final int[] offsets;
+    final int[] vert;
+    /** the indices of the normals of each corner, or null if there are none */
+    final int[] norm;
+    /** the indices of the texture coordinates of each corner, or null if there are none */
+    final int[] tex;
+    /** the indices of the colors of each corner, or null if there are none */
+    final int[] col;
+
+    /**
+     * @param offsets the index of the first corner of each face, followed by the total number of corners
+     * @param vert    the vertex index of each corner
+     * @param norm    the normal index of each corner, or null
+     * @param tex     the texture coordinate index of each corner, or null
+     * @param col     the color index of each corner, or null
+     */
+    PackedFaceList(int[] offsets, int[] vert, int[] norm, int[] tex, int[] col) {
+        assert offsets.length > 0 && offsets[offsets.length - 1] == vert.length;
+        this.offsets = offsets;
+        this.vert = vert;
+        this.norm = norm;
+        this.tex = tex;
+        this.col = col;
+    }
+
+    @Override
+    public Face get(int index) {
+        int from = offsets[index];
+        int to = offsets[index + 1];
+        return new Face(
+                Arrays.copyOfRange(vert, from, to), copyRange(norm, from, to),
+                copyRange(tex, from, to), copyRange(col, from, to)
+        );
+    }
+
+    @Override
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @return the total number of corners of all faces
+     */
+    int nrOfCorners() {
+        return vert.length;
+    }
+
+    /**
+     * @return the given faces as packed list. If the list is already packed, it is returned as is.
+     * @throws IllegalArgumentException if not all faces have the same index arrays
+     */
+    static PackedFaceList of(List<Face> faces) {
+        if (faces instanceof PackedFaceList packed) return packed;
+
+        int nrOfFaces = faces.size();
+        int[] offsets = new int[nrOfFaces + 1];
+        for (int i = 0; i < nrOfFaces; i++) {
+            offsets[i + 1] = offsets[i] + faces.get(i).size();
+        }
+
+        int nrOfCorners = offsets[nrOfFaces];
+        Face first = nrOfFaces > 0 ? faces.get(0) : null;
+        int[] vert = new int[nrOfCorners];
+        int[] norm = (first != null && first.norm() != null) ? new int[nrOfCorners] : null;
+        int[] tex = (first != null && first.tex() != null) ? new int[nrOfCorners] : null;
+        int[] col = (first != null && first.col() != null) ? new int[nrOfCorners] : null;
+
+        for (int i = 0; i < nrOfFaces; i++) {
+            Face face = faces.get(i);
+            if ((face.norm() != null) != (norm != null) || (face.tex() != null) != (tex != null) ||
+                    (face.col() != null) != (col != null)
+            ) {
+                throw new IllegalArgumentException("Face " + i + " has different index arrays than the first face");
+            }
+
+            int offset = offsets[i];
+            System.arraycopy(face.vert(), 0, vert, offset, face.size());
+            if (norm != null) System.arraycopy(face.norm(), 0, norm, offset, face.size());
+            if (tex != null) System.arraycopy(face.tex(), 0, tex, offset, face.size());
+            if (col != null) System.arraycopy(face.col(), 0, col, offset, face.size());
+        }
+
+        return new PackedFaceList(offsets, vert, norm, tex, col);
+    }
+
+    private static int[] copyRange(int[] array, int from, int to) {
+        return array == null ? null : Arrays.copyOfRange(array, from, to);
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.ieperen3039.ngn.Rendering.MeshLoading;
+
+import io.github.ieperen3039.ngn.DataStructures.Generic.Color4f;
+import org.joml.Vector2f;
+import org.joml.Vector2fc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable list of vectors or colors, backed by a flat array of their components. Elements are only created
+ * when accessed with {@link #get(int)}, such that a mesh can be loaded without allocating an object per vertex.
+ * Meshes read the backing array directly using {@link #flatten3(List)} and similar methods. Every call to get creates a
+ * new element, thus consumers that read the elements repeatedly, such as shapes, should copy the list once.
+ * @param <T> the type of the elements
+ */
+final class PackedList<T> extends AbstractList<T> implements RandomAccess {
+    private final float[] data;
+    private final int stride;
+    private final Reader<T> reader;
+
+    private PackedList(float[] data, int stride, Reader<T> reader) {
+        assert data.length % stride == 0 : data.length + " % " + stride;
+        this.data = data;
+        this.stride = stride;
+        this.reader = reader;
+    }
+
+    /** @return a list of 3-component vectors, backed by the given array of x, y, z triplets */
+    static List<Vector3fc> ofVector3(float[] data) {
+        return new PackedList<>(data, 3, (d, i) -> new Vector3f(d[i], d[i + 1], d[i + 2]));
+    }
+
+    /** @return a list of 2-component vectors, backed by the given array of x, y pairs */
+    static List<Vector2fc> ofVector2(float[] data) {
+        return new PackedList<>(data, 2, (d, i) -> new Vector2f(d[i], d[i + 1]));
+    }
+
+    /** @return a list of colors, backed by the given array of r, g, b, a quadruplets */
+    static List<Color4f> ofColors(float[] data) {
+        return new PackedList<>(data, 4, (d, i) -> new Color4f(d[i], d[i + 1], d[i + 2], d[i + 3]));
+    }
+
+    @Override
+    public T get(int index) {
+        return reader.read(data, index * stride);
+    }
+
+    @Override
+    public int size() {
+        return data.length / stride;
+    }
+
+    /**
+     * @return the components of the given vectors as one array. If the list is backed by an array, this returns that
+     * array, which must not be modified.
+     */
+    static float[] flatten3(List<? extends Vector3fc> vectors) {
+        if (vectors instanceof PackedList<?> packed && packed.stride == 3) return packed.data;
+
+        float[] result = new float[vectors.size() * 3];
+        int i = 0;
+        for (Vector3fc v : vectors) {
+            result[i++] = v.x();
+            result[i++] = v.y();
+            result[i++] = v.z();
+        }
+        return result;
+    }
+
+    /** @see #flatten3(List) */
+    static float[] flatten2(List<? extends Vector2fc> vectors) {
+        if (vectors instanceof PackedList<?> packed && packed.stride == 2) return packed.data;
+
+        float[] result = new float[vectors.size() * 2];
+        int i = 0;
+        for (Vector2fc v : vectors) {
+            result[i++] = v.x();
+            result[i++] = v.y();
+        }
+        return result;
+    }
+
+    /** @see #flatten3(List) */
+    static float[] flattenColors(List<Color4f> colors) {
+        if (colors instanceof PackedList<?> packed && packed.stride == 4) return packed.data;
+
+        float[] result = new float[colors.size() * 4];
+        int i = 0;
+        for (Color4f c : colors) {
+            result[i++] = c.red;
+            result[i++] = c.green;
+            result[i++] = c.blue;
+            result[i++] = c.alpha;
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of bytes of heap memory used by the given list, estimating elementBytes for each element if
+     * the list is not backed by an array
+     */
+    static long byteSize(List<?> list, long elementBytes) {
+        if (list instanceof PackedList<?> packed) return (long) packed.data.length * Float.BYTES;
+        return elementBytes * list.size();
+    }
+
+    private interface Reader<T> {
+        T read(float[] data, int offset);
+    }
+}
@@ -0,0 +1,529 @@
+package io.github.ieperen3039.ngn.Rendering.MeshLoading;
+
+import io.github.ieperen3039.ngn.DataStructures.Generic.IntArrayList;
+import io.github.ieperen3039.ngn.Tools.Logger;
+import io.github.ieperen3039.ngn.Tools.Toolbox;
+import org.joml.Vector3fc;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A parser of Stanford PLY files, driven by the header of the file. Supports the {@code ascii},
+ * {@code binary_little_endian} and {@code binary_big_endian} formats, with any order and set of properties. The body is
+ * decoded in a single pass directly from the given buffer, which may be a mapped file.
+ * <p>
+ * From the {@code vertex} element, the position ({@code x y z}), normal ({@code nx ny nz}), color ({@code red green blue
+ * alpha}) and texture coordinates ({@code u v} or {@code s t}) are read. From the {@code face} element, the
+ * {@code vertex_indices} list is read. All other elements and properties are skipped. If the file has no normals, each
+ * face gets its own flat normal.
+ */
+final class PlyParser {
+    private static final int IGNORED = -1;
+    // the slots of the vertex properties
+    private static final int X = 0, Y = 1, Z = 2;
+    private static final int NX = 3, NY = 4, NZ = 5;
+    private static final int RED = 6, GREEN = 7, BLUE = 8, ALPHA = 9;
+    private static final int U = 10, V = 11;
+    private static final int NR_OF_SLOTS = 12;
+    /** the slot of the vertex indices of the face element */
+    private static final int INDICES = 0;
+
+    private final ByteBuffer buffer;
+    private final Format format;
+    private final List<Element> elements = new ArrayList<>();
+    private int position;
+
+    private float[] positions;
+    private float[] normals;
+    private float[] colors;
+    private float[] texCoords;
+    private int nrOfVertices = 0;
+    private int[] faceOffsets;
+    private final IntArrayList faceIndices = new IntArrayList();
+
+    /**
+     * reads the header of the file
+     * @param buffer the content of the file, from its position to its limit
+     */
+    private PlyParser(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.duplicate();
+        this.position = buffer.position();
+
+        String magic = readHeaderLine();
+        if (!magic.equals("ply")) throw new IOException("Not a PLY file");
+
+        Format format = null;
+        Element element = null;
+
+        while (true) {
+            String line = readHeaderLine();
+            if (line.isEmpty()) continue;
+            if (line.equals("end_header")) break;
+
+            String[] tokens = Toolbox.WHITESPACE_PATTERN.split(line);
+            switch (tokens[0]) {
+                case "comment", "obj_info" -> {}
+                case "format" -> {
+                    if (tokens.length < 2) throw new IOException("Incomplete format: " + line);
+                    format = Format.of(tokens[1]);
+                }
+                case "element" -> {
+                    if (tokens.length < 3) throw new IOException("Incomplete element: " + line);
+                    element = new Element(tokens[1], parseCount(tokens[2]), new ArrayList<>());
+                    elements.add(element);
+                }
+                case "property" -> {
+                    if (element == null) throw new IOException("Property outside an element: " + line);
+                    element.properties.add(Property.parse(tokens, line));
+                }
+                default -> throw new IOException("Unsupported keyword " + tokens[0]);
+            }
+        }
+
+        if (format == null) throw new IOException("Missing format");
+        this.format = format;
+        this.buffer.order(format.order);
+    }
+
+    /**
+     * parses a PLY file
+     * @param buffer the content of the file, from its position to its limit
+     * @param scale  the scaling applied to the vertices
+     * @param name   the name of the resulting mesh
+     */
+    static MeshFile parse(ByteBuffer buffer, Vector3fc scale, String name) throws IOException {
+        PlyParser parser = new PlyParser(buffer);
+
+        try {
+            parser.readBody();
+
+        } catch (IndexOutOfBoundsException | BufferUnderflowException ex) {
+            throw new IOException("Unexpected end of file", ex);
+        }
+
+        if (parser.positions == null) throw new IOException("No vertex element with x, y and z properties");
+
+        if (parser.nrOfVertices == 0 || parser.faceOffsets == null || parser.faceOffsets.length < 2) {
+            Logger.ERROR.print("Empty mesh loaded: " + name + " (this may result in errors)");
+        }
+
+        return parser.toMeshFile(scale, name);
+    }
+
+    /** reads all elements, in the order of the header */
+    private void readBody() throws IOException {
+        for (Element element : elements) {
+            switch (element.name) {
+                case "vertex" -> readVertices(element);
+                case "face" -> readFaces(element);
+                default -> skip(element);
+            }
+        }
+    }
+
+    private void readVertices(Element element) throws IOException {
+        List<Property> properties = element.properties;
+        int[] slots = new int[properties.size()];
+        boolean[] hasSlot = new boolean[NR_OF_SLOTS];
+
+        for (int i = 0; i < slots.length; i++) {
+            Property property = properties.get(i);
+            slots[i] = property.isList() ? IGNORED : vertexSlotOf(property.name);
+            if (slots[i] != IGNORED) hasSlot[slots[i]] = true;
+        }
+
+        if (!hasSlot[X] || !hasSlot[Y] || !hasSlot[Z]) {
+            skip(element);
+            return;
+        }
+
+        int count = element.count;
+        nrOfVertices = count;
+        positions = new float[count * 3];
+        if (hasSlot[NX] && hasSlot[NY] && hasSlot[NZ]) normals = new float[count * 3];
+        if (hasSlot[RED] && hasSlot[GREEN] && hasSlot[BLUE]) colors = new float[count * 4];
+        if (hasSlot[U] && hasSlot[V]) texCoords = new float[count * 2];
+
+        float[] values = new float[NR_OF_SLOTS];
+
+        for (int v = 0; v < count; v++) {
+            values[ALPHA] = 1;
+
+            for (int i = 0; i < slots.length; i++) {
+                Property property = properties.get(i);
+                if (property.isList()) {
+                    skipList(property);
+                    continue;
+                }
+
+                double value = read(property.type);
+                int slot = slots[i];
+                if (slot == IGNORED) continue;
+
+                if (slot >= RED && slot <= ALPHA) {
+                    values[slot] = (float) (value * property.type.colorScale);
+                } else {
+                    values[slot] = (float) value;
+                }
+            }
+
+            System.arraycopy(values, X, positions, v * 3, 3);
+            if (normals != null) System.arraycopy(values, NX, normals, v * 3, 3);
+            if (colors != null) System.arraycopy(values, RED, colors, v * 4, 4);
+            if (texCoords != null) System.arraycopy(values, U, texCoords, v * 2, 2);
+        }
+    }
+
+    private void readFaces(Element element) throws IOException {
+        List<Property> properties = element.properties;
+        int[] slots = new int[properties.size()];
+        boolean hasIndices = false;
+
+        for (int i = 0; i < slots.length; i++) {
+            Property property = properties.get(i);
+            boolean isIndices = property.isList() &&
+                    (property.name.equals("vertex_indices") || property.name.equals("vertex_index"));
+            slots[i] = isIndices ? INDICES : IGNORED;
+            hasIndices |= isIndices;
+        }
+
+        if (!hasIndices) throw new IOException("Face element has no vertex_indices property");
+
+        int count = element.count;
+        faceOffsets = new int[count + 1];
+        faceIndices.ensureCapacity(count * 3);
+
+        for (int f = 0; f < count; f++) {
+            for (int i = 0; i < slots.length; i++) {
+                Property property = properties.get(i);
+
+                if (slots[i] == INDICES) {
+                    int nrOfCorners = readCount(property.countType);
+                    for (int c = 0; c < nrOfCorners; c++) {
+                        faceIndices.add(readIndex(property.type));
+                    }
+
+                } else if (property.isList()) {
+                    skipList(property);
+
+                } else {
+                    read(property.type);
+                }
+            }
+
+            faceOffsets[f + 1] = faceIndices.size();
+        }
+    }
+
+    private void skip(Element element) throws IOException {
+        for (int e = 0; e < element.count; e++) {
+            for (Property property : element.properties) {
+                if (property.isList()) {
+                    skipList(property);
+                } else {
+                    read(property.type);
+                }
+            }
+        }
+    }
+
+    private void skipList(Property property) throws IOException {
+        int count = readCount(property.countType);
+
+        if (format == Format.ASCII) {
+            for (int i = 0; i < count; i++) {
+                read(property.type);
+            }
+        } else {
+            position += count * property.type.size;
+        }
+    }
+
+    private MeshFile toMeshFile(Vector3fc scale, String name) {
+        float sx = scale.x();
+        float sy = scale.y();
+        float sz = scale.z();
+        float[] positions = (this.positions == null) ? new float[0] : this.positions;
+
+        for (int i = 0; i < positions.length; i += 3) {
+            positions[i] *= sx;
+            positions[i + 1] *= sy;
+            positions[i + 2] *= sz;
+        }
+
+        int[] offsets = (faceOffsets == null) ? new int[1] : faceOffsets;
+        int[] vert = faceIndices.toArray();
+        int[] norm = vert;
+        float[] normals = this.normals;
+
+        if (normals == null) {
+            normals = flatNormals(positions, offsets, vert);
+            norm = new int[vert.length];
+            for (int f = 0; f < offsets.length - 1; f++) {
+                for (int i = offsets[f]; i < offsets[f + 1]; i++) {
+                    norm[i] = f;
+                }
+            }
+        }
+
+        PackedFaceList faces = new PackedFaceList(
+                offsets, vert, norm, (texCoords == null) ? null : vert, (colors == null) ? null : vert
+        );
+
+        return new MeshFile(
+                name, PackedList.ofVector3(positions), PackedList.ofVector3(normals), faces,
+                (texCoords == null) ? Collections.emptyList() : PackedList.ofVector2(texCoords),
+                (colors == null) ? Collections.emptyList() : PackedList.ofColors(colors)
+        );
+    }
+
+    /**
+     * computes one normal for each face using Newell's method, which also works for non-planar polygons
+     * @return the normals of each face as x, y, z triplets
+     */
+    private static float[] flatNormals(float[] positions, int[] offsets, int[] vert) {
+        int nrOfFaces = offsets.length - 1;
+        float[] normals = new float[nrOfFaces * 3];
+
+        for (int f = 0; f < nrOfFaces; f++) {
+            int from = offsets[f];
+            int to = offsets[f + 1];
+            float nx = 0, ny = 0, nz = 0;
+
+            for (int i = from; i < to; i++) {
+                int a = vert[i] * 3;
+                int b = vert[(i + 1 < to) ? i + 1 : from] * 3;
+                nx += (positions[a + 1] - positions[b + 1]) * (positions[a + 2] + positions[b + 2]);
+                ny += (positions[a + 2] - positions[b + 2]) * (positions[a] + positions[b]);
+                nz += (positions[a] - positions[b]) * (positions[a + 1] + positions[b + 1]);
+            }
+
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length > 0) {
+                normals[f * 3] = nx / length;
+                normals[f * 3 + 1] = ny / length;
+                normals[f * 3 + 2] = nz / length;
+            } else {
+                normals[f * 3 + 2] = 1;
+            }
+        }
+
+        return normals;
+    }
+
+    private int readCount(Type type) throws IOException {
+        double count = read(type);
+        if (count < 0 || count > Integer.MAX_VALUE) throw new IOException("Invalid list size " + count);
+        return (int) count;
+    }
+
+    private int readIndex(Type type) throws IOException {
+        double index = read(type);
+        if (index < 0 || index > Integer.MAX_VALUE) throw new IOException("Invalid vertex index " + index);
+        return (int) index;
+    }
+
+    /** reads one value of the given type, and moves to the next value */
+    private double read(Type type) throws IOException {
+        if (format == Format.ASCII) return readAscii(type);
+
+        int index = position;
+        position += type.size;
+
+        return switch (type) {
+            case CHAR -> buffer.get(index);
+            case UCHAR -> buffer.get(index) & 0xFF;
+            case SHORT -> buffer.getShort(index);
+            case USHORT -> buffer.getShort(index) & 0xFFFF;
+            case INT -> buffer.getInt(index);
+            case UINT -> buffer.getInt(index) & 0xFFFF_FFFFL;
+            case FLOAT -> buffer.getFloat(index);
+            case DOUBLE -> buffer.getDouble(index);
+        };
+    }
+
+    /** reads one whitespace-separated value. Integers are parsed directly from the bytes. */
+    private double readAscii(Type type) throws IOException {
+        int limit = buffer.limit();
+        while (position < limit && isSpace(buffer.get(position))) {
+            position++;
+        }
+
+        int start = position;
+        while (position < limit && !isSpace(buffer.get(position))) {
+            position++;
+        }
+
+        if (position == start) throw new IOException("Unexpected end of file");
+
+        if (type.isInteger) {
+            int index = start;
+            boolean isNegative = buffer.get(index) == '-';
+            if (isNegative || buffer.get(index) == '+') index++;
+
+            long value = 0;
+            while (index < position) {
+                int digit = buffer.get(index) - '0';
+                if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) break;
+                value = value * 10 + digit;
+                index++;
+            }
+
+            // all characters are digits
+            if (index == position && index > start + (isNegative ? 1 : 0)) return isNegative ? -value : value;
+        }
+
+        byte[] token = new byte[position - start];
+        buffer.get(start, token);
+        String text = new String(token, StandardCharsets.US_ASCII);
+
+        try {
+            return Double.parseDouble(text);
+
+        } catch (NumberFormatException ex) {
+            throw new IOException("Expected a number but found '" + text + "'");
+        }
+    }
+
+    /** @return the next line of the header, without the line ending */
+    private String readHeaderLine() throws IOException {
+        int limit = buffer.limit();
+        int start = position;
+
+        while (position < limit && buffer.get(position) != '\n') {
+            position++;
+        }
+
+        if (position >= limit) throw new IOException("Unexpected end of header, 'end_header' is missing");
+
+        int end = position;
+        if (end > start && buffer.get(end - 1) == '\r') end--;
+        position++; // skip '\n'
+
+        byte[] line = new byte[end - start];
+        buffer.get(start, line);
+        return new String(line, StandardCharsets.US_ASCII).trim();
+    }
+
+    private static int parseCount(String token) throws IOException {
+        try {
+            int count = Integer.parseInt(token);
+            if (count < 0) throw new IOException("Negative element count " + count);
+            return count;
+
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid element count " + token);
+        }
+    }
+
+    private static int vertexSlotOf(String name) {
+        return switch (name) {
+            case "x" -> X;
+            case "y" -> Y;
+            case "z" -> Z;
+            case "nx" -> NX;
+            case "ny" -> NY;
+            case "nz" -> NZ;
+            case "red", "r", "diffuse_red" -> RED;
+            case "green", "g", "diffuse_green" -> GREEN;
+            case "blue", "b", "diffuse_blue" -> BLUE;
+            case "alpha", "a", "diffuse_alpha" -> ALPHA;
+            case "u", "s", "texture_u", "texture_s" -> U;
+            case "v", "t", "texture_v", "texture_t" -> V;
+            default -> IGNORED;
+        };
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private enum Format {
+        ASCII(ByteOrder.BIG_ENDIAN),
+        BINARY_LITTLE_ENDIAN(ByteOrder.LITTLE_ENDIAN),
+        BINARY_BIG_ENDIAN(ByteOrder.BIG_ENDIAN);
+
+        final ByteOrder order;
+
+        Format(ByteOrder order) {
+            this.order = order;
+        }
+
+        static Format of(String name) throws IOException {
+            return switch (name) {
+                case "ascii" -> ASCII;
+                case "binary_little_endian" -> BINARY_LITTLE_ENDIAN;
+                case "binary_big_endian" -> BINARY_BIG_ENDIAN;
+                default -> throw new IOException("Unsupported format " + name);
+            };
+        }
+    }
+
+    private enum Type {
+        CHAR(1, true, 1f / Byte.MAX_VALUE),
+        UCHAR(1, true, 1f / 0xFF),
+        SHORT(2, true, 1f / Short.MAX_VALUE),
+        USHORT(2, true, 1f / 0xFFFF),
+        INT(4, true, 1f / Integer.MAX_VALUE),
+        UINT(4, true, 1f / 0xFFFF_FFFFL),
+        FLOAT(4, false, 1),
+        DOUBLE(8, false, 1);
+
+        /** the number of bytes of this type in binary formats */
+        final int size;
+        final boolean isInteger;
+        /** the factor to map a color of this type to [0, 1] */
+        final float colorScale;
+
+        Type(int size, boolean isInteger, float colorScale) {
+            this.size = size;
+            this.isInteger = isInteger;
+            this.colorScale = colorScale;
+        }
+
+        static Type of(String name) throws IOException {
+            return switch (name.toLowerCase(Locale.ROOT)) {
+                case "char", "int8" -> CHAR;
+                case "uchar", "uint8" -> UCHAR;
+                case "short", "int16" -> SHORT;
+                case "ushort", "uint16" -> USHORT;
+                case "int", "int32" -> INT;
+                case "uint", "uint32" -> UINT;
+                case "float", "float32" -> FLOAT;
+                case "double", "float64" -> DOUBLE;
+                default -> throw new IOException("Unsupported property type " + name);
+            };
+        }
+    }
+
+    /**
+     * @param type      the type of the value, or of the elements if this is a list
+     * @param countType the type of the size of the list, or null if this is not a list
+     */
+    private record Property(String name, Type type, Type countType) {
+        boolean isList() {
+            return countType != null;
+        }
+
+        static Property parse(String[] tokens, String line) throws IOException {
+            if (tokens.length >= 5 && tokens[1].equals("list")) {
+                return new Property(tokens[4], Type.of(tokens[3]), Type.of(tokens[2]));
+
+            } else if (tokens.length >= 3 && !tokens[1].equals("list")) {
+                return new Property(tokens[2], Type.of(tokens[1]), null);
+            }
+
+            throw new IOException("Incomplete property: " + line);
+        }
+    }
+
+    private record Element(String name, int count, List<Property> properties) {}
+}
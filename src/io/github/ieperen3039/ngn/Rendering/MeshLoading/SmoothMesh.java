@@ -20,8 +20,45 @@ import static org.lwjgl.opengl.GL30.glBindVertexArray;
  */
 public class SmoothMesh extends AbstractMesh {
 
+    /**
+     * Creates a mesh from the given data. This may only be called on the main thread. Combining and optimizing the
+     * vertices is done on the calling thread; use {@link #combine(List, List, List, List)} to do so in the background.
+     */
     public SmoothMesh(
             List<Vector3fc> vertices, List<Vector3fc> normals, List<Vector2fc> textureCoords, List<Face> faces
+    ) {
+        this(combine(vertices, normals, textureCoords, faces));
+    }
+
+    /**
+     * Creates a mesh from buffers created by {@link #combine(List, List, List, List)}. This may only be called on the
+     * main thread.
+     */
+    SmoothMesh(MeshBuffers buffers) {
+        assert buffers.isTextured();
+
+        initMesh();
+
+        glBindVertexArray(getVAO());
+
+        createIndexBuffer(buffers.indices);
+        createVBO(buffers.positions, ShaderProgram.VERTEX_LOCATION, 3);
+        createVBO(buffers.normals, ShaderProgram.NORMAL_LOCATION, 3);
+        createVBO(buffers.texCoords, ShaderProgram.TEXTURE_LOCATION, 2);
+
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+        Toolbox.checkGLError(toString());
+    }
+
+    /**
+     * combines the corners with equal position and texture coordinate into one vertex, of which the normal is the
+     * average of the normals of its position, and optimizes the resulting index buffer with the {@link MeshOptimizer}.
+     * Does not use OpenGL, thus this may be called on any thread.
+     * @return the buffers of a smooth mesh
+     */
+    public static MeshBuffers combine(
+            List<Vector3fc> vertices, List<Vector3fc> normals, List<Vector2fc> textureCoords, List<Face> faces
     ) {
         int nrOfVertices = vertices.size();
 
@@ -80,10 +117,10 @@ public class SmoothMesh extends AbstractMesh {
             combinedTexCoords[i] = v.texCoord;
         });
 
-        writeToGl(indices, combinedVertices, combinedNormals, combinedTexCoords);
+        return flatten(indices, combinedVertices, combinedNormals, combinedTexCoords);
     }
 
-    private void writeToGl(
+    private static MeshBuffers flatten(
             int[] indices, Vector3fc[] combinedVertices, Vector3fc[] combinedNormals, Vector2fc[] combinedTexCoords
     ) {
         // flatten objects
@@ -111,18 +148,8 @@ public class SmoothMesh extends AbstractMesh {
             texCoords[ti + 1] = coord.y();
         }
 
-        initMesh();
-
-        glBindVertexArray(getVAO());
-
-        createIndexBuffer(indices);
-        createVBO(positions, ShaderProgram.VERTEX_LOCATION, 3);
-        createVBO(normals, ShaderProgram.NORMAL_LOCATION, 3);
-        createVBO(texCoords, ShaderProgram.TEXTURE_LOCATION, 2);
-
-        glBindBuffer(GL_ARRAY_BUFFER, 0);
-        glBindVertexArray(0);
-        Toolbox.checkGLError(toString());
+        indices = MeshOptimizer.optimize(indices, positions, normals, texCoords);
+        return new MeshBuffers(indices, positions, normals, null, texCoords);
     }
 
     private static class Attribute {
@@ -0,0 +1,173 @@
+package io.github.ieperen3039.ngn.Rendering.MeshLoading;
+
+import io.github.ieperen3039.ngn.DataStructures.Generic.FloatArrayList;
+import io.github.ieperen3039.ngn.DataStructures.Generic.IntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Merges equal vertices into one, to build the unique vertex arrays and the index buffer of an indexed mesh. A vertex is
+ * the full tuple of its attributes, for example position, normal and color. Two vertices are equal if all their
+ * components fall in the same cell of a grid with the given tolerance as cell size. With a tolerance of 0, components
+ * must be exactly equal.
+ * <p>
+ * Vertices are stored interleaved in one array and looked up in an open-addressing hash table, thus adding a vertex
+ * allocates nothing, except when growing.
+ */
+public final class VertexWelder {
+    private static final int EMPTY = -1;
+    /** grid cells are within (-MAX_CELL, MAX_CELL), such that the raw bits of other components never collide */
+    private static final double MAX_CELL = 0x1p62;
+
+    private final float inverseTolerance;
+    private final int[] attributeSizes;
+    private final int stride;
+
+    /** the components of all unique vertices, interleaved */
+    private final FloatArrayList vertices;
+    /** the hash of each unique vertex */
+    private final IntArrayList hashes;
+    /** the index of a unique vertex, or EMPTY */
+    private int[] table;
+    private int mask;
+
+    /**
+     * @param tolerance        the size of the grid that defines equal components, or 0 to only merge exactly equal
+     *                         vertices
+     * @param expectedVertices the expected number of unique vertices, to prevent most of the growing
+     * @param attributeSizes   the number of components of each attribute, for example {@code 3, 3, 4} for a position,
+     *                         a normal and a color
+     */
+    public VertexWelder(float tolerance, int expectedVertices, int... attributeSizes) {
+        if (tolerance < 0) throw new IllegalArgumentException("Negative tolerance " + tolerance);
+
+        this.inverseTolerance = (tolerance == 0) ? 0 : 1 / tolerance;
+        this.attributeSizes = attributeSizes.clone();
+        this.stride = Arrays.stream(attributeSizes).sum();
+        this.vertices = new FloatArrayList(expectedVertices * stride);
+        this.hashes = new IntArrayList(expectedVertices);
+
+        // at most half full
+        int capacity = Integer.highestOneBit(Math.max(expectedVertices, 8) * 2 - 1) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(table, EMPTY);
+    }
+
+    /**
+     * adds a vertex, or finds an equal vertex that has been added before.
+     * @param vertex the components of all attributes of one vertex, in the order of the attribute sizes
+     * @return the index of the unique vertex that equals the given vertex
+     */
+    public int add(float[] vertex) {
+        assert vertex.length >= stride : vertex.length + " < " + stride;
+
+        int hash = hash(vertex);
+        int slot = mix(hash) & mask;
+
+        while (true) {
+            int index = table[slot];
+
+            if (index == EMPTY) {
+                index = hashes.size();
+                hashes.add(hash);
+                for (int i = 0; i < stride; i++) {
+                    vertices.add(vertex[i]);
+                }
+
+                table[slot] = index;
+                if (hashes.size() * 2 > table.length) grow();
+                return index;
+            }
+
+            if (hashes.get(index) == hash && isEqual(index, vertex)) {
+                return index;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return the number of unique vertices
+     */
+    public int size() {
+        return hashes.size();
+    }
+
+    /**
+     * @param attribute the index of the attribute, in the order given in the constructor
+     * @return the components of the given attribute of all unique vertices, concatenated
+     */
+    public float[] getAttribute(int attribute) {
+        int offset = 0;
+        for (int i = 0; i < attribute; i++) {
+            offset += attributeSizes[i];
+        }
+
+        int size = attributeSizes[attribute];
+        int nrOfVertices = size();
+        float[] result = new float[nrOfVertices * size];
+
+        for (int v = 0; v < nrOfVertices; v++) {
+            int source = v * stride + offset;
+            for (int c = 0; c < size; c++) {
+                result[v * size + c] = vertices.get(source + c);
+            }
+        }
+
+        return result;
+    }
+
+    private boolean isEqual(int index, float[] vertex) {
+        int base = index * stride;
+        for (int i = 0; i < stride; i++) {
+            if (quantize(vertices.get(base + i)) != quantize(vertex[i])) return false;
+        }
+        return true;
+    }
+
+    private int hash(float[] vertex) {
+        int hash = 1;
+        for (int i = 0; i < stride; i++) {
+            hash = 31 * hash + Long.hashCode(quantize(vertex[i]));
+        }
+        return hash;
+    }
+
+    /**
+     * @return the grid cell of the given component. Cells are computed in double precision, such that large coordinates
+     * with a small tolerance do not saturate into the same cell. Components that are not finite, or too large to
+     * quantize, are only equal to exactly equal components.
+     */
+    private long quantize(float value) {
+        double scaled = (double) value * inverseTolerance;
+
+        if (inverseTolerance == 0 || !(Math.abs(scaled) < MAX_CELL)) {
+            // adding 0 turns -0 into 0. The offset keeps these apart from the grid cells
+            return Long.MIN_VALUE + Float.floatToIntBits(value + 0.0f);
+        }
+        return Math.round(scaled);
+    }
+
+    private void grow() {
+        int capacity = table.length * 2;
+        table = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(table, EMPTY);
+
+        for (int index = 0; index < hashes.size(); index++) {
+            int slot = mix(hashes.get(index)) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index;
+        }
+    }
+
+    /** spreads the bits of a hash, such that similar vertices do not cluster in the table */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
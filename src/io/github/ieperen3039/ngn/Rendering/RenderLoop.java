@@ -1,14 +1,22 @@
 package io.github.ieperen3039.ngn.Rendering;
 
+import io.github.ieperen3039.ngn.AssetHandling.AssetLoader;
+import io.github.ieperen3039.ngn.Camera.Camera;
+import io.github.ieperen3039.ngn.Camera.PublishedCamera;
 import io.github.ieperen3039.ngn.Core.GenericThreadLoop;
 import io.github.ieperen3039.ngn.Core.Main;
 import io.github.ieperen3039.ngn.Core.Main.ViewPort;
+import io.github.ieperen3039.ngn.Core.RenderManager;
+import io.github.ieperen3039.ngn.Core.TaskQueue;
 import io.github.ieperen3039.ngn.Core.ToolElement;
 import io.github.ieperen3039.ngn.Rendering.MatrixStack.SGL;
 import io.github.ieperen3039.ngn.Rendering.Shaders.PostProcessingStep;
 import io.github.ieperen3039.ngn.Rendering.Shaders.ShaderProgram;
+import io.github.ieperen3039.ngn.Scene.TransformPipeline;
+import io.github.ieperen3039.ngn.Scene.TransformSnapshot;
 import io.github.ieperen3039.ngn.Settings.Settings;
 import io.github.ieperen3039.ngn.Tools.Logger;
+import io.github.ieperen3039.ngn.Tools.Profiler;
 import io.github.ieperen3039.ngn.Tools.TickTime;
 import io.github.ieperen3039.ngn.Tools.TimeObserver;
 import io.github.ieperen3039.ngn.Tools.Toolbox;
@@ -28,13 +36,31 @@ import static org.lwjgl.opengl.GL11.*;
  * 
  * @author Geert van Ieperen. Created on 13-9-2018.
  */
-public class RenderLoop extends GenericThreadLoop implements ToolElement {
+public class RenderLoop extends GenericThreadLoop implements ToolElement, RenderManager {
+    /** fraction of each frame that may be spent on actions queued with {@link #defer(Runnable)} */
+    private static final float DEFERRED_ACTION_FRACTION = 0.25f;
+
+    /** the timings of this loop, which is the same object as {@link #getProfiler()} */
     public final TimeObserver timer;
+    private final Profiler profiler;
+    private final int loopInitSection;
+    private final int guiSection;
+    private final int gpuUpdateSection;
+    private final int eventSection;
     private final NVGOverlay overlay;
     public boolean accurateTiming = true;
     private final List<RenderBundle> renders;
     private Main root;
 
+    // set before the loop starts
+    private TransformPipeline transforms = null;
+    private PublishedCamera publishedCamera = null;
+
+    // state of the current frame
+    private TransformSnapshot frameTransforms = null;
+    private float frameAlpha = 1;
+    private Camera frameCamera = null;
+
     /**
      * creates a new, paused gameloop
      * 
@@ -44,14 +70,22 @@ public class RenderLoop extends GenericThreadLoop implements ToolElement {
         super("Renderloop", targetFPS);
         overlay = new NVGOverlay();
         renders = new ArrayList<>();
-
-        timer = new TimeObserver((targetFPS / 4) + 1, true);
+        setDeferredActionBudget((long) (DEFERRED_ACTION_FRACTION * 1e9 / targetFPS));
+
+        profiler = new Profiler();
+        timer = profiler;
+        loopInitSection = profiler.register("loop init");
+        guiSection = profiler.register("GUI");
+        gpuUpdateSection = profiler.register("GPU Update");
+        eventSection = profiler.register("event handling");
     }
 
     public void init(Main root) throws IOException {
         if (this.root != null)
             return;
         this.root = root;
+        // this loop honours the priority of loading tasks, whether or not root does
+        AssetLoader.setRenderManager(this, this);
 
         Settings settings = root.settings();
 
@@ -64,6 +98,53 @@ public class RenderLoop extends GenericThreadLoop implements ToolElement {
         });
     }
 
+    /** executes the given action on this render thread, see {@link #defer(Runnable)} */
+    @Override
+    public void executeOnRenderThread(Runnable action) {
+        defer(action);
+    }
+
+    /** executes the given action on this render thread, see {@link #defer(Runnable, TaskQueue.Priority)} */
+    @Override
+    public void executeOnRenderThread(Runnable action, TaskQueue.Priority priority) {
+        defer(action, priority);
+    }
+
+    /** executes the given actions on this render thread, see {@link #deferAll(List, TaskQueue.Priority)} */
+    @Override
+    public void executeOnRenderThread(List<? extends Runnable> actions, TaskQueue.Priority priority) {
+        deferAll(actions, priority);
+    }
+
+    /**
+     * renders from the transforms published by the simulation loop, instead of from the live state of the simulation.
+     * The camera is then advanced by the simulation loop through the given published camera, and this loop renders
+     * it at the interpolated state of each frame. This may only be called before this loop is started.
+     * @param pipeline the pipeline to which the simulation loop publishes each tick
+     * @param camera   the camera of the simulation, registered in pipeline
+     */
+    public void setTransformPipeline(TransformPipeline pipeline, PublishedCamera camera) {
+        assert !isAlive() : "Transform pipeline set while rendering";
+        this.transforms = pipeline;
+        this.publishedCamera = camera;
+    }
+
+    /**
+     * @return the transforms of the current frame, or null if no pipeline has been set. May only be called while
+     * rendering, and remains valid for the rest of the frame.
+     * @see #getInterpolationFactor()
+     */
+    public TransformSnapshot getTransforms() {
+        return frameTransforms;
+    }
+
+    /**
+     * @return the interpolation factor of the current frame, to be used with {@link #getTransforms()}
+     */
+    public float getInterpolationFactor() {
+        return frameAlpha;
+    }
+
     /**
      * generates a new render bundle, which allows adding rendering actions which
      * are executed in order on the given
@@ -82,79 +163,87 @@ public class RenderLoop extends GenericThreadLoop implements ToolElement {
         renders.remove(bundle);
     }
 
+    /**
+     * @return the hierarchical timings of this loop
+     */
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
     @Override
     protected void update(TickTime time) {
         Toolbox.checkGLError("Pre-loop");
-        timer.startNewLoop();
+        profiler.startNewLoop();
         // cache value of accurateTiming for this loop
         boolean accurateTimingThisLoop = this.accurateTiming;
 
-        if (accurateTimingThisLoop)
-            timer.startTiming("loop init");
-
         GLFWWindow window = root.window();
-        if (window.getWidth() == 0 || window.getHeight() == 0) {
-            window.pollEvents();
-            return;
-        }
 
-        // camera
-        root.camera().updatePosition((float) time.getDeltaTimeSeconds()); // real-time deltatime
+        try (Profiler.Scope ignored = profiler.scope(loopInitSection)) {
+            if (window.getWidth() == 0 || window.getHeight() == 0) {
+                window.pollEvents();
+                return;
+            }
 
-        // restore window state
-        ViewPort viewPort = root.getViewPort();
-        glViewport(viewPort.x(), viewPort.y(), viewPort.width(), viewPort.height());
+            if (transforms == null) {
+                // without a pipeline, nothing else advances the camera
+                frameCamera = root.camera();
+                frameCamera.updatePosition((float) time.getDeltaTimeSeconds()); // real-time deltatime
 
-        glEnable(GL_DEPTH_TEST);
-        glEnable(GL_CULL_FACE);
-        glCullFace(GL_BACK);
-        glPolygonMode(GL_FRONT_AND_BACK, GL_FILL);
-        glEnable(GL_BLEND);
-        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
-        glClearColor(1, 1, 1, 1); // white
+            } else {
+                // read once, such that all of this frame is drawn from the same ticks
+                frameTransforms = transforms.latest();
+                frameAlpha = frameTransforms.interpolationFactor();
+                frameCamera = publishedCamera.interpolate(frameTransforms, frameAlpha);
+            }
 
-        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-        Toolbox.checkGLError(window.toString());
+            // restore window state
+            ViewPort viewPort = root.getViewPort();
+            glViewport(viewPort.x(), viewPort.y(), viewPort.width(), viewPort.height());
 
-        if (accurateTimingThisLoop) {
-            glFinish();
-            timer.endTiming("loop init");
-        }
+            glEnable(GL_DEPTH_TEST);
+            glEnable(GL_CULL_FACE);
+            glCullFace(GL_BACK);
+            glPolygonMode(GL_FRONT_AND_BACK, GL_FILL);
+            glEnable(GL_BLEND);
+            glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+            glClearColor(1, 1, 1, 1); // white
+
+            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+            Toolbox.checkGLError(window.toString());
 
-        for (RenderBundle renderBundle : renders) {
-            String identifier = renderBundle.shader.getClass().getSimpleName();
             if (accurateTimingThisLoop)
-                timer.startTiming(identifier);
+                glFinish();
+        }
 
-            renderBundle.draw();
+        for (RenderBundle renderBundle : renders) {
+            try (Profiler.Scope ignored = profiler.scope(renderBundle.section)) {
+                renderBundle.draw();
 
-            if (accurateTimingThisLoop) {
-                glFinish();
-                timer.endTiming(identifier);
+                if (accurateTimingThisLoop)
+                    glFinish();
             }
-            Toolbox.checkGLError(identifier);
+            Toolbox.checkGLError(renderBundle.name);
         }
 
         int windowWidth = window.getWidth();
         int windowHeight = window.getHeight();
-        if (accurateTimingThisLoop)
-            timer.startTiming("GUI");
-        overlay.draw(windowWidth, windowHeight, 10, 10, 12);
+        try (Profiler.Scope ignored = profiler.scope(guiSection)) {
+            overlay.draw(windowWidth, windowHeight, 10, 10, 12);
 
-        if (accurateTimingThisLoop) {
-            glFinish();
-            timer.endTiming("GUI");
+            if (accurateTimingThisLoop)
+                glFinish();
         }
         Toolbox.checkGLError(overlay.toString());
 
-        timer.startTiming("GPU Update");
-        // update window
-        window.update();
-        timer.endTiming("GPU Update");
+        try (Profiler.Scope ignored = profiler.scope(gpuUpdateSection)) {
+            // update window
+            window.update();
+        }
 
-        timer.startTiming("event handling");
-        window.pollEvents();
-        timer.endTiming("event handling");
+        try (Profiler.Scope ignored = profiler.scope(eventSection)) {
+            window.pollEvents();
+        }
 
         // loop clean
         Toolbox.checkGLError("Render loop");
@@ -174,10 +263,14 @@ public class RenderLoop extends GenericThreadLoop implements ToolElement {
     public class RenderBundle {
         private final ShaderProgram shader;
         private final List<Consumer<SGL>> targets;
+        private final String name;
+        private final int section;
 
         private RenderBundle(ShaderProgram shader) {
             this.shader = shader;
             this.targets = new ArrayList<>();
+            this.name = shader.getClass().getSimpleName();
+            this.section = profiler.register(name);
         }
 
         /**
@@ -192,7 +285,7 @@ public class RenderLoop extends GenericThreadLoop implements ToolElement {
 
         public void draw() {
             shader.bind();
-            SGL gl = shader.getGL(root);
+            SGL gl = shader.getGL(root, frameCamera);
             for (Consumer<SGL> tgt : targets) {
                 tgt.accept(gl);
             }
@@ -141,6 +141,11 @@ public class BlinnPhongShader extends SceneShader implements TextureShader {
         return getGL(main.camera(), main.getViewPort(), main.settings());
     }
 
+    @Override
+    public SGL getGL(Main main, Camera camera) {
+        return getGL(camera, main.getViewPort(), main.settings());
+    }
+
     public SGL getGL(Camera camera, ViewPort viewPort, Settings settings) {
         initialize(camera.getEye(), settings);
         return new SceneShaderGL(this, camera, viewPort);
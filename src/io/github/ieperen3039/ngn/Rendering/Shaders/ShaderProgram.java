@@ -1,6 +1,7 @@
 package io.github.ieperen3039.ngn.Rendering.Shaders;
 
 import io.github.ieperen3039.ngn.AssetHandling.Resource;
+import io.github.ieperen3039.ngn.Camera.Camera;
 import io.github.ieperen3039.ngn.Core.Main;
 import io.github.ieperen3039.ngn.Rendering.MatrixStack.SGL;
 
@@ -38,6 +39,14 @@ public interface ShaderProgram {
      */
     SGL getGL(Main main);
 
+    /**
+     * initialize the uniforms for this shader as seen from the given camera instead of the camera of main, and return
+     * a rendering state object. Shaders that do not use the camera may ignore it.
+     */
+    default SGL getGL(Main main, Camera camera) {
+        return getGL(main);
+    }
+
     /**
      * Create a new shader and return the id of the newly created shader.
      * 
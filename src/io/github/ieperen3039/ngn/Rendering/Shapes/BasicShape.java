@@ -16,21 +16,23 @@ import java.util.stream.Collectors;
 public class BasicShape implements Shape {
 
     private final AABBf boundingBox;
-    private List<Vector3fc> vertices;
-    private List<Plane> triangles;
+    private final List<Vector3fc> vertices;
+    private final List<Plane> triangles;
 
     /**
-     * reads a model from the given file.
+     * reads a model from the given file. The vertices are copied once, such that lists that create their elements on
+     * access, as those of a {@link io.github.ieperen3039.ngn.Rendering.MeshLoading.MeshFile}, are only read here.
      */
     public BasicShape(
             List<Vector3fc> vertices, List<Vector3fc> normals, List<Face> faces
     ) {
-        this.vertices = Collections.unmodifiableList(vertices);
+        List<Vector3fc> points = List.copyOf(vertices);
+        this.vertices = points;
         this.triangles = faces.parallelStream()
-                .map(f -> Plane.faceToPlane(f, vertices, normals))
+                .map(f -> Plane.faceToPlane(f, points, normals))
                 .collect(Collectors.toList());
 
-        boundingBox = vertices.parallelStream()
+        boundingBox = points.parallelStream()
                 .collect(AABBf::new, AABBf::union, AABBf::union);
     }
 
@@ -41,7 +43,26 @@ public class BasicShape implements Shape {
 
     @Override
     public Collection<Vector3fc> getPoints() {
-        return Collections.unmodifiableList(vertices);
+        // already unmodifiable
+        return vertices;
+    }
+
+    @Override
+    public Vector3fc getSupportPoint(Vector3fc direction) {
+        Vector3fc bestElement = null;
+        float bestValue = Float.NEGATIVE_INFINITY;
+
+        // indexed, to not create an iterator on every collision query
+        for (int i = 0; i < vertices.size(); i++) {
+            Vector3fc p = vertices.get(i);
+            float newValue = direction.dot(p);
+            if (newValue > bestValue) {
+                bestValue = newValue;
+                bestElement = p;
+            }
+        }
+
+        return bestElement;
     }
 
     @Override
@@ -6,6 +6,7 @@ import io.github.ieperen3039.ngn.Rendering.MeshLoading.MeshFile;
 import io.github.ieperen3039.ngn.Rendering.Shapes.Primitives.Plane;
 import io.github.ieperen3039.ngn.AssetHandling.GeneratorAsset;
 import io.github.ieperen3039.ngn.AssetHandling.Asset;
+import io.github.ieperen3039.ngn.AssetHandling.AssetManifest;
 import io.github.ieperen3039.ngn.AssetHandling.Resource;
 import org.joml.AABBf;
 import org.joml.AxisAngle4f;
@@ -29,17 +30,19 @@ public enum GenericShapes implements Mesh, Shape {
     ;
 
     private final Asset<Mesh> mesh;
-    private final Shape shape;
+    private final Asset<Shape> shape;
+    /** the shape once loaded, such that collision queries neither go through the asset cache, nor reload it */
+    private volatile Shape loadedShape = null;
 
     GenericShapes(String... relative) {
-        Asset<MeshFile> pars = MeshFile.createAsset(Resource.Path.get("ngn/models").resolve(relative));
-        shape = pars.get().getShape();
-        mesh = new GeneratorAsset<>(() -> pars.get().getMesh(), Mesh::dispose);
-        pars.drop();
+        // nothing is loaded until used. Both derivations share the same parsed file
+        Asset<MeshFile> file = MeshFile.createAsset(Resource.Path.get("ngn/models").resolve(relative));
+        shape = Asset.deriveInBackground(file, MeshFile::getShape);
+        mesh = MeshFile.meshAsset(file);
     }
 
     GenericShapes(CustomShape frame) {
-        shape = frame.toShape();
+        shape = new GeneratorAsset<>(frame::toShape, null, true);
         mesh = new GeneratorAsset<>(frame::toFlatMesh, Mesh::dispose);
     }
 
@@ -48,7 +51,18 @@ public enum GenericShapes implements Mesh, Shape {
     }
 
     public Asset<Shape> shapeResource() {
-        return new GeneratorAsset<>(() -> shape, null);
+        return shape;
+    }
+
+    /**
+     * @return a manifest of the meshes and shapes of all generic shapes, to load them in parallel.
+     */
+    public static AssetManifest manifest() {
+        AssetManifest manifest = new AssetManifest();
+        for (GenericShapes shape : values()) {
+            manifest.add(shape.shape, shape.mesh);
+        }
+        return manifest;
     }
 
     @Override
@@ -63,17 +77,32 @@ public enum GenericShapes implements Mesh, Shape {
 
     @Override
     public Collection<? extends Plane> getPlanes() {
-        return shape.getPlanes();
+        return loadedShape().getPlanes();
     }
 
     @Override
     public Collection<Vector3fc> getPoints() {
-        return shape.getPoints();
+        return loadedShape().getPoints();
+    }
+
+    @Override
+    public Vector3fc getSupportPoint(Vector3fc direction) {
+        return loadedShape().getSupportPoint(direction);
     }
 
     @Override
     public AABBf getBoundingBox() {
-        return shape.getBoundingBox();
+        return loadedShape().getBoundingBox();
+    }
+
+    /** @return the shape, loading it on first use. Generic shapes are small, thus these are kept once loaded */
+    private Shape loadedShape() {
+        Shape current = loadedShape;
+        if (current == null) {
+            current = shape.get();
+            loadedShape = current;
+        }
+        return current;
     }
 
     private static CustomShape createQuad() {
@@ -48,7 +48,7 @@ public interface Shape {
     }
 
     static Asset<Shape> createResource(Path path) {
-        return Asset.derive(MeshFile.createAsset(path), MeshFile::getShape);
+        return Asset.deriveInBackground(MeshFile.createAsset(path), MeshFile::getShape);
     }
 
     /**
@@ -1,10 +1,17 @@
 package io.github.ieperen3039.ngn.Rendering.Textures;
 
 import de.matthiasmann.twl.utils.PNGDecoder;
+import io.github.ieperen3039.ngn.AssetHandling.Asset;
+import io.github.ieperen3039.ngn.AssetHandling.AssetCache;
+import io.github.ieperen3039.ngn.AssetHandling.GeneratorAsset;
+import io.github.ieperen3039.ngn.AssetHandling.MemoryFootprint;
+import io.github.ieperen3039.ngn.AssetHandling.Resource;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
@@ -14,24 +21,25 @@ import static org.lwjgl.opengl.GL30.glGenerateMipmap;
 /**
  * @author Cas Wognum (TU/e, 1012585)
  */
-public class FileTexture implements Texture {
+public class FileTexture implements Texture, MemoryFootprint {
+    private static final Map<Integer, Asset<Texture>> allFileTextures = new ConcurrentHashMap<>();
+
     private final int id;
 
     private final int width;
     private final int height;
 
     public FileTexture(InputStream in) throws IOException {
-        PNGDecoder image = new PNGDecoder(in);
-
-        this.width = image.getWidth();
-        this.height = image.getHeight();
+        this(decode(in));
+    }
 
-        // Load texture contents into a byte buffer
-        int byteSize = 4;
-        ByteBuffer buf = ByteBuffer.allocateDirect(byteSize * width * height);
-        PNGDecoder.Format format = image.decideTextureFormat(PNGDecoder.Format.RGBA);
-        image.decode(buf, width * byteSize, format);
-        buf.flip();
+    /**
+     * uploads a decoded image to the GPU. Must be called on the render thread.
+     */
+    public FileTexture(Decoded image) {
+        this.width = image.width();
+        this.height = image.height();
+        ByteBuffer buf = image.pixels();
 
         // Create a new OpenGL texture
         this.id = glGenTextures();
@@ -54,6 +62,40 @@ public class FileTexture implements Texture {
         glGenerateMipmap(GL_TEXTURE_2D);
     }
 
+    /**
+     * @return the texture asset of the png image on the given path, shared by all callers with the same path
+     * @see Texture#createAsset(Resource.Path)
+     */
+    public static Asset<Texture> createAsset(Resource.Path path) {
+        return allFileTextures.computeIfAbsent(path.id(), id -> {
+            Asset<Decoded> image = Resource.get(p -> decode(p.asStream()), path);
+
+            return new GeneratorAsset<>(() -> {
+                Texture texture = new FileTexture(image.get());
+                image.drop();
+                return texture;
+            }, Texture::cleanup, false, image);
+        });
+    }
+
+    /**
+     * decodes a png image to RGBA pixels, without using OpenGL. May be called on any thread.
+     */
+    public static Decoded decode(InputStream in) throws IOException {
+        PNGDecoder image = new PNGDecoder(in);
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        // Load texture contents into a byte buffer
+        int byteSize = 4;
+        ByteBuffer buf = ByteBuffer.allocateDirect(byteSize * width * height);
+        PNGDecoder.Format format = image.decideTextureFormat(PNGDecoder.Format.RGBA);
+        image.decode(buf, width * byteSize, format);
+        buf.flip();
+
+        return new Decoded(width, height, buf);
+    }
+
     @Override
     public void attach(int sampler) {
         glActiveTexture(sampler);
@@ -65,6 +107,17 @@ public class FileTexture implements Texture {
         glDeleteTextures(id);
     }
 
+    @Override
+    public long byteSize() {
+        // RGBA, plus a third for the mipmaps
+        return (long) width * height * 4 * 4 / 3;
+    }
+
+    @Override
+    public AssetCache.MemoryKind memoryKind() {
+        return AssetCache.MemoryKind.GPU;
+    }
+
     @Override
     public int getWidth() {
         return width;
@@ -74,4 +127,19 @@ public class FileTexture implements Texture {
     public int getHeight() {
         return height;
     }
+
+    /**
+     * the RGBA pixels of a decoded image
+     */
+    public record Decoded(int width, int height, ByteBuffer pixels) implements MemoryFootprint {
+        @Override
+        public long byteSize() {
+            return pixels.capacity();
+        }
+
+        @Override
+        public AssetCache.MemoryKind memoryKind() {
+            return AssetCache.MemoryKind.OFF_HEAP;
+        }
+    }
 }
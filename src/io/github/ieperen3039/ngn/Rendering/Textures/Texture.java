@@ -45,7 +45,11 @@ public interface Texture {
         Toolbox.checkGLError("texture dump");
     }
 
+    /**
+     * creates an asset of the png image on the given path. When loaded asynchronously, the image is decoded in the
+     * background, and only uploaded on the render thread. Repeated calls with the same path return the same asset.
+     */
     static Asset<Texture> createAsset(Resource.Path path) {
-        return Resource.get(p -> new FileTexture(p.asStream()), path);
+        return FileTexture.createAsset(path);
     }
 }
@@ -0,0 +1,17 @@
+package io.github.ieperen3039.ngn.Scene;
+
+import io.github.ieperen3039.ngn.DataStructures.Generic.DoubleBuffer;
+import io.github.ieperen3039.ngn.Rendering.MatrixStack.SGL;
+
+/**
+ * An entity that writes its state in {@link #update()} to a separate buffer, and only reads the published state in
+ * {@link #draw(SGL)}. This allows an {@link EntityScheduler} to update entities while they are being drawn.
+ * @see DoubleBuffer
+ */
+public interface BufferedEntity extends Entity {
+    /**
+     * publishes the state written by the last call to {@link #update()}. This is called by the {@link EntityScheduler}
+     * after all entities have been updated, while no entity is being drawn.
+     */
+    void swapBuffers();
+}
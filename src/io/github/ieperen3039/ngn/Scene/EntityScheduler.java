@@ -0,0 +1,174 @@
+package io.github.ieperen3039.ngn.Scene;
+
+import io.github.ieperen3039.ngn.Rendering.MatrixStack.SGL;
+import io.github.ieperen3039.ngn.Tools.AutoLock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Updates a collection of entities in parallel, and draws them on the render thread. Entities are split in chunks of
+ * a fixed size, and each chunk is updated as a task on a {@link ForkJoinPool}. In parallel mode, {@link Entity#update()}
+ * may only modify the state of the entity itself.
+ * <p>
+ * After all entities are updated, the state of each {@link BufferedEntity} is published at once. Publishing and drawing
+ * exclude each other, such that {@link #draw(SGL)} never observes half-updated buffered entities. Entities that are not
+ * buffered are updated while they may be drawn, like before.
+ */
+public class EntityScheduler {
+    private static final int DEFAULT_CHUNK_SIZE = 256;
+
+    private final ForkJoinPool pool;
+    private final List<Entity> entities = new ArrayList<>();
+    private final List<BufferedEntity> bufferedEntities = new ArrayList<>();
+    private final Queue<Entity> toAdd = new ConcurrentLinkedQueue<>();
+    private final Queue<Entity> toRemove = new ConcurrentLinkedQueue<>();
+
+    private final AutoLock drawLock;
+    private final AutoLock publishLock;
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private boolean isDeterministic = false;
+
+    /**
+     * creates a scheduler that uses the common pool
+     */
+    public EntityScheduler() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool the pool used to update the entities
+     */
+    public EntityScheduler(ForkJoinPool pool) {
+        this.pool = pool;
+
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        this.drawLock = new AutoLock.Wrapper(lock.readLock());
+        this.publishLock = new AutoLock.Wrapper(lock.writeLock());
+    }
+
+    /**
+     * adds the given entity. The entity is updated and drawn starting from the next call to {@link #update()}. May be
+     * called from any thread.
+     */
+    public void add(Entity entity) {
+        toAdd.offer(entity);
+    }
+
+    /**
+     * removes the given entity. The entity is removed at the next call to {@link #update()}. May be called from any
+     * thread.
+     */
+    public void remove(Entity entity) {
+        toRemove.offer(entity);
+    }
+
+    /**
+     * @param chunkSize the number of entities updated by a single task
+     */
+    public void setChunkSize(int chunkSize) {
+        assert chunkSize > 0 : chunkSize;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * When deterministic, entities are updated one by one on the calling thread, in the order they were added. This
+     * gives reproducible results when entities interact with each other, at the cost of parallelism.
+     * @param doDeterministic true to update in a fixed order, false to update in parallel
+     */
+    public void setDeterministic(boolean doDeterministic) {
+        this.isDeterministic = doDeterministic;
+    }
+
+    /**
+     * updates all entities, and publishes the new state of all buffered entities. An exception thrown by an entity is
+     * rethrown by this method, and no state is published in that case.
+     */
+    public void update() {
+        applyChanges();
+
+        int nrOfEntities = entities.size();
+        if (isDeterministic || nrOfEntities <= chunkSize) {
+            for (Entity entity : entities) {
+                entity.update();
+            }
+
+        } else {
+            pool.invoke(new UpdateAction(0, nrOfEntities));
+        }
+
+        try (AutoLock.Section ignored = publishLock.open()) {
+            for (BufferedEntity entity : bufferedEntities) {
+                entity.swapBuffers();
+            }
+        }
+    }
+
+    /**
+     * draws all entities. May only be called from the rendering loop.
+     * @param gl the graphics object to be used for rendering.
+     */
+    public void draw(SGL gl) {
+        try (AutoLock.Section ignored = drawLock.open()) {
+            for (Entity entity : entities) {
+                entity.draw(gl);
+            }
+        }
+    }
+
+    /**
+     * @return the number of entities in this scheduler, excluding pending additions and removals
+     */
+    public int size() {
+        return entities.size();
+    }
+
+    private void applyChanges() {
+        if (toAdd.isEmpty() && toRemove.isEmpty()) return;
+
+        // the entity list is read while drawing
+        try (AutoLock.Section ignored = publishLock.open()) {
+            while (!toAdd.isEmpty()) {
+                Entity entity = toAdd.remove();
+                entities.add(entity);
+                if (entity instanceof BufferedEntity buffered) bufferedEntities.add(buffered);
+            }
+
+            while (!toRemove.isEmpty()) {
+                Entity entity = toRemove.remove();
+                entities.remove(entity);
+                if (entity instanceof BufferedEntity buffered) bufferedEntities.remove(buffered);
+            }
+        }
+    }
+
+    private class UpdateAction extends RecursiveAction {
+        private final int start;
+        private final int end;
+
+        UpdateAction(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= chunkSize) {
+                for (int i = start; i < end; i++) {
+                    entities.get(i).update();
+                }
+
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new UpdateAction(start, middle), new UpdateAction(middle, end));
+            }
+        }
+    }
+}
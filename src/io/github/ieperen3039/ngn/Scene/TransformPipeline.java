@@ -0,0 +1,123 @@
+package io.github.ieperen3039.ngn.Scene;
+
+import io.github.ieperen3039.ngn.DataStructures.Generic.TripleBuffer;
+import io.github.ieperen3039.ngn.Tools.TickTime;
+import org.joml.Quaternionfc;
+import org.joml.Vector3fc;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Passes entity transforms from the simulation loop to the render loop, such that both can run at a different rate
+ * without locking. Each simulation tick writes the transforms of its entities and calls {@link #publish(TickTime)};
+ * the render loop calls {@link #latest()} once per frame and interpolates between the last two ticks.
+ * <p>
+ * Each entity is identified by a slot, acquired with {@link #register(Vector3fc, Quaternionfc)}. Slots that are not
+ * written in a tick keep their transform of the previous tick. All methods except {@link #latest()} may only be called
+ * from the simulation thread, and {@link #latest()} may only be called from the render thread.
+ */
+public class TransformPipeline {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final TripleBuffer<TransformSnapshot> buffer;
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    /** the current transforms of the last published snapshot */
+    private float[] published;
+    private int nrOfSlots = 0;
+
+    public TransformPipeline() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the initial number of slots
+     */
+    public TransformPipeline(int capacity) {
+        this.buffer = new TripleBuffer<>(
+                new TransformSnapshot(capacity), new TransformSnapshot(capacity), new TransformSnapshot(capacity)
+        );
+        this.published = new float[capacity * TransformSnapshot.STRIDE];
+    }
+
+    /**
+     * claims a slot for a new entity, starting at the given transform.
+     * @return the slot of the entity
+     */
+    public int register(Vector3fc position, Quaternionfc rotation) {
+        int slot;
+        if (freeSlots.isEmpty()) {
+            slot = nrOfSlots++;
+            buffer.write().ensureCapacity(nrOfSlots);
+
+            if (published.length < nrOfSlots * TransformSnapshot.STRIDE) {
+                published = Arrays.copyOf(published, buffer.write().current.length);
+            }
+
+        } else {
+            slot = freeSlots.pop();
+        }
+
+        // no interpolation from an older transform
+        set(slot, position, rotation);
+        System.arraycopy(buffer.write().current, slot * TransformSnapshot.STRIDE,
+                published, slot * TransformSnapshot.STRIDE, TransformSnapshot.STRIDE);
+
+        return slot;
+    }
+
+    /**
+     * frees a slot, such that it can be reused by a later call to {@link #register(Vector3fc, Quaternionfc)}
+     */
+    public void release(int slot) {
+        freeSlots.push(slot);
+    }
+
+    /**
+     * sets the transform of the given slot for the current tick
+     */
+    public void set(int slot, Vector3fc position, Quaternionfc rotation) {
+        assert slot < nrOfSlots : slot;
+        float[] target = buffer.write().current;
+        int i = slot * TransformSnapshot.STRIDE;
+
+        target[i] = position.x();
+        target[i + 1] = position.y();
+        target[i + 2] = position.z();
+        target[i + 3] = rotation.x();
+        target[i + 4] = rotation.y();
+        target[i + 5] = rotation.z();
+        target[i + 6] = rotation.w();
+    }
+
+    /**
+     * publishes the transforms of the current tick to the render thread.
+     * @param simulationTime the timer of the simulation loop, used to determine the interpolation interval.
+     */
+    public void publish(TickTime simulationTime) {
+        int length = nrOfSlots * TransformSnapshot.STRIDE;
+
+        TransformSnapshot snapshot = buffer.write();
+        System.arraycopy(published, 0, snapshot.previous, 0, length);
+        System.arraycopy(snapshot.current, 0, published, 0, length);
+        snapshot.nrOfSlots = nrOfSlots;
+        snapshot.time = simulationTime.getTime();
+        snapshot.intervalNanos = Math.max(1, (long) (simulationTime.getDeltaTimeSeconds() * 1e9));
+        snapshot.publishNanos = System.nanoTime();
+
+        buffer.publish();
+
+        // continue from the published transforms
+        TransformSnapshot next = buffer.write();
+        next.ensureCapacity(nrOfSlots);
+        System.arraycopy(published, 0, next.current, 0, length);
+    }
+
+    /**
+     * @return the most recently published snapshot. It remains valid until the next call to this method.
+     */
+    public TransformSnapshot latest() {
+        return buffer.read();
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.ieperen3039.ngn.Scene;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * The transforms of a set of entities at the end of one simulation tick, together with their transforms at the end of
+ * the tick before. The render thread interpolates between these two to draw entities at any moment in between.
+ * Instances are created and written by a {@link TransformPipeline}, and must not be modified by the reader.
+ */
+public class TransformSnapshot {
+    /** position xyz, rotation xyzw */
+    static final int STRIDE = 7;
+
+    float[] previous;
+    float[] current;
+    int nrOfSlots = 0;
+    /** simulation time of the tick, in seconds */
+    double time;
+    /** value of {@link System#nanoTime()} when this snapshot was published */
+    long publishNanos;
+    /** real-time duration of the simulation tick, in nanoseconds */
+    long intervalNanos = 1;
+
+    TransformSnapshot(int capacity) {
+        previous = new float[capacity * STRIDE];
+        current = new float[capacity * STRIDE];
+    }
+
+    void ensureCapacity(int capacity) {
+        if (current.length < capacity * STRIDE) {
+            int newLength = Math.max(capacity, current.length / STRIDE * 2) * STRIDE;
+            previous = Arrays.copyOf(previous, newLength);
+            current = Arrays.copyOf(current, newLength);
+        }
+    }
+
+    /**
+     * @return the number of slots in this snapshot
+     */
+    public int size() {
+        return nrOfSlots;
+    }
+
+    /**
+     * @return the simulation time in seconds of the tick that produced this snapshot
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Computes how far the render thread is between the previous and the current tick, assuming that the next tick is
+     * published one tick interval after this one. Rendering therefore lags one tick behind the simulation.
+     * @return a value between 0 (the previous tick) and 1 (the current tick)
+     */
+    public float interpolationFactor() {
+        float alpha = (float) (System.nanoTime() - publishNanos) / intervalNanos;
+        return Math.max(0, Math.min(alpha, 1));
+    }
+
+    /**
+     * @param slot  the slot of the entity
+     * @param alpha the interpolation factor, see {@link #interpolationFactor()}
+     * @param dest  will hold the result
+     * @return dest
+     */
+    public Vector3f getPosition(int slot, float alpha, Vector3f dest) {
+        int i = slot * STRIDE;
+        return dest.set(
+                lerp(previous[i], current[i], alpha),
+                lerp(previous[i + 1], current[i + 1], alpha),
+                lerp(previous[i + 2], current[i + 2], alpha)
+        );
+    }
+
+    /**
+     * interpolates the rotation of the given slot along the shortest path, using normalized linear interpolation.
+     * @param slot  the slot of the entity
+     * @param alpha the interpolation factor, see {@link #interpolationFactor()}
+     * @param dest  will hold the result
+     * @return dest
+     */
+    public Quaternionf getRotation(int slot, float alpha, Quaternionf dest) {
+        int i = slot * STRIDE + 3;
+        float ax = previous[i], ay = previous[i + 1], az = previous[i + 2], aw = previous[i + 3];
+        float bx = current[i], by = current[i + 1], bz = current[i + 2], bw = current[i + 3];
+
+        // q and -q are the same rotation, take the one closest to a
+        float dot = ax * bx + ay * by + az * bz + aw * bw;
+        float sign = (dot < 0) ? -1 : 1;
+
+        return dest.set(
+                lerp(ax, sign * bx, alpha),
+                lerp(ay, sign * by, alpha),
+                lerp(az, sign * bz, alpha),
+                lerp(aw, sign * bw, alpha)
+        ).normalize();
+    }
+
+    /**
+     * @param slot  the slot of the entity
+     * @param alpha the interpolation factor, see {@link #interpolationFactor()}
+     * @param dest  will hold the translation and rotation of the entity
+     * @return dest
+     */
+    public Matrix4f getTransform(int slot, float alpha, Matrix4f dest) {
+        int i = slot * STRIDE;
+        float px = lerp(previous[i], current[i], alpha);
+        float py = lerp(previous[i + 1], current[i + 1], alpha);
+        float pz = lerp(previous[i + 2], current[i + 2], alpha);
+
+        float ax = previous[i + 3], ay = previous[i + 4], az = previous[i + 5], aw = previous[i + 6];
+        float bx = current[i + 3], by = current[i + 4], bz = current[i + 5], bw = current[i + 6];
+        float sign = (ax * bx + ay * by + az * bz + aw * bw < 0) ? -1 : 1;
+
+        float qx = lerp(ax, sign * bx, alpha);
+        float qy = lerp(ay, sign * by, alpha);
+        float qz = lerp(az, sign * bz, alpha);
+        float qw = lerp(aw, sign * bw, alpha);
+        float invLength = 1f / (float) Math.sqrt(qx * qx + qy * qy + qz * qz + qw * qw);
+
+        return dest.translationRotate(px, py, pz, qx * invLength, qy * invLength, qz * invLength, qw * invLength);
+    }
+
+    private static float lerp(float a, float b, float alpha) {
+        return a + (b - a) * alpha;
+    }
+}
@@ -13,7 +13,8 @@ import java.nio.file.Paths;
 public enum Directory {
     scripts("scripts"),
     shapes("shapes"),
-    out("out");
+    out("out"),
+    cache("cache");
 
     private final Path directory; // relative path
     private static Path workingDirectory = null;
@@ -0,0 +1,371 @@
+package io.github.ieperen3039.ngn.Tools;
+
+import io.github.ieperen3039.ngn.DataStructures.Generic.PairList;
+import io.github.ieperen3039.ngn.DataStructures.Generic.RollingHistogram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A hierarchical profiler of a loop. Sections are registered once with {@link #register(String)}, and are then timed
+ * with nested try-with-resources scopes:
+ * <pre>{@code
+ *     try (Profiler.Scope ignored = profiler.scope(SECTION)) {
+ *         ...
+ *     }
+ * }</pre>
+ * A section opened inside another section is counted as a child of that section, thus the same section may appear at
+ * multiple places in the tree. Scopes may be opened on any thread; each thread records into its own buffer, and all
+ * buffers are collected by {@link #startNewLoop()}. After the first occurrence of each path in the tree, opening and
+ * closing scopes does not allocate. The buffers of threads that have terminated are removed when collected.
+ * <p>
+ * A profiler is a {@link TimeObserver}, such that it can be used where a {@code TimeObserver} is expected, like the
+ * timer of the render loops. The name-based methods of {@code TimeObserver} are deprecated here: these time top-level
+ * sections by name, and may only be used by one thread.
+ * @see TimeObserver
+ */
+public class Profiler extends TimeObserver {
+    /** minimum number of loops that are considered for statistics */
+    private static final int MIN_STATISTICS_SIZE = 256;
+    private static final Scope NO_SCOPE = () -> {};
+
+    private final int statisticsSize;
+    private final List<String> sectionNames = new ArrayList<>();
+    private final Map<String, Integer> sectionIds = new HashMap<>();
+
+    private final Node root;
+    /** all nodes, indexed by their id */
+    private volatile Node[] nodes;
+    private long[] loopTotals;
+
+    private final List<ThreadBuffer> buffers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<ThreadBuffer> localBuffer = ThreadLocal.withInitial(this::newBuffer);
+
+    private final RollingHistogram loopStatistics;
+    private long thisLoopStart;
+    private volatile boolean isEnabled = true;
+    /** the scope opened by {@link #startTiming(String)}, or null */
+    private Scope namedScope = null;
+
+    public Profiler() {
+        this(MIN_STATISTICS_SIZE);
+    }
+
+    /**
+     * @param nrOfLoops the number of most recent loops considered for statistics
+     */
+    public Profiler(int nrOfLoops) {
+        this.statisticsSize = Math.max(nrOfLoops, 1);
+        this.loopStatistics = new RollingHistogram(statisticsSize);
+        this.root = new Node(0, -1);
+        this.nodes = new Node[]{root};
+        this.loopTotals = new long[1];
+        this.thisLoopStart = System.nanoTime();
+    }
+
+    /**
+     * registers a section with the given name. Registering the same name twice returns the same id.
+     * @param name the name of the section, as displayed in {@link #resultsTree()}
+     * @return the id of the section, to be used in {@link #scope(int)}
+     */
+    public synchronized int register(String name) {
+        Integer id = sectionIds.get(name);
+        if (id != null) return id;
+
+        int newId = sectionNames.size();
+        sectionNames.add(name);
+        sectionIds.put(name, newId);
+        return newId;
+    }
+
+    /**
+     * starts timing the given section, until the returned scope is closed. Scopes must be closed in the reverse order
+     * of opening, which try-with-resources does automatically.
+     * @param section a section id as returned by {@link #register(String)}
+     * @return a scope that ends the timing when closed
+     */
+    public Scope scope(int section) {
+        if (!isEnabled) return NO_SCOPE;
+
+        ThreadBuffer buffer = localBuffer.get();
+        buffer.open(section);
+        return buffer;
+    }
+
+    /**
+     * @param doEnable when false, {@link #scope(int)} does not measure anything
+     */
+    public void setEnabled(boolean doEnable) {
+        this.isEnabled = doEnable;
+    }
+
+    /**
+     * ends the current loop, and collects the timings of all threads in this loop. Should be called by one thread
+     * only, once per loop. Scopes that are open on other threads are counted in the loop in which they are closed.
+     */
+    @Override
+    public void startNewLoop() {
+        long now = System.nanoTime();
+        loopStatistics.add(now - thisLoopStart);
+        thisLoopStart = now;
+
+        Node[] allNodes = nodes;
+        if (loopTotals.length < allNodes.length) loopTotals = new long[allNodes.length];
+
+        for (ThreadBuffer buffer : buffers) {
+            // a terminated thread does not record anything after this check
+            boolean isTerminated = !buffer.owner.isAlive();
+            buffer.collect(loopTotals);
+            if (isTerminated) buffers.remove(buffer);
+        }
+
+        for (int i = 1; i < allNodes.length; i++) {
+            allNodes[i].statistics.add(loopTotals[i]);
+            loopTotals[i] = 0;
+        }
+    }
+
+    /**
+     * @return the durations of the last loops in nanoseconds
+     */
+    @Override
+    public RollingHistogram loopStatistics() {
+        return loopStatistics;
+    }
+
+    @Override
+    public float secondsSinceLoopStart() {
+        return (System.nanoTime() - thisLoopStart) / 1e9f;
+    }
+
+    /**
+     * @return a table of all sections as a tree, where each child is indented below its parent, and siblings are sorted
+     * on their average time.
+     */
+    public synchronized String resultsTree() {
+        StringBuilder builder = new StringBuilder(String.format(
+                "Loop times of %d loops: mean %1.02f ms, p50 %1.02f ms, p95 %1.02f ms, p99 %1.02f ms, max %1.02f ms",
+                loopStatistics.count(), loopStatistics.mean() / 1e6,
+                loopStatistics.percentile(0.50f) / 1e6, loopStatistics.percentile(0.95f) / 1e6,
+                loopStatistics.percentile(0.99f) / 1e6, loopStatistics.max() / 1e6
+        ));
+
+        double loopMean = Math.max(loopStatistics.mean(), 1);
+        appendChildren(builder, root, "", loopMean);
+        return builder.toString();
+    }
+
+    /**
+     * @return the sections that are not nested in other sections, with the average fraction of the loop time spent in
+     * each, sorted from largest to smallest
+     * @deprecated use {@link #resultsTree()} for nested sections
+     */
+    @Override
+    @Deprecated
+    public synchronized PairList<String, Float> results() {
+        Node[] children = root.children;
+        PairList<String, Float> pairs = new PairList<>(children.length);
+        double loopMean = Math.max(loopStatistics.mean(), 1);
+
+        for (Node child : children) {
+            pairs.add(sectionNames.get(child.section), (float) (child.statistics.mean() / loopMean));
+        }
+
+        pairs.sort((a, b) -> -Float.compare(a.right(), b.right()));
+        return pairs;
+    }
+
+    /**
+     * @param identifier the name of a section that is not nested in other sections
+     * @return the durations in nanoseconds of the given section in the last loops, or null if no such section exists
+     * @deprecated sections may be nested, use {@link #resultsTree()} instead
+     */
+    @Override
+    @Deprecated
+    public synchronized RollingHistogram statisticsOf(String identifier) {
+        Integer section = sectionIds.get(identifier);
+        if (section == null) return null;
+
+        Node node = root.findChild(section);
+        return (node == null) ? null : node.statistics;
+    }
+
+    /**
+     * @return the average duration of the last loops in seconds
+     * @deprecated use {@link #loopStatistics()}
+     */
+    @Override
+    @Deprecated
+    public float averageLoopTime() {
+        return (float) (loopStatistics.mean() / 1e9);
+    }
+
+    /**
+     * @deprecated renamed to {@link #resultsTree()}
+     */
+    @Override
+    @Deprecated
+    public String resultsTable() {
+        return resultsTree();
+    }
+
+    /**
+     * starts timing a top-level section with the given name, and ends the section started by the previous call.
+     * @deprecated use {@link #register(String)} and {@link #scope(int)}
+     */
+    @Override
+    @Deprecated
+    public void startTiming(String identifier) {
+        if (namedScope != null) namedScope.close();
+        namedScope = scope(register(identifier));
+    }
+
+    /**
+     * ends the section started by {@link #startTiming(String)}
+     * @deprecated use {@link #register(String)} and {@link #scope(int)}
+     */
+    @Override
+    @Deprecated
+    public void endTiming(String identifier) {
+        if (namedScope == null) return;
+        namedScope.close();
+        namedScope = null;
+    }
+
+    private void appendChildren(StringBuilder builder, Node parent, String indent, double loopMean) {
+        Node[] children = parent.children.clone();
+        Arrays.sort(children, Comparator.comparingDouble((Node n) -> n.statistics.mean()).reversed());
+
+        for (Node child : children) {
+            RollingHistogram stats = child.statistics;
+            builder.append("\n");
+            builder.append(String.format(
+                    "| %-30s | %5.01f%% | mean %6.02f ms | p95 %6.02f ms | max %6.02f ms |",
+                    indent + sectionNames.get(child.section), 100 * stats.mean() / loopMean,
+                    stats.mean() / 1e6, stats.percentile(0.95f) / 1e6, stats.max() / 1e6
+            ));
+
+            appendChildren(builder, child, indent + "  ", loopMean);
+        }
+    }
+
+    /**
+     * clears all statistics
+     */
+    @Override
+    public void reset() {
+        startNewLoop();
+        loopStatistics.clear();
+        for (Node node : nodes) {
+            node.statistics.clear();
+        }
+    }
+
+    private ThreadBuffer newBuffer() {
+        ThreadBuffer buffer = new ThreadBuffer();
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    /** @return the child of parent for the given section, creating it if it does not exist */
+    private synchronized Node createChild(Node parent, int section) {
+        Node existing = parent.findChild(section);
+        if (existing != null) return existing;
+
+        Node[] allNodes = nodes;
+        Node child = new Node(allNodes.length, section);
+
+        Node[] newNodes = Arrays.copyOf(allNodes, allNodes.length + 1);
+        newNodes[child.id] = child;
+        nodes = newNodes;
+
+        Node[] children = Arrays.copyOf(parent.children, parent.children.length + 1);
+        children[children.length - 1] = child;
+        parent.children = children;
+
+        return child;
+    }
+
+    /**
+     * A timed section, which ends when closed.
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close(); // without exception
+    }
+
+    /** one place in the tree of sections */
+    private class Node {
+        final int id;
+        final int section;
+        final RollingHistogram statistics;
+        volatile Node[] children = new Node[0];
+
+        Node(int id, int section) {
+            this.id = id;
+            this.section = section;
+            this.statistics = new RollingHistogram(statisticsSize);
+        }
+
+        Node findChild(int section) {
+            for (Node child : children) {
+                if (child.section == section) return child;
+            }
+            return null;
+        }
+    }
+
+    /** the stack of open scopes and the accumulated time per node of one thread */
+    private class ThreadBuffer implements Scope {
+        private static final int INITIAL_DEPTH = 8;
+
+        /** the thread recording in this buffer */
+        private final Thread owner = Thread.currentThread();
+        private Node[] openNodes = new Node[INITIAL_DEPTH];
+        private long[] openStarts = new long[INITIAL_DEPTH];
+        private int depth = 0;
+        /** nanoseconds per node id, since the last collection */
+        private long[] accumulated = new long[0];
+
+        void open(int section) {
+            Node parent = (depth == 0) ? root : openNodes[depth - 1];
+            Node node = parent.findChild(section);
+            if (node == null) node = createChild(parent, section);
+
+            if (depth == openNodes.length) {
+                openNodes = Arrays.copyOf(openNodes, depth * 2);
+                openStarts = Arrays.copyOf(openStarts, depth * 2);
+            }
+
+            openNodes[depth] = node;
+            openStarts[depth] = System.nanoTime();
+            depth++;
+        }
+
+        @Override
+        public void close() {
+            assert depth > 0 : "Closed more scopes than were opened";
+            depth--;
+            long duration = System.nanoTime() - openStarts[depth];
+            int id = openNodes[depth].id;
+
+            synchronized (this) {
+                if (accumulated.length <= id) accumulated = Arrays.copyOf(accumulated, nodes.length);
+                accumulated[id] += duration;
+            }
+        }
+
+        synchronized void collect(long[] totals) {
+            int length = Math.min(accumulated.length, totals.length);
+            for (int i = 0; i < length; i++) {
+                totals[i] += accumulated[i];
+                accumulated[i] = 0;
+            }
+        }
+    }
+}
@@ -4,12 +4,12 @@ package io.github.ieperen3039.ngn.Tools;
  * @author Geert van Ieperen adapter design pattern
  */
 public class RealTimeTimer implements TickTime {
-    private long currentTime;
-    private long previousTime;
+    private long currentTime; // nanoseconds
+    private long previousTime; // nanoseconds
     private final long startTime;
 
     public RealTimeTimer() {
-        startTime = System.currentTimeMillis();
+        startTime = System.nanoTime();
         currentTime = 0;
         previousTime = 0;
     }
@@ -19,6 +19,14 @@ public class RealTimeTimer implements TickTime {
      * @param newElement the new current value
      */
     public void updateTimeMillis(long newElement) {
+        updateTimeNanos(newElement * 1_000_000L);
+    }
+
+    /**
+     * starts a new tick at the given time in nanoseconds since the creation of this timer.
+     * @param newElement the new current value
+     */
+    public void updateTimeNanos(long newElement) {
         previousTime = currentTime;
         currentTime = newElement;
     }
@@ -27,7 +35,15 @@ public class RealTimeTimer implements TickTime {
      * starts a new tick at the given deltaTime since the last tick.
      */
     public void addDeltaTime(double deltaTime) {
-        updateTimeMillis(currentTime + (long) (deltaTime * 1000));
+        addDeltaTimeNanos((long) (deltaTime * 1e9));
+    }
+
+    /**
+     * starts a new tick at the given number of nanoseconds since the last tick. Unlike {@link #addDeltaTime(double)},
+     * repeated calls with the same value do not accumulate rounding errors.
+     */
+    public void addDeltaTimeNanos(long deltaNanos) {
+        updateTimeNanos(currentTime + deltaNanos);
     }
 
     /**
@@ -35,7 +51,7 @@ public class RealTimeTimer implements TickTime {
      */
     @Override
     public float getTime() {
-        return currentTime / 1000f;
+        return (float) (currentTime / 1e9);
     }
 
     /**
@@ -43,6 +59,13 @@ public class RealTimeTimer implements TickTime {
      */
     @Override
     public long getDeltaTimeMillis() {
+        return getDeltaTimeNanos() / 1_000_000L;
+    }
+
+    /**
+     * @return The number of nanoseconds between the previous two ticks.
+     */
+    public long getDeltaTimeNanos() {
         return currentTime - previousTime;
     }
 
@@ -51,7 +74,7 @@ public class RealTimeTimer implements TickTime {
      */
     @Override
     public double getDeltaTimeSeconds() {
-        return getDeltaTimeMillis() / 1000.0;
+        return getDeltaTimeNanos() / 1e9;
     }
 
     /**
@@ -59,7 +82,14 @@ public class RealTimeTimer implements TickTime {
      */
     @Override
     public long getMillisSinceLastUpdate() {
-        return getSystemElapsedMillis() - currentTime;
+        return getNanosSinceLastUpdate() / 1_000_000L;
+    }
+
+    /**
+     * @return time since the start of the current tick in nanoseconds.
+     */
+    public long getNanosSinceLastUpdate() {
+        return getSystemElapsedNanos() - currentTime;
     }
 
     /**
@@ -67,21 +97,21 @@ public class RealTimeTimer implements TickTime {
      */
     @Override
     public double getSecondsSinceLastUpdate() {
-        return getMillisSinceLastUpdate() / 1000.0;
+        return getNanosSinceLastUpdate() / 1e9;
     }
 
     /**
      * Adds a new tick at the current system time
      */
     public void updateLoopTime() {
-        updateTimeMillis(getSystemElapsedMillis());
+        updateTimeNanos(getSystemElapsedNanos());
     }
 
     /**
-     * @return The number of milliseconds since the start of the program.
+     * @return The number of nanoseconds since the creation of this timer.
      */
-    private long getSystemElapsedMillis() {
-        return (System.currentTimeMillis() - startTime);
+    private long getSystemElapsedNanos() {
+        return (System.nanoTime() - startTime);
     }
 
 }
@@ -3,22 +3,31 @@ package io.github.ieperen3039.ngn.Tools;
 import io.github.ieperen3039.ngn.DataStructures.Generic.AveragingQueue;
 import io.github.ieperen3039.ngn.DataStructures.Generic.Pair;
 import io.github.ieperen3039.ngn.DataStructures.Generic.PairList;
+import io.github.ieperen3039.ngn.DataStructures.Generic.RollingHistogram;
 
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
 /**
+ * Measures the time spent in flat, non-nested sections identified by name. For nested sections, and measuring without
+ * allocation, use {@link Profiler} instead.
  * @author Geert van Ieperen created on 10-5-2019.
  */
 public class TimeObserver {
     private static final String NONE = "Other";
     private static final int QUEUE_SIZE = 5;
+    /** minimum number of loops that are considered for percentiles */
+    private static final int MIN_STATISTICS_SIZE = 256;
     private final int queueSize;
     private final boolean includeOther;
 
+    private final int statisticsSize;
+
     private final AveragingQueue loopTimes;
+    private final RollingHistogram loopStatistics;
     private final Map<String, AveragingQueue> allMeasures;
+    private final Map<String, RollingHistogram> allStatistics;
     private final Map<String, Integer> thisLoopMeasures;
     private long thisLoopStart;
 
@@ -31,9 +40,12 @@ public class TimeObserver {
 
     public TimeObserver(int queueSize, boolean doIncludeOther) {
         this.allMeasures = new HashMap<>();
+        this.allStatistics = new HashMap<>();
         this.thisLoopMeasures = new HashMap<>();
         this.loopTimes = new AveragingQueue(queueSize);
         this.queueSize = queueSize;
+        this.statisticsSize = Math.max(queueSize, MIN_STATISTICS_SIZE);
+        this.loopStatistics = new RollingHistogram(statisticsSize);
 
         currentMeasure = NONE;
         currentStart = System.nanoTime();
@@ -47,10 +59,12 @@ public class TimeObserver {
 
         assert loopDurationNanos >= 0 : thisLoopMeasures;
         loopTimes.add(loopDurationNanos / 1e9f);
+        loopStatistics.add((long) loopDurationNanos);
         thisLoopStart = currentStart;
 
         for (String elt : thisLoopMeasures.keySet()) {
             allMeasures.computeIfAbsent(elt, e -> new AveragingQueue(queueSize));
+            allStatistics.computeIfAbsent(elt, e -> new RollingHistogram(statisticsSize));
         }
 
         Iterator<String> iterator = allMeasures.keySet().iterator();
@@ -60,8 +74,12 @@ public class TimeObserver {
             float entry = eltNanos / loopDurationNanos;
             AveragingQueue queue = allMeasures.get(elt);
             queue.add(entry);
+            allStatistics.get(elt).add(eltNanos);
 
-            if (queue.average() == 0) iterator.remove();
+            if (queue.average() == 0) {
+                iterator.remove();
+                allStatistics.remove(elt);
+            }
         }
 
         thisLoopMeasures.clear();
@@ -118,15 +136,41 @@ public class TimeObserver {
         return pairs;
     }
 
+    /**
+     * @return the durations of the last loops in nanoseconds
+     */
+    public RollingHistogram loopStatistics() {
+        return loopStatistics;
+    }
+
+    /**
+     * @param identifier the identifier of a timing
+     * @return the durations in nanoseconds of the given timing in the last loops, or null if no such timing exists
+     */
+    public RollingHistogram statisticsOf(String identifier) {
+        return allStatistics.get(identifier);
+    }
+
     public String resultsTable() {
         StringBuilder builder = new StringBuilder(String.format(
                 "Time division averages of %d loops of %1.04f sec:",
                 queueSize, loopTimes.average()
         ));
+        builder.append(String.format(
+                "\nLoop times of %d loops: p50 %1.02f ms, p95 %1.02f ms, p99 %1.02f ms, max %1.02f ms, sd %1.02f ms",
+                loopStatistics.count(),
+                loopStatistics.percentile(0.50f) / 1e6, loopStatistics.percentile(0.95f) / 1e6,
+                loopStatistics.percentile(0.99f) / 1e6, loopStatistics.max() / 1e6,
+                loopStatistics.standardDeviation() / 1e6
+        ));
 
         for (Pair<String, Float> result : results()) {
+            RollingHistogram stats = allStatistics.get(result.left());
             builder.append("\n");
-            builder.append(String.format("| %-30s | %4.01f%% |", result.left(), result.right() * 100));
+            builder.append(String.format(
+                    "| %-30s | %4.01f%% | p95 %6.02f ms | max %6.02f ms |",
+                    result.left(), result.right() * 100, stats.percentile(0.95f) / 1e6, stats.max() / 1e6
+            ));
         }
         return builder.toString();
     }
@@ -134,7 +178,9 @@ public class TimeObserver {
     public void reset() {
         startNewLoop();
         allMeasures.clear();
+        allStatistics.clear();
         thisLoopMeasures.clear();
         loopTimes.clear();
+        loopStatistics.clear();
     }
 }
@@ -1,11 +1,14 @@
 package io.github.ieperen3039.ngn.UserInterface.Rendering;
 
+import io.github.ieperen3039.ngn.AssetHandling.AssetLoader;
 import io.github.ieperen3039.ngn.Core.GenericThreadLoop;
 import io.github.ieperen3039.ngn.Core.Main;
 import io.github.ieperen3039.ngn.Core.RenderManager;
+import io.github.ieperen3039.ngn.Core.TaskQueue;
 import io.github.ieperen3039.ngn.Rendering.GLFWWindow;
 import io.github.ieperen3039.ngn.Settings.Settings;
 import io.github.ieperen3039.ngn.Tools.Logger;
+import io.github.ieperen3039.ngn.Tools.Profiler;
 import io.github.ieperen3039.ngn.Tools.TickTime;
 import io.github.ieperen3039.ngn.Tools.TimeObserver;
 import io.github.ieperen3039.ngn.Tools.Toolbox;
@@ -13,6 +16,7 @@ import io.github.ieperen3039.ngn.UserInterface.FrameManagers.SimpleUIManager;
 import io.github.ieperen3039.ngn.UserInterface.FrameManagers.UIManager;
 
 import java.io.IOException;
+import java.util.List;
 
 import static org.lwjgl.opengl.GL11.*;
 
@@ -20,8 +24,14 @@ import static org.lwjgl.opengl.GL11.*;
  * A renderloop specialized for rendering just a UI, requiring no {@link Main} class
  * @author Geert van Ieperen. Created on 13-9-2018.
  */
-public class UIRenderer extends GenericThreadLoop {
+public class UIRenderer extends GenericThreadLoop implements RenderManager {
+    /** the timings of this loop, which is the same object as {@link #getProfiler()} */
     public final TimeObserver timer;
+    private final Profiler profiler;
+    private final int loopInitSection;
+    private final int guiSection;
+    private final int gpuUpdateSection;
+    private final int eventSection;
     private final NVGOverlay overlay;
     private final SimpleUIManager uiManager;
     public boolean accurateTiming = true;
@@ -35,11 +45,18 @@ public class UIRenderer extends GenericThreadLoop {
         super("UI Renderloop", targetFPS);
         overlay = new NVGOverlay();
         uiManager = new SimpleUIManager();
-        timer = new TimeObserver((targetFPS / 4) + 1, true);
+        profiler = new Profiler();
+        timer = profiler;
+        loopInitSection = profiler.register("loop init");
+        guiSection = profiler.register("GUI");
+        gpuUpdateSection = profiler.register("GPU Update");
+        eventSection = profiler.register("event handling");
     }
 
     public void init(RenderManager root, GLFWWindow window, Settings settings) throws IOException {
         this.window = window;
+        // this loop honours the priority of loading tasks, whether or not root does
+        AssetLoader.setRenderManager(this, this);
         uiManager.init(window, root);
 
         accurateTiming = settings.ACCURATE_RENDER_TIMING;
@@ -52,56 +69,76 @@ public class UIRenderer extends GenericThreadLoop {
         });
     }
 
+    /** executes the given action on this render thread, see {@link #defer(Runnable)} */
+    @Override
+    public void executeOnRenderThread(Runnable action) {
+        defer(action);
+    }
+
+    /** executes the given action on this render thread, see {@link #defer(Runnable, TaskQueue.Priority)} */
+    @Override
+    public void executeOnRenderThread(Runnable action, TaskQueue.Priority priority) {
+        defer(action, priority);
+    }
+
+    /** executes the given actions on this render thread, see {@link #deferAll(List, TaskQueue.Priority)} */
+    @Override
+    public void executeOnRenderThread(List<? extends Runnable> actions, TaskQueue.Priority priority) {
+        deferAll(actions, priority);
+    }
+
+    /**
+     * @return the hierarchical timings of this loop
+     */
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
     @Override
     protected void update(TickTime deltaTime) {
         Toolbox.checkGLError("Pre-loop");
-        timer.startNewLoop();
+        profiler.startNewLoop();
         // cache value of accurateTiming for this loop
         boolean accurateTimingThisLoop = this.accurateTiming;
 
-        if (accurateTimingThisLoop) timer.startTiming("loop init");
-
-        if (window.getWidth() == 0 || window.getHeight() == 0) {
-            window.pollEvents();
-            return;
-        }
+        try (Profiler.Scope ignored = profiler.scope(loopInitSection)) {
+            if (window.getWidth() == 0 || window.getHeight() == 0) {
+                window.pollEvents();
+                return;
+            }
 
-        // restore window state
-        glViewport(0, 0, window.getWidth(), window.getHeight());
+            // restore window state
+            glViewport(0, 0, window.getWidth(), window.getHeight());
 
-        glEnable(GL_DEPTH_TEST);
-        glEnable(GL_CULL_FACE);
-        glCullFace(GL_BACK);
-        glPolygonMode(GL_FRONT_AND_BACK, GL_FILL);
-        glEnable(GL_BLEND);
-        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
-        glClearColor(1, 1, 1, 1); // white
+            glEnable(GL_DEPTH_TEST);
+            glEnable(GL_CULL_FACE);
+            glCullFace(GL_BACK);
+            glPolygonMode(GL_FRONT_AND_BACK, GL_FILL);
+            glEnable(GL_BLEND);
+            glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+            glClearColor(1, 1, 1, 1); // white
 
-        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-        Toolbox.checkGLError(window.toString());
+            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+            Toolbox.checkGLError(window.toString());
 
-        if (accurateTimingThisLoop) {
-            glFinish();
-            timer.endTiming("loop init");
+            if (accurateTimingThisLoop) glFinish();
         }
 
-        if (accurateTimingThisLoop) timer.startTiming("GUI");
-        overlay.draw(window.getWidth(), window.getHeight(), 10, 10, 12);
+        try (Profiler.Scope ignored = profiler.scope(guiSection)) {
+            overlay.draw(window.getWidth(), window.getHeight(), 10, 10, 12);
 
-        if (accurateTimingThisLoop) {
-            glFinish();
-            timer.endTiming("GUI");
+            if (accurateTimingThisLoop) glFinish();
         }
         Toolbox.checkGLError(overlay.toString());
 
         // update window
-        timer.startTiming("GPU Update");
-        window.update();
-        timer.endTiming("GPU Update");
+        try (Profiler.Scope ignored = profiler.scope(gpuUpdateSection)) {
+            window.update();
+        }
 
-        timer.startTiming("event handling");
-        window.pollEvents();
-        timer.endTiming("event handling");
+        try (Profiler.Scope ignored = profiler.scope(eventSection)) {
+            window.pollEvents();
+        }
 
         // loop clean
         Toolbox.checkGLError(window.toString());
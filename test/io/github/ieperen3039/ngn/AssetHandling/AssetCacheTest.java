@@ -0,0 +1,90 @@
+package io.github.ieperen3039.ngn.AssetHandling;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AssetCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        AssetCache.Segment segment = new AssetCache.Segment(1000);
+        Asset<?> a = asset(10);
+        Asset<?> b = asset(10);
+        Asset<?> c = asset(10);
+
+        segment.pushProbation(a);
+        segment.pushProbation(b);
+        segment.pushProbation(c);
+
+        assertSame(a, segment.findVictim());
+        segment.unlink(a);
+        assertSame(b, segment.findVictim());
+        segment.unlink(b);
+        assertSame(c, segment.findVictim());
+        segment.unlink(c);
+        assertNull(segment.findVictim());
+    }
+
+    @Test
+    public void referencedAssetsGetASecondChance() {
+        AssetCache.Segment segment = new AssetCache.Segment(1000);
+        Asset<?> a = asset(10);
+        Asset<?> b = asset(10);
+
+        segment.pushProbation(a);
+        segment.pushProbation(b);
+        a.isCacheReferenced = true;
+
+        // a is promoted instead of evicted, and its flag is cleared
+        assertSame(b, segment.findVictim());
+        assertTrue(a.isCacheProtected);
+        assertFalse(a.isCacheReferenced);
+        segment.unlink(b);
+
+        // protected assets are evicted once probation is empty
+        assertSame(a, segment.findVictim());
+    }
+
+    @Test
+    public void everyAssetIsExaminedAtMostTwice() {
+        AssetCache.Segment segment = new AssetCache.Segment(1000);
+        Asset<?> a = asset(10);
+        Asset<?> b = asset(10);
+
+        segment.pushProbation(a);
+        segment.pushProbation(b);
+        a.isCacheReferenced = true;
+        b.isCacheReferenced = true;
+
+        // both are promoted, after which the least recently promoted is the victim
+        assertSame(a, segment.findVictim());
+    }
+
+    @Test
+    public void protectedAssetsAreDemotedWhenOverBudget() {
+        AssetCache.Segment segment = new AssetCache.Segment(100);
+        Asset<?> a = asset(50);
+        Asset<?> b = asset(50);
+
+        segment.pushProtected(a);
+        assertTrue(a.isCacheProtected);
+
+        // exceeds 80% of the budget, thus the least recently used protected asset is demoted
+        segment.pushProtected(b);
+        assertTrue(b.isCacheProtected);
+        assertFalse(a.isCacheProtected);
+        assertSame(a, segment.findVictim());
+
+        segment.unlink(a);
+        segment.unlink(b);
+        assertNull(a.cacheSegment);
+        assertNull(segment.findVictim());
+    }
+
+    private static Asset<?> asset(long cost) {
+        Asset<?> asset = new GeneratorAsset<>(() -> "asset", null, true);
+        asset.cacheCost = cost;
+        return asset;
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.ieperen3039.ngn.AssetHandling;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AssetPackTest {
+    private static final Resource.Path TEXT = Resource.Path.of("packtest/text.txt");
+    private static final Resource.Path DATA = Resource.Path.of("packtest/sub/data.bin");
+    private static final Resource.Path EMPTY = Resource.Path.of("packtest/empty");
+    private static final Resource.Path MISSING = Resource.Path.of("packtest/missing.txt");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void uncompressedRoundTrip() throws IOException {
+        roundTrip(false);
+    }
+
+    @Test
+    public void compressedRoundTrip() throws IOException {
+        roundTrip(true);
+    }
+
+    @Test
+    public void mountedPacksTakePrecedence() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("mounted.pack");
+        new AssetPackBuilder(false).add(TEXT, text()).write(file);
+        AssetPack pack = new AssetPack(file);
+
+        Resource.mount(pack);
+        try {
+            assertEquals(ByteBuffer.wrap(text()), TEXT.asByteBuffer());
+            assertEquals(new String(text(), StandardCharsets.UTF_8), TEXT.asText());
+
+        } finally {
+            Resource.unmount(pack);
+        }
+    }
+
+    private void roundTrip(boolean doCompress) throws IOException {
+        Path file = folder.getRoot().toPath().resolve("assets.pack");
+        byte[] data = new byte[10_000];
+        new Random(42).nextBytes(data);
+
+        new AssetPackBuilder(doCompress)
+                .add(TEXT, text())
+                .add(DATA, data)
+                .add(EMPTY, new byte[0])
+                .write(file);
+
+        AssetPack pack = new AssetPack(file);
+        assertEquals(3, pack.size());
+        assertTrue(pack.contains(TEXT));
+        assertTrue(pack.contains(DATA));
+        assertFalse(pack.contains(MISSING));
+
+        assertEquals(ByteBuffer.wrap(text()), pack.get(TEXT));
+        assertEquals(ByteBuffer.wrap(data), pack.get(DATA));
+        assertEquals(0, pack.get(EMPTY).remaining());
+        assertNull(pack.get(MISSING));
+        assertNull(pack.openStream(MISSING));
+
+        try (InputStream stream = pack.openStream(DATA)) {
+            assertArrayEquals(data, stream.readAllBytes());
+        }
+    }
+
+    private static byte[] text() {
+        return "the quick brown fox jumps over the lazy dog\n".repeat(20).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.ieperen3039.ngn.AssetHandling;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ResourcePathTest {
+
+    @Test
+    public void pathsAreInterned() {
+        Resource.Path path = Resource.Path.of("pathtest/models/cube.obj");
+
+        assertSame(path, Resource.Path.of("pathtest/models/cube.obj"));
+        assertSame(path, Resource.Path.get("pathtest", "models", "cube.obj"));
+        assertSame(path, Resource.Path.of("pathtest/models").resolve("cube.obj"));
+        assertSame(path, Resource.Path.of("pathtest").resolve(Resource.Path.of("models/cube.obj")));
+        assertNotSame(path, Resource.Path.of("pathtest/models/sphere.obj"));
+    }
+
+    @Test
+    public void pathsAreNormalized() {
+        Resource.Path path = Resource.Path.of("pathtest/normal/file.txt");
+
+        assertSame(path, Resource.Path.of("pathtest\\normal\\file.txt"));
+        assertSame(path, Resource.Path.of("pathtest//normal///file.txt"));
+        assertSame(path, Resource.Path.of("pathtest/normal/file.txt/"));
+        assertSame(path, Resource.Path.get("pathtest/", "normal/", "file.txt"));
+        assertEquals("pathtest/normal/file.txt", path.toString());
+    }
+
+    @Test
+    public void idsAreUnique() {
+        Resource.Path a = Resource.Path.of("pathtest/ids/a");
+        Resource.Path b = Resource.Path.of("pathtest/ids/b");
+
+        assertNotEquals(a.id(), b.id());
+        assertSame(a, Resource.Path.byId(a.id()));
+        assertSame(b, Resource.Path.byId(b.id()));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void copiesAreEqual() {
+        Resource.Path interned = Resource.Path.of("pathtest/copy");
+        Resource.Path copy = new Resource.Path("pathtest\\copy");
+
+        assertNotSame(interned, copy);
+        assertEquals(interned, copy);
+        assertEquals(interned.hashCode(), copy.hashCode());
+        assertEquals(interned.id(), copy.id());
+    }
+
+    @Test
+    public void deserializingInterns() throws IOException, ClassNotFoundException {
+        Resource.Path path = Resource.Path.of("pathtest/serialized");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(path);
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertSame(path, in.readObject());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.github.ieperen3039.ngn.Core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+public class JobSystemTest {
+    private JobSystem jobs;
+
+    @Before
+    public void start() {
+        jobs = new JobSystem(3, "JobSystemTest");
+    }
+
+    @After
+    public void stop() {
+        jobs.shutdown();
+    }
+
+    @Test
+    public void dependenciesFinishFirst() throws InterruptedException {
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        JobSystem.Job a = jobs.schedule(() -> order.add("a"));
+        JobSystem.Job b = jobs.schedule(() -> order.add("b"));
+        JobSystem.Job c = jobs.schedule(() -> order.add("c"), a, b);
+        JobSystem.Job d = jobs.schedule(() -> order.add("d"), c);
+        jobs.waitFor(d);
+
+        assertTrue(a.isDone() && b.isDone() && c.isDone() && d.isDone());
+        assertEquals(4, order.size());
+        assertEquals("c", order.get(2));
+        assertEquals("d", order.get(3));
+    }
+
+    @Test
+    public void finishedDependenciesAreResolved() throws InterruptedException {
+        JobSystem.Job a = jobs.schedule(() -> {});
+        jobs.waitFor(a);
+
+        AtomicInteger runs = new AtomicInteger();
+        jobs.waitFor(jobs.schedule(runs::incrementAndGet, a));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void parallelForCoversEveryIndexOnce() throws InterruptedException {
+        AtomicIntegerArray visits = new AtomicIntegerArray(1000);
+        jobs.waitFor(jobs.parallelFor(0, 1000, 64, visits::incrementAndGet));
+
+        for (int i = 0; i < visits.length(); i++) {
+            assertEquals("index " + i, 1, visits.get(i));
+        }
+
+        // an empty range finishes immediately
+        jobs.waitFor(jobs.parallelFor(5, 5, 64, i -> fail()));
+    }
+
+    @Test
+    public void nestedWaitsHelpInsteadOfBlocking() throws InterruptedException {
+        AtomicInteger sum = new AtomicInteger();
+
+        // more waiting jobs than workers, which deadlocks if workers block on waitFor
+        JobSystem.Job outer = jobs.parallelFor(0, 8, 1, i -> {
+            try {
+                jobs.waitFor(jobs.parallelFor(0, 10, 2, sum::addAndGet));
+            } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        jobs.waitFor(outer);
+
+        assertEquals(8 * 45, sum.get());
+    }
+
+    @Test
+    public void failuresPropagateToDependents() throws InterruptedException {
+        IllegalStateException exception = new IllegalStateException("expected by test");
+        AtomicInteger runs = new AtomicInteger();
+
+        JobSystem.Job failing = jobs.schedule(() -> { throw exception; });
+        JobSystem.Job dependent = jobs.schedule(runs::incrementAndGet, failing);
+
+        try {
+            jobs.waitFor(dependent);
+            fail("Expected a CompletionException");
+
+        } catch (CompletionException ex) {
+            assertSame(exception, ex.getCause());
+        }
+
+        assertTrue(failing.isFailed());
+        assertTrue(dependent.isFailed());
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void shutdownCancelsWaiters() throws InterruptedException {
+        CountDownLatch isRunning = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        JobSystem.Job blocking = jobs.schedule(() -> {
+            isRunning.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        JobSystem.Job dependent = jobs.schedule(() -> {}, blocking);
+        isRunning.await();
+
+        Thread stopper = new Thread(() -> jobs.shutdown());
+        try {
+            stopper.start();
+            jobs.waitFor(dependent);
+            fail("Expected a CancellationException");
+
+        } catch (CancellationException ex) {
+            assertFalse(dependent.isDone());
+
+        } finally {
+            release.countDown();
+            stopper.join();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.ieperen3039.ngn.DataStructures.Generic;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RollingHistogramTest {
+
+    @Test
+    public void emptyHistogram() {
+        RollingHistogram histogram = new RollingHistogram(10);
+
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(0.5f));
+        assertEquals(0, histogram.max());
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        RollingHistogram histogram = new RollingHistogram(100);
+        for (int i = 1; i <= 10; i++) {
+            histogram.add(i);
+        }
+
+        assertEquals(10, histogram.count());
+        assertEquals(5, histogram.percentile(0.5f));
+        assertEquals(9, histogram.percentile(0.9f));
+        assertEquals(10, histogram.percentile(1));
+        assertEquals(10, histogram.max());
+        assertEquals(5.5, histogram.mean(), 1e-9);
+        assertEquals(Math.sqrt(8.25), histogram.standardDeviation(), 1e-9);
+    }
+
+    @Test
+    public void percentilesOfLargeValuesAreApproximate() {
+        RollingHistogram histogram = new RollingHistogram(10_000);
+        long[] values = new long[10_000];
+        Random random = new Random(1);
+
+        for (int i = 0; i < values.length; i++) {
+            // durations between 1 microsecond and 100 milliseconds
+            values[i] = 1_000 + (long) (random.nextDouble() * 100_000_000);
+            histogram.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (float fraction : new float[]{0.1f, 0.5f, 0.9f, 0.99f}) {
+            long exact = values[(int) Math.ceil(fraction * values.length) - 1];
+            assertEquals("percentile " + fraction, exact, histogram.percentile(fraction), exact * 0.03);
+        }
+
+        assertEquals(values[values.length - 1], histogram.max());
+    }
+
+    @Test
+    public void oldValuesAreRemoved() {
+        RollingHistogram histogram = new RollingHistogram(4);
+        histogram.add(1_000_000);
+        histogram.add(-5);
+
+        for (int i = 0; i < 4; i++) {
+            histogram.add(7);
+        }
+
+        assertEquals(4, histogram.count());
+        assertEquals(7, histogram.max());
+        assertEquals(7, histogram.percentile(0.01f));
+        assertEquals(0, histogram.standardDeviation(), 0);
+
+        histogram.clear();
+        assertEquals(0, histogram.count());
+        histogram.add(-5);
+        assertEquals(0, histogram.max());
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.ieperen3039.ngn.Rendering.MeshLoading;
+
+import io.github.ieperen3039.ngn.Tools.Vectors;
+import org.joml.Vector3f;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MeshCacheTest {
+    private static final String OBJ = """
+            v 0 0 0
+            v 1 0 0
+            v 0 1 0
+            v 1 1 0
+            vn 0 0 1
+            f 1//1 2//1 3//1
+            f 2//1 4//1 3//1
+            """;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void useTemporaryCache() {
+        MeshCache.setCacheDirectory(folder.getRoot().toPath());
+    }
+
+    @After
+    public void resetCache() {
+        MeshCache.setCacheDirectory(null);
+    }
+
+    @Test
+    public void writeThenRead() throws IOException {
+        MeshFile mesh = parse();
+        MeshCache.Stamp stamp = MeshCache.Stamp.of(OBJ.getBytes(StandardCharsets.US_ASCII));
+        Path file = folder.getRoot().toPath().resolve("quad.mesh");
+
+        MeshCache.write(mesh, file, stamp, Vectors.Scaling.UNIFORM);
+
+        ObjParserTest.assertSameMesh(mesh, MeshCache.read(file, stamp, Vectors.Scaling.UNIFORM, "quad"));
+        // null accepts any source and scaling
+        ObjParserTest.assertSameMesh(mesh, MeshCache.read(file, null, null, "quad"));
+    }
+
+    @Test
+    public void ignoresStaleFiles() throws IOException {
+        MeshFile mesh = parse();
+        MeshCache.Stamp stamp = MeshCache.Stamp.of(OBJ.getBytes(StandardCharsets.US_ASCII));
+        Path file = folder.getRoot().toPath().resolve("quad.mesh");
+
+        MeshCache.write(mesh, file, stamp, Vectors.Scaling.UNIFORM);
+
+        MeshCache.Stamp changed = new MeshCache.Stamp(stamp.size(), stamp.stamp() + 1);
+        assertNull(MeshCache.read(file, changed, Vectors.Scaling.UNIFORM, "quad"));
+        assertNull(MeshCache.read(file, stamp, new Vector3f(2, 1, 1), "quad"));
+    }
+
+    @Test
+    public void loadParsesOnlyWhenTheSourceChanged() throws IOException {
+        AtomicInteger nrOfParses = new AtomicInteger();
+        MeshCache.Parser parser = () -> {
+            nrOfParses.incrementAndGet();
+            return parse();
+        };
+        MeshCache.Stamp stamp = new MeshCache.Stamp(OBJ.length(), 1);
+
+        MeshFile parsed = MeshCache.load("quad.obj", stamp, Vectors.Scaling.UNIFORM, parser);
+        MeshFile cached = MeshCache.load("quad.obj", stamp, Vectors.Scaling.UNIFORM, parser);
+        assertEquals(1, nrOfParses.get());
+        ObjParserTest.assertSameMesh(parsed, cached);
+
+        MeshCache.load("quad.obj", new MeshCache.Stamp(OBJ.length(), 2), Vectors.Scaling.UNIFORM, parser);
+        assertEquals(2, nrOfParses.get());
+    }
+
+    @Test
+    public void loadBuffersBuildsOnce() {
+        MeshFile mesh = parse();
+        MeshCache.Entry entry = new MeshCache.Entry(
+                folder.getRoot().toPath().resolve("quad.buffers"), new MeshCache.Stamp(OBJ.length(), 1),
+                Vectors.Scaling.UNIFORM
+        );
+
+        AtomicInteger nrOfBuilds = new AtomicInteger();
+        MeshBuffers built = MeshCache.loadBuffers(entry, () -> {
+            nrOfBuilds.incrementAndGet();
+            return FlatMesh.weld(mesh.getVertices(), mesh.getNormals(), null, mesh.getFaces());
+        });
+        MeshBuffers cached = MeshCache.loadBuffers(entry, () -> {
+            throw new AssertionError("buffers should be read from the cache");
+        });
+
+        assertEquals(1, nrOfBuilds.get());
+        assertArrayEquals(built.indices, cached.indices);
+        assertArrayEquals(built.positions, cached.positions, 0);
+        assertArrayEquals(built.normals, cached.normals, 0);
+        assertArrayEquals(built.colors, cached.colors, 0);
+        assertNull(cached.texCoords);
+    }
+
+    private static MeshFile parse() {
+        try {
+            ByteBuffer content = ByteBuffer.wrap(OBJ.getBytes(StandardCharsets.US_ASCII));
+            return ObjParser.parse(content, Vectors.Scaling.UNIFORM, "quad", 1, null);
+
+        } catch (IOException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+}
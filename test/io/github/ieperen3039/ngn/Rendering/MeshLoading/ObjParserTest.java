@@ -0,0 +1,155 @@
+package io.github.ieperen3039.ngn.Rendering.MeshLoading;
+
+import io.github.ieperen3039.ngn.Core.JobSystem;
+import io.github.ieperen3039.ngn.Tools.Vectors;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class ObjParserTest {
+    private static JobSystem jobs;
+
+    @BeforeClass
+    public static void startJobs() {
+        jobs = new JobSystem(3, "ObjParserTest");
+    }
+
+    @AfterClass
+    public static void stopJobs() {
+        jobs.shutdown();
+    }
+
+    @Test
+    public void parsesStatements() throws IOException {
+        String obj = """
+                # a comment
+                v 1.5 -2e3 0.25
+                v 0 1 0
+                v 1 0 0
+                vn 0 0 1
+                vt 0.5 0.75
+                s off
+                f 1/1/1 2/1/1 3/1/1
+                """;
+
+        MeshFile mesh = ObjParser.parse(ascii(obj), Vectors.Scaling.UNIFORM, "statements");
+
+        assertEquals(3, mesh.getVertices().size());
+        assertEquals(1.5f, mesh.getVertices().get(0).x(), 0);
+        assertEquals(-2000f, mesh.getVertices().get(0).y(), 0);
+        assertEquals(0.25f, mesh.getVertices().get(0).z(), 0);
+        assertEquals(1, mesh.getNormals().size());
+        assertEquals(0.75f, mesh.getTextureCoords().get(0).y(), 0);
+
+        Face face = mesh.getFaces().get(0);
+        assertArrayEquals(new int[]{0, 1, 2}, face.vert());
+        assertArrayEquals(new int[]{0, 0, 0}, face.norm());
+        assertArrayEquals(new int[]{0, 0, 0}, face.tex());
+    }
+
+    @Test
+    public void chunkedParsingEqualsSequentialParsing() throws IOException {
+        String obj = generate(500);
+
+        MeshFile sequential = ObjParser.parse(ascii(obj), Vectors.Scaling.UNIFORM, "sequential", 1, null);
+        MeshFile chunked = ObjParser.parse(ascii(obj), Vectors.Scaling.UNIFORM, "chunked", 7, jobs);
+
+        assertEquals(500 * 3, sequential.getVertices().size());
+        assertSameMesh(sequential, chunked);
+    }
+
+    @Test
+    public void parsesDirectBuffersInPlace() throws IOException {
+        String obj = generate(50);
+        ByteBuffer heap = ascii(obj);
+        ByteBuffer direct = ByteBuffer.allocateDirect(heap.remaining()).put(heap.duplicate()).flip();
+        // only the range from position to limit is parsed
+        ByteBuffer offset = ByteBuffer.allocateDirect(heap.remaining() + 10).position(10);
+        offset.put(heap.duplicate()).position(10);
+
+        MeshFile expected = ObjParser.parse(heap, Vectors.Scaling.UNIFORM, "heap", 1, null);
+
+        assertSameMesh(expected, ObjParser.parse(direct, Vectors.Scaling.UNIFORM, "direct", 4, jobs));
+        assertSameMesh(expected, ObjParser.parse(offset, Vectors.Scaling.UNIFORM, "offset", 4, jobs));
+        assertEquals(0, direct.position());
+        assertEquals(10, offset.position());
+    }
+
+    @Test
+    public void reportsTheFirstErrorInTheFile() {
+        String[] lines = generate(400).split("\n");
+        // errors in two different chunks, neither of which is the first chunk
+        int first = lines.length * 3 / 8;
+        lines[first] = "v 1 x 1";
+        lines[lines.length - 1] = "v 1 y 1";
+        String obj = String.join("\n", lines) + "\n";
+
+        for (int nrOfChunks : new int[]{1, 2, 8}) {
+            try {
+                ObjParser.parse(ascii(obj), Vectors.Scaling.UNIFORM, "error", nrOfChunks, jobs);
+                fail("Expected an error");
+
+            } catch (IOException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage().contains("'x'"));
+                assertTrue(ex.getMessage(), ex.getMessage().endsWith("on line " + (first + 1)));
+            }
+        }
+    }
+
+    /**
+     * @return an OBJ file of the given number of triangles, which each define their own vertices and normal, and which
+     * alternately use absolute and relative indices
+     */
+    private static String generate(int nrOfTriangles) {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < nrOfTriangles; i++) {
+            builder.append(String.format(Locale.US, "v %d.5 %d 0.125\n", i, -i));
+            builder.append(String.format(Locale.US, "v %d 1e-2 %d\n", i, i * 2));
+            builder.append(String.format(Locale.US, "v -0.%d 0 1\n", i));
+            builder.append(String.format(Locale.US, "vn 0 0 %d\n", i));
+
+            if (i % 2 == 0) {
+                int v = i * 3 + 1;
+                builder.append(String.format("f %d//%d %d//%d %d//%d\n", v, i + 1, v + 1, i + 1, v + 2, i + 1));
+
+            } else {
+                builder.append("f -3//-1 -2//-1 -1//-1\n");
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private static ByteBuffer ascii(String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static void assertSameMesh(MeshFile expected, MeshFile actual) {
+        assertArrayEquals(PackedList.flatten3(expected.getVertices()), PackedList.flatten3(actual.getVertices()), 0);
+        assertArrayEquals(PackedList.flatten3(expected.getNormals()), PackedList.flatten3(actual.getNormals()), 0);
+        assertArrayEquals(
+                PackedList.flatten2(expected.getTextureCoords()), PackedList.flatten2(actual.getTextureCoords()), 0
+        );
+
+        List<Face> expectedFaces = expected.getFaces();
+        List<Face> actualFaces = actual.getFaces();
+        assertEquals(expectedFaces.size(), actualFaces.size());
+
+        for (int i = 0; i < expectedFaces.size(); i++) {
+            Face a = expectedFaces.get(i);
+            Face b = actualFaces.get(i);
+            assertArrayEquals("vertices of face " + i, a.vert(), b.vert());
+            assertArrayEquals("normals of face " + i, a.norm(), b.norm());
+            assertArrayEquals("texture coordinates of face " + i, a.tex(), b.tex());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.ieperen3039.ngn.Rendering.MeshLoading;
+
+import io.github.ieperen3039.ngn.Tools.Vectors;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class PlyParserTest {
+    private static final float[] POSITIONS = {0, 0, 0, 1, 0, 0, 0, 1, 0, 1, 1, 0.5f};
+    private static final float[] NORMALS = {0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1};
+    private static final int[][] FACES = {{0, 1, 2}, {1, 3, 2}};
+
+    @Test
+    public void parsesAscii() throws IOException {
+        MeshFile mesh = PlyParser.parse(ascii(), Vectors.Scaling.UNIFORM, "ascii");
+
+        assertArrayEquals(POSITIONS, PackedList.flatten3(mesh.getVertices()), 0);
+        assertArrayEquals(NORMALS, PackedList.flatten3(mesh.getNormals()), 0);
+        assertEquals(FACES.length, mesh.getFaces().size());
+
+        for (int i = 0; i < FACES.length; i++) {
+            Face face = mesh.getFaces().get(i);
+            assertArrayEquals(FACES[i], face.vert());
+            // each vertex has its own normal
+            assertArrayEquals(FACES[i], face.norm());
+        }
+    }
+
+    @Test
+    public void binaryEqualsAscii() throws IOException {
+        MeshFile ascii = PlyParser.parse(ascii(), Vectors.Scaling.UNIFORM, "ascii");
+        MeshFile little = PlyParser.parse(binary(ByteOrder.LITTLE_ENDIAN), Vectors.Scaling.UNIFORM, "little");
+        MeshFile big = PlyParser.parse(binary(ByteOrder.BIG_ENDIAN), Vectors.Scaling.UNIFORM, "big");
+
+        ObjParserTest.assertSameMesh(ascii, little);
+        ObjParserTest.assertSameMesh(ascii, big);
+    }
+
+    @Test
+    public void appliesScaling() throws IOException {
+        MeshFile mesh = PlyParser.parse(ascii(), new Vector3f(2, 3, 4), "scaled");
+
+        assertEquals(new Vector3f(2, 3, 2), mesh.getVertices().get(3));
+    }
+
+    @Test
+    public void rejectsOtherFiles() {
+        ByteBuffer obj = ByteBuffer.wrap("v 1 2 3\n".getBytes(StandardCharsets.US_ASCII));
+        assertThrows(IOException.class, () -> PlyParser.parse(obj, Vectors.Scaling.UNIFORM, "obj"));
+    }
+
+    private static ByteBuffer ascii() {
+        StringBuilder builder = new StringBuilder(header("ascii"));
+
+        for (int i = 0; i < POSITIONS.length / 3; i++) {
+            builder.append(POSITIONS[i * 3]).append(' ')
+                    .append(POSITIONS[i * 3 + 1]).append(' ')
+                    .append(POSITIONS[i * 3 + 2]).append(' ')
+                    .append("0 0 1\n");
+        }
+
+        for (int[] face : FACES) {
+            builder.append("3 ").append(face[0]).append(' ').append(face[1]).append(' ').append(face[2]).append('\n');
+        }
+
+        return ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static ByteBuffer binary(ByteOrder order) {
+        String format = (order == ByteOrder.LITTLE_ENDIAN) ? "binary_little_endian" : "binary_big_endian";
+        byte[] header = header(format).getBytes(StandardCharsets.US_ASCII);
+
+        ByteBuffer buffer = ByteBuffer.allocate(header.length + POSITIONS.length * 8 + FACES.length * 13).order(order);
+        buffer.put(header);
+
+        for (int i = 0; i < POSITIONS.length / 3; i++) {
+            buffer.putFloat(POSITIONS[i * 3]).putFloat(POSITIONS[i * 3 + 1]).putFloat(POSITIONS[i * 3 + 2]);
+            buffer.putFloat(0).putFloat(0).putFloat(1);
+        }
+
+        for (int[] face : FACES) {
+            buffer.put((byte) 3).putInt(face[0]).putInt(face[1]).putInt(face[2]);
+        }
+
+        return buffer.flip();
+    }
+
+    private static String header(String format) {
+        return "ply\n" +
+                "format " + format + " 1.0\n" +
+                "comment test mesh\n" +
+                "element vertex " + POSITIONS.length / 3 + "\n" +
+                "property float x\nproperty float y\nproperty float z\n" +
+                "property float nx\nproperty float ny\nproperty float nz\n" +
+                "element face " + FACES.length + "\n" +
+                "property list uchar int vertex_indices\n" +
+                "end_header\n";
+    }
+}
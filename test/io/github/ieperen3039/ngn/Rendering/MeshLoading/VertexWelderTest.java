@@ -0,0 +1,64 @@
+package io.github.ieperen3039.ngn.Rendering.MeshLoading;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class VertexWelderTest {
+    private static final float TOLERANCE = 1e-5f;
+
+    @Test
+    public void mergesVerticesWithinTolerance() {
+        VertexWelder welder = new VertexWelder(TOLERANCE, 4, 3);
+
+        int a = welder.add(new float[]{1, 2, 3});
+        int b = welder.add(new float[]{1 + 1e-7f, 2, 3});
+
+        assertEquals(a, b);
+        assertEquals(1, welder.size());
+    }
+
+    @Test
+    public void keepsLargeCoordinatesApart() {
+        VertexWelder welder = new VertexWelder(TOLERANCE, 4, 3);
+
+        int a = welder.add(new float[]{30000, 0, 0});
+        int b = welder.add(new float[]{50000, 0, 0});
+        int c = welder.add(new float[]{-30000, 0, 0});
+        int d = welder.add(new float[]{-50000, 0, 0});
+
+        assertNotEquals(a, b);
+        assertNotEquals(c, d);
+        assertEquals(4, welder.size());
+        assertEquals(b, welder.add(new float[]{50000, 0, 0}));
+    }
+
+    @Test
+    public void keepsHugeAndNonFiniteComponentsApart() {
+        VertexWelder welder = new VertexWelder(TOLERANCE, 4, 1);
+
+        int max = welder.add(new float[]{Float.MAX_VALUE});
+        int infinity = welder.add(new float[]{Float.POSITIVE_INFINITY});
+        int nan = welder.add(new float[]{Float.NaN});
+        int zero = welder.add(new float[]{0});
+
+        assertEquals(4, welder.size());
+        assertEquals(max, welder.add(new float[]{Float.MAX_VALUE}));
+        assertEquals(infinity, welder.add(new float[]{Float.POSITIVE_INFINITY}));
+        assertEquals(nan, welder.add(new float[]{Float.NaN}));
+        assertEquals(zero, welder.add(new float[]{-0f}));
+    }
+
+    @Test
+    public void exactWeldingMergesNegativeZero() {
+        VertexWelder welder = new VertexWelder(0, 4, 2);
+
+        int a = welder.add(new float[]{0, 1});
+        int b = welder.add(new float[]{-0f, 1});
+        int c = welder.add(new float[]{1e-7f, 1});
+
+        assertEquals(a, b);
+        assertNotEquals(a, c);
+    }
+}